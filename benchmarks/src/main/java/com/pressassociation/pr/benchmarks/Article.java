@@ -0,0 +1,169 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.benchmarks;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * A representative news article used as the object being serialised in the filter benchmarks.
+ *
+ * @author Matt Nathan
+ */
+@SuppressWarnings("UnusedDeclaration")
+public class Article {
+
+  public String id;
+  public String title;
+  public String standfirst;
+  public String body;
+  public Person byline;
+  public long published;
+  public long version;
+  public Section section;
+  public List<Tag> tags = Lists.newArrayList();
+  public List<Image> images = Lists.newArrayList();
+  public List<Article> related = Lists.newArrayList();
+  public List<Comment> comments = Lists.newArrayList();
+
+  /**
+   * Create a sample article with the given number of related articles and comments.
+   */
+  public static Article sample(int related, int comments) {
+    Article article = new Article();
+    fill(article, 0);
+    for (int i = 0; i < related; i++) {
+      Article relatedArticle = new Article();
+      fill(relatedArticle, i + 1);
+      article.related.add(relatedArticle);
+    }
+    for (int i = 0; i < comments; i++) {
+      Comment comment = new Comment();
+      comment.author = person(i);
+      comment.text = "Comment number " + i + " on the article";
+      comment.posted = 1420070400000L + i;
+      article.comments.add(comment);
+    }
+    return article;
+  }
+
+  private static void fill(Article article, int index) {
+    article.id = "article-" + index;
+    article.title = "Headline for article " + index;
+    article.standfirst = "A short summary of the story";
+    article.body = Strings.repeat("The body of the article goes on for a while. ", 40);
+    article.byline = person(index);
+    article.published = 1420070400000L;
+    article.version = 3;
+    article.section = new Section();
+    article.section.name = "News";
+    article.section.path = "/news/uk";
+    for (int i = 0; i < 5; i++) {
+      Tag tag = new Tag();
+      tag.id = "tag-" + i;
+      tag.name = "Tag " + i;
+      tag.type = "keyword";
+      article.tags.add(tag);
+    }
+    for (int i = 0; i < 2; i++) {
+      Image image = new Image();
+      image.caption = "Image " + i;
+      image.credit = "Press Association";
+      for (int width = 160; width <= 1280; width *= 2) {
+        Rendition rendition = new Rendition();
+        rendition.url = "http://images.example.com/" + index + "/" + i + "/" + width + ".jpg";
+        rendition.width = width;
+        rendition.height = width * 9 / 16;
+        rendition.format = "jpeg";
+        image.renditions.add(rendition);
+      }
+      article.images.add(image);
+    }
+  }
+
+  private static Person person(int index) {
+    Person person = new Person();
+    person.name = "Reporter " + index;
+    person.role = "Correspondent";
+    person.email = "reporter" + index + "@example.com";
+    return person;
+  }
+
+  /**
+   * Author of an article or comment.
+   */
+  public static class Person {
+    public String name;
+    public String role;
+    public String email;
+  }
+
+  /**
+   * Section an article is published in.
+   */
+  public static class Section {
+    public String name;
+    public String path;
+  }
+
+  /**
+   * Tag attached to an article.
+   */
+  public static class Tag {
+    public String id;
+    public String name;
+    public String type;
+  }
+
+  /**
+   * Image attached to an article.
+   */
+  public static class Image {
+    public String caption;
+    public String credit;
+    public List<Rendition> renditions = Lists.newArrayList();
+  }
+
+  /**
+   * Specific size of an image.
+   */
+  public static class Rendition {
+    public String url;
+    public int width;
+    public int height;
+    public String format;
+  }
+
+  /**
+   * Reader comment on an article.
+   */
+  public static class Comment {
+    public Person author;
+    public String text;
+    public long posted;
+  }
+}
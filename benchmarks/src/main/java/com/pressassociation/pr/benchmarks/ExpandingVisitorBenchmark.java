@@ -0,0 +1,99 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.benchmarks;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+
+import com.pressassociation.pr.ast.AstNode;
+import com.pressassociation.pr.ast.Field;
+import com.pressassociation.pr.ast.visitor.ExpandedPaths;
+import com.pressassociation.pr.ast.visitor.ExpandingVisitor;
+import com.pressassociation.pr.parser.Parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link ExpandingVisitor} and {@link ExpandedPaths} on patterns that blow up when expanded. A pattern
+ * of {@code segments} path parts each with a sub selection of {@code width} fields expands to
+ * {@code width ^ segments} paths.
+ *
+ * @author Matt Nathan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpandingVisitorBenchmark {
+
+  @Param({"2", "4"})
+  public int width;
+
+  @Param({"2", "4", "6"})
+  public int segments;
+
+  private AstNode ast;
+
+  @Setup
+  public void setUp() {
+    List<String> parts = Lists.newArrayList();
+    for (int segment = 0; segment < segments; segment++) {
+      List<String> fields = Lists.newArrayList();
+      for (int field = 0; field < width; field++) {
+        fields.add("f" + segment + "_" + field);
+      }
+      parts.add("s" + segment + "(" + Joiner.on(',').join(fields) + ")");
+    }
+    ast = new Parser().parse(Joiner.on('/').join(parts));
+  }
+
+  @Benchmark
+  public AstNode expand() {
+    return new ExpandingVisitor().applyTo(ast);
+  }
+
+  @Benchmark
+  public void expandLazily(Blackhole blackhole) {
+    for (Field path : ExpandedPaths.of(ast)) {
+      blackhole.consume(path);
+    }
+  }
+}
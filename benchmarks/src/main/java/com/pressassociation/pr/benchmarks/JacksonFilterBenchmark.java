@@ -0,0 +1,129 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.benchmarks;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.pressassociation.pr.filter.json.jackson.JacksonFilters;
+import com.pressassociation.pr.filter.json.jackson.JacksonMatcherFilter;
+import com.pressassociation.pr.filter.json.jackson.JacksonStreamFilter;
+import com.pressassociation.pr.match.Matcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end benchmarks for serialising an {@link Article} through the {@link JacksonMatcherFilter} compared with
+ * plain Jackson serialisation of the same object, serialising through a filtering generator, and filtering the
+ * serialised article with the {@link JacksonStreamFilter}.
+ *
+ * @author Matt Nathan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JacksonFilterBenchmark {
+
+  @Param({"*", "id,title", "id,title,byline/name,tags/*/name,images/*/renditions/*/url,related/*/id"})
+  public String pattern;
+
+  @Param({"0", "20"})
+  public int related;
+
+  private Article article;
+  private ObjectWriter unfiltered;
+  private ObjectWriter filtered;
+  private JsonFactory factory;
+  private byte[] serialised;
+  private JacksonStreamFilter streamFilter;
+  private Matcher matcher;
+
+  @Setup
+  public void setUp() {
+    article = Article.sample(related, related * 5);
+    matcher = Matcher.of(pattern);
+    unfiltered = new ObjectMapper().writer();
+    filtered = JacksonFilters.filterAllOutput(JacksonFilters.enableFiltering(new ObjectMapper()).writer(),
+                                              matcher);
+    factory = new JsonFactory();
+    try {
+      serialised = unfiltered.writeValueAsBytes(article);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException(e);
+    }
+    streamFilter = new JacksonStreamFilter(matcher);
+  }
+
+  @Benchmark
+  public String unfiltered() throws JsonProcessingException {
+    return unfiltered.writeValueAsString(article);
+  }
+
+  @Benchmark
+  public String filtered() throws JsonProcessingException {
+    return filtered.writeValueAsString(article);
+  }
+
+  @Benchmark
+  public String generator() throws IOException {
+    StringWriter output = new StringWriter();
+    JsonGenerator generator = JacksonFilters.filterAllOutput(factory.createGenerator(output), matcher);
+    unfiltered.writeValue(generator, article);
+    generator.close();
+    return output.toString();
+  }
+
+  @Benchmark
+  public byte[] streamed() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream(serialised.length);
+    JsonParser parser = factory.createParser(serialised);
+    JsonGenerator generator = factory.createGenerator(output);
+    streamFilter.filter(parser, generator);
+    generator.close();
+    parser.close();
+    return output.toByteArray();
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.benchmarks;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.pressassociation.pr.filter.json.jackson.JacksonFilters;
+import com.pressassociation.pr.match.Matcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for filtering a tree of JsonNodes built from an {@link Article}, pruning it in place with
+ * {@link JacksonFilters#prune(JsonNode, Matcher)} compared with serialising it through a filter and reading the result
+ * back into a tree. Each operation starts by copying the tree so pruning has something to remove, {@code copy} gives
+ * the cost of that on its own.
+ *
+ * @author Matt Nathan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonNodePruneBenchmark {
+
+  @Param({"*", "id,title", "id,title,byline/name,tags/*/name,images/*/renditions/*/url,related/*/id"})
+  public String pattern;
+
+  @Param({"0", "20"})
+  public int related;
+
+  private ObjectMapper mapper;
+  private JsonNode tree;
+  private Matcher matcher;
+
+  @Setup
+  public void setUp() {
+    mapper = new ObjectMapper();
+    tree = mapper.valueToTree(Article.sample(related, related * 5));
+    matcher = Matcher.of(pattern);
+  }
+
+  @Benchmark
+  public JsonNode copy() {
+    return tree.deepCopy();
+  }
+
+  @Benchmark
+  public JsonNode pruned() {
+    return JacksonFilters.prune(tree.deepCopy(), matcher);
+  }
+
+  @Benchmark
+  public JsonNode serialisedThenFiltered() throws IOException {
+    // the tree is copied here too, through the buffer
+    TokenBuffer buffer = new TokenBuffer(mapper, false);
+    JsonGenerator generator = JacksonFilters.filterAllOutput(buffer, matcher);
+    mapper.writeTree(generator, tree);
+    generator.close();
+    return mapper.readTree(buffer.asParser());
+  }
+}
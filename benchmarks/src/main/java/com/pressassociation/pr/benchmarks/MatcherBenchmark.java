@@ -0,0 +1,146 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+
+import com.pressassociation.pr.match.Leaf;
+import com.pressassociation.pr.match.Matcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link Matcher#matches(Leaf)}, {@link Matcher#matches(CharSequence)} and
+ * {@link Matcher#matchesParent(Leaf)} over the paths of a news article. Each invocation checks every path in
+ * {@link Patterns#ARTICLE_PATHS}.
+ *
+ * <p>{@link Matcher#of(CharSequence)} picks an implementation to suit the pattern: {@link Patterns#SHORT} is a word
+ * list, {@link Patterns#LONG} has no wildcards and {@link Patterns#ARTICLE} has wildcards in the middle of its paths.
+ * Turning {@link #specialised} off compares each of them against the general implementation.
+ *
+ * @author Matt Nathan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatcherBenchmark {
+
+  @Param({"SHORT", "ARTICLE", "LONG"})
+  public Patterns patterns;
+
+  /**
+   * When false a field with a wildcard in the middle of its path is added to the pattern. It matches none of the
+   * article paths but means the pattern can only use the general implementation.
+   */
+  @Param({"true", "false"})
+  public boolean specialised;
+
+  private String pattern;
+  private Matcher matcher;
+  private Matcher memoizing;
+  private ImmutableList<Leaf> leaves;
+
+  @Setup
+  public void setUp() {
+    pattern = specialised ? patterns.getPattern() : patterns.getPattern() + ",unmatched/*/unmatched";
+    matcher = Matcher.of(pattern);
+    memoizing = matcher.memoizing(64);
+    ImmutableList.Builder<Leaf> builder = ImmutableList.builder();
+    for (String path : Patterns.ARTICLE_PATHS) {
+      builder.add(Leaf.fromPath(path));
+    }
+    leaves = builder.build();
+  }
+
+  @Benchmark
+  public int matches() {
+    int count = 0;
+    for (Leaf leaf : leaves) {
+      if (matcher.matches(leaf)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int matchesParent() {
+    int count = 0;
+    for (Leaf leaf : leaves) {
+      if (matcher.matchesParent(leaf)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Matches the paths as strings, without building a {@link Leaf} for them first.
+   */
+  @Benchmark
+  public int matchesPath() {
+    int count = 0;
+    for (String path : Patterns.ARTICLE_PATHS) {
+      if (matcher.matches(path)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * The same as {@link #matches()} but with every answer after the first remembered.
+   */
+  @Benchmark
+  public int matchesMemoized() {
+    int count = 0;
+    for (Leaf leaf : leaves) {
+      if (memoizing.matches(leaf)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  public Matcher compile() {
+    return Matcher.of(pattern);
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+
+import com.pressassociation.pr.match.Leaf;
+import com.pressassociation.pr.match.Matcher;
+import com.pressassociation.pr.match.MatcherSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link MatcherSet} against checking each of its matchers in turn. A client pattern, a licensing mask
+ * and an embargo mask are checked against every path in {@link Patterns#ARTICLE_PATHS}.
+ *
+ * @author Matt Nathan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatcherSetBenchmark {
+
+  private ImmutableList<Matcher> matchers;
+  private MatcherSet set;
+  private ImmutableList<Leaf> leaves;
+
+  @Setup
+  public void setUp() {
+    matchers = ImmutableList.of(
+        Matcher.of(Patterns.ARTICLE.getPattern()),
+        Matcher.of("id,title,standfirst,byline/name,published,tags,images/*/renditions,section"),
+        Matcher.of("*/id,title,section/*,tags/*/name"));
+    set = MatcherSet.of(matchers);
+    ImmutableList.Builder<Leaf> builder = ImmutableList.builder();
+    for (String path : Patterns.ARTICLE_PATHS) {
+      builder.add(Leaf.fromPath(path));
+    }
+    leaves = builder.build();
+  }
+
+  /**
+   * Works out which matchers match each path by checking each matcher separately.
+   */
+  @Benchmark
+  public long separate() {
+    long result = 0;
+    for (Leaf leaf : leaves) {
+      long matched = 0;
+      for (int i = 0; i < matchers.size(); i++) {
+        if (matchers.get(i).matches(leaf)) {
+          matched |= 1L << i;
+        }
+      }
+      result += matched;
+    }
+    return result;
+  }
+
+  /**
+   * Works out which matchers match each path by checking them all at once.
+   */
+  @Benchmark
+  public long combined() {
+    long result = 0;
+    for (Leaf leaf : leaves) {
+      result += set.matches(leaf);
+    }
+    return result;
+  }
+
+  @Benchmark
+  public MatcherSet compile() {
+    return MatcherSet.of(matchers);
+  }
+}
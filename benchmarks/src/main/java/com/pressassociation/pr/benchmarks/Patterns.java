@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.benchmarks;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * Representative partial response patterns shared by the benchmarks.
+ *
+ * @author Matt Nathan
+ */
+public enum Patterns {
+  /**
+   * The sort of pattern typed by hand into a query string.
+   */
+  SHORT {
+    @Override
+    public String getPattern() {
+      return "id,title,body";
+    }
+  },
+
+  /**
+   * A realistic pattern selecting parts of a news article.
+   */
+  ARTICLE {
+    @Override
+    public String getPattern() {
+      return "id,title,standfirst,byline(name,role),published,tags/*/name,"
+             + "images(caption,renditions(url,width,height)),related/*/id,section/name";
+    }
+  },
+
+  /**
+   * A long flat list of fields.
+   */
+  LONG {
+    @Override
+    public String getPattern() {
+      List<String> fields = Lists.newArrayList();
+      for (int i = 0; i < 200; i++) {
+        fields.add("field" + i + "/child" + i);
+      }
+      return Joiner.on(',').join(fields);
+    }
+  },
+
+  /**
+   * Deeply nested sub selections.
+   */
+  DEEP {
+    @Override
+    public String getPattern() {
+      int depth = 50;
+      StringBuilder pattern = new StringBuilder();
+      for (int i = 0; i < depth; i++) {
+        pattern.append("level").append(i).append("(leaf").append(i).append(',');
+      }
+      pattern.append("bottom");
+      return pattern.append(Strings.repeat(")", depth)).toString();
+    }
+  };
+
+  /**
+   * Get the pattern text.
+   */
+  public abstract String getPattern();
+
+  /**
+   * Paths through a news article used for matching, a mix of matching, parent and unmatched paths for the
+   * {@link #ARTICLE} pattern.
+   */
+  public static final ImmutableList<String> ARTICLE_PATHS = ImmutableList.of(
+      "/id",
+      "/title",
+      "/body",
+      "/byline",
+      "/byline/name",
+      "/byline/email",
+      "/tags/0/name",
+      "/tags/0/id",
+      "/images/0/renditions/2/url",
+      "/images/0/renditions/2/format",
+      "/images/0/credit",
+      "/related/3/id",
+      "/related/3/title",
+      "/section",
+      "/section/name",
+      "/section/path/to/nowhere",
+      "/comments/12/author/name",
+      "/version");
+}
@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.benchmarks;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+import com.pressassociation.pr.ast.AstNode;
+import com.pressassociation.pr.ast.visitor.MatchesPathVisitor;
+import com.pressassociation.pr.ast.visitor.ToStringVisitor;
+import com.pressassociation.pr.parser.Parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Benchmarks parsing and visiting patterns with very many fields, either in one flat list or nested inside each other.
+ * The time per field should stay flat as the size grows. Setup first runs the same work on a thread with a tiny stack,
+ * so the benchmark fails outright if any of it starts recursing once per field again.
+ *
+ * @author Matt Nathan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WidePatternBenchmark {
+  private static final long SMALL_STACK_SIZE = 256 * 1024;
+
+  /**
+   * The ways of arranging the fields of a pattern.
+   */
+  public enum Shape {
+    /**
+     * {@code field0,field1,field2}.
+     */
+    WIDE {
+      @Override
+      String getPattern(int size) {
+        StringBuilder pattern = new StringBuilder("field0");
+        for (int i = 1; i < size; i++) {
+          pattern.append(",field").append(i);
+        }
+        return pattern.toString();
+      }
+    },
+
+    /**
+     * {@code field0(field1(field2))}.
+     */
+    DEEP {
+      @Override
+      String getPattern(int size) {
+        StringBuilder pattern = new StringBuilder();
+        for (int i = 0; i < size - 1; i++) {
+          pattern.append("field").append(i).append('(');
+        }
+        pattern.append("field").append(size - 1);
+        return pattern.append(Strings.repeat(")", size - 1)).toString();
+      }
+    };
+
+    abstract String getPattern(int size);
+  }
+
+  @Param({"WIDE", "DEEP"})
+  public Shape shape;
+
+  @Param({"100", "1000", "10000"})
+  public int size;
+
+  private String pattern;
+  private AstNode ast;
+  private ImmutableList<String> lastPath;
+
+  @Setup
+  public void setUp() throws InterruptedException {
+    pattern = shape.getPattern(size);
+    ast = new Parser().parse(pattern);
+    lastPath = ImmutableList.of("field" + (size - 1));
+    checkStackUsage();
+  }
+
+  @Benchmark
+  public AstNode parse() {
+    return new Parser().parse(pattern);
+  }
+
+  @Benchmark
+  public String visitToString() {
+    return new ToStringVisitor().applyTo(ast);
+  }
+
+  @Benchmark
+  public boolean visitMatchesPath() {
+    return new MatchesPathVisitor(lastPath).applyTo(ast);
+  }
+
+  private void checkStackUsage() throws InterruptedException {
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread thread = new Thread(null, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          parse();
+          visitToString();
+          visitMatchesPath();
+        } catch (Throwable e) {
+          failure.set(e);
+        }
+      }
+    }, "small-stack", SMALL_STACK_SIZE);
+    thread.start();
+    thread.join();
+    if (failure.get() != null) {
+      throw new IllegalStateException("Could not handle " + size + " fields with a small stack", failure.get());
+    }
+  }
+}
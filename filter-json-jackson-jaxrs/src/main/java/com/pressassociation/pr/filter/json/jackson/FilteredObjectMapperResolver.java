@@ -26,10 +26,15 @@ package com.pressassociation.pr.filter.json.jackson;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.IOException;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.ext.ContextResolver;
 import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -40,22 +45,32 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * you need more control over the creation of the ObjectMapper consider using {@link JacksonRequestParamFilter}
  * directly instead of overriding this class to add your functionality.
  *
+ * <p>A single ObjectMapper is shared by all requests so Jackson's serialiser caches stay warm, the pattern for each
+ * request is applied to the ObjectWriter as the response is written by the {@link PartialResponseWriterInterceptor}
+ * this class delegates to.
+ *
  * @author Matt Nathan
  */
 @Provider
 @Singleton
-public class FilteredObjectMapperResolver implements ContextResolver<ObjectMapper> {
+public class FilteredObjectMapperResolver implements ContextResolver<ObjectMapper>, WriterInterceptor {
 
-  private final JacksonRequestParamFilter paramFilter;
+  private final ObjectMapper mapper = JacksonFilters.enableFiltering(new ObjectMapper());
+  private final PartialResponseWriterInterceptor interceptor;
 
   @Inject
   public FilteredObjectMapperResolver(JacksonRequestParamFilter paramFilter) {
-    this.paramFilter = checkNotNull(paramFilter);
+    this.interceptor = new PartialResponseWriterInterceptor(paramFilter);
   }
 
   @Override
   public ObjectMapper getContext(Class<?> type) {
     checkNotNull(type);
-    return paramFilter.configurePartialResponse(new ObjectMapper());
+    return mapper;
+  }
+
+  @Override
+  public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+    interceptor.aroundWriteTo(context);
   }
 }
@@ -24,9 +24,18 @@
 
 package com.pressassociation.pr.filter.json.jackson;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.pressassociation.pr.match.Matcher;
+import com.pressassociation.pr.match.MatcherCache;
+import com.pressassociation.pr.parser.PatternLimits;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -46,8 +55,52 @@ public class JacksonRequestParamFilter {
    */
   public static final String DEFAULT_FIELD_NAME = "fields";
 
+  /**
+   * Default maximum number of patterns held by the {@link #DEFAULT_MATCHER_CACHE shared cache}.
+   */
+  public static final long DEFAULT_MATCHER_CACHE_SIZE = 1000;
+
+  /**
+   * Cache shared by all instances that are not given a cache of their own.
+   */
+  public static final MatcherCache DEFAULT_MATCHER_CACHE = MatcherCache.maximumSize(DEFAULT_MATCHER_CACHE_SIZE);
+
+  /**
+   * Default limits on the patterns accepted from requests, generous enough for any hand written pattern. Wildcards are
+   * limited far more than other names as each one in the middle of a path makes the pattern more expensive to compile.
+   */
+  public static final PatternLimits DEFAULT_PATTERN_LIMITS = PatternLimits.none()
+      .withMaxLength(4096)
+      .withMaxDepth(32)
+      .withMaxFieldCount(512)
+      .withMaxWildcardCount(32)
+      .withMaxExpandedPaths(4096);
+
   private final Provider<UriInfo> uriInfo;
   private final String fieldName;
+  private final MatcherCache matcherCache;
+  private final PatternLimits patternLimits;
+  // keyed by canonical pattern so equivalent patterns, like id,title and title,id, share a provider and the per
+  // writer caches that go with it
+  private final LoadingCache<Matcher, FilterProvider> canonicalFilterProviders =
+      CacheBuilder.newBuilder()
+                  .maximumSize(DEFAULT_MATCHER_CACHE_SIZE)
+                  .build(new CacheLoader<Matcher, FilterProvider>() {
+                    @Override
+                    public FilterProvider load(Matcher canonical) {
+                      return JacksonFilters.filterProvider(canonical);
+                    }
+                  });
+  // keyed by pattern as requested so each pattern is only canonicalised once
+  private final LoadingCache<Matcher, FilterProvider> filterProviders =
+      CacheBuilder.newBuilder()
+                  .maximumSize(DEFAULT_MATCHER_CACHE_SIZE)
+                  .build(new CacheLoader<Matcher, FilterProvider>() {
+                    @Override
+                    public FilterProvider load(Matcher matcher) {
+                      return canonicalFilterProviders.getUnchecked(matcher.canonicalize());
+                    }
+                  });
 
   /**
    * Create a new JacksonRequestParamFilter using the {@link #DEFAULT_FIELD_NAME default} field name of {@code fields}.
@@ -61,8 +114,27 @@ public class JacksonRequestParamFilter {
    * Create a new JacksonRequestParamFilter that uses the given {@code fieldName}.
    */
   public JacksonRequestParamFilter(Provider<UriInfo> uriInfo, String fieldName) {
+    this(uriInfo, fieldName, DEFAULT_MATCHER_CACHE);
+  }
+
+  /**
+   * Create a new JacksonRequestParamFilter that uses the given {@code fieldName} and looks up matchers via the given
+   * {@code matcherCache}.
+   */
+  public JacksonRequestParamFilter(Provider<UriInfo> uriInfo, String fieldName, MatcherCache matcherCache) {
+    this(uriInfo, fieldName, matcherCache, DEFAULT_PATTERN_LIMITS);
+  }
+
+  /**
+   * Create a new JacksonRequestParamFilter that uses the given {@code fieldName}, looks up matchers via the given
+   * {@code matcherCache} and rejects patterns that are beyond the given {@code patternLimits}.
+   */
+  public JacksonRequestParamFilter(Provider<UriInfo> uriInfo, String fieldName, MatcherCache matcherCache,
+                                   PatternLimits patternLimits) {
     this.uriInfo = checkNotNull(uriInfo);
     this.fieldName = checkNotNull(fieldName);
+    this.matcherCache = checkNotNull(matcherCache);
+    this.patternLimits = checkNotNull(patternLimits);
   }
 
   /**
@@ -71,11 +143,43 @@ public class JacksonRequestParamFilter {
    */
   public ObjectMapper configurePartialResponse(ObjectMapper mapper) {
     checkNotNull(mapper);
+    Optional<Matcher> matcher = getRequestMatcher();
+    if (matcher.isPresent()) {
+      JacksonFilters.filterAllOutput(mapper, matcher.get());
+    }
+    return mapper;
+  }
+
+  /**
+   * Get a writer that filters output based on a request parameter interpreted as a partial response pattern. The
+   * ObjectMapper the writer came from should have been prepared via {@link JacksonFilters#enableFiltering}. The filter
+   * for each pattern is cached by its {@link Matcher#canonicalize() canonical form} so repeated requests for the same
+   * or equivalent patterns share the same filter.
+   *
+   * @return The filtering writer, or the given writer if the request has no partial response pattern.
+   */
+  public ObjectWriter configurePartialResponse(ObjectWriter writer) {
+    checkNotNull(writer);
+    Optional<Matcher> matcher = getRequestMatcher();
+    if (matcher.isPresent()) {
+      return writer.with(filterProviders.getUnchecked(matcher.get()));
+    }
+    return writer;
+  }
+
+  /**
+   * Get the partial response matcher for the current request. Patterns beyond the limits of this filter are rejected
+   * before they are parsed in full, or straight away if they are already cached.
+   *
+   * @return The matcher, absent if the request doesn't contain a partial response pattern.
+   * @throws IllegalArgumentException If the pattern is invalid or beyond the limits of this filter.
+   */
+  public Optional<Matcher> getRequestMatcher() {
     MultivaluedMap<String, String> queryParameters = uriInfo.get().getQueryParameters();
     String fieldValue = queryParameters.getFirst(fieldName);
-    if (!Strings.isNullOrEmpty(fieldValue)) {
-      JacksonFilters.filterAllOutput(mapper, fieldValue);
+    if (Strings.isNullOrEmpty(fieldValue)) {
+      return Optional.absent();
     }
-    return mapper;
+    return Optional.of(matcherCache.get(fieldValue, patternLimits));
   }
 }
@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.filter.json.jackson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.jaxrs.cfg.EndpointConfigBase;
+import com.fasterxml.jackson.jaxrs.cfg.ObjectWriterInjector;
+import com.fasterxml.jackson.jaxrs.cfg.ObjectWriterModifier;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>WriterInterceptor that applies partial response filtering to the ObjectWriter used by the Jackson JAX-RS provider
+ * for each response.
+ *
+ * <p>The Jackson provider caches the ObjectWriter for each endpoint, so the ObjectMapper in use should be long lived
+ * and prepared via {@link JacksonFilters#enableFiltering}, the filter for the current request is then applied to the
+ * cached writer just before the response is written.
+ *
+ * @author Matt Nathan
+ */
+@Provider
+@Singleton
+public class PartialResponseWriterInterceptor implements WriterInterceptor {
+
+  private final ObjectWriterModifier modifier;
+
+  @Inject
+  public PartialResponseWriterInterceptor(final JacksonRequestParamFilter paramFilter) {
+    checkNotNull(paramFilter);
+    this.modifier = new ObjectWriterModifier() {
+      @Override
+      public ObjectWriter modify(EndpointConfigBase<?> endpoint, MultivaluedMap<String, Object> responseHeaders,
+                                 Object valueToWrite, ObjectWriter writer, JsonGenerator generator) {
+        return paramFilter.configurePartialResponse(writer);
+      }
+    };
+  }
+
+  @Override
+  public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+    checkNotNull(context);
+    ObjectWriterInjector.set(modifier);
+    try {
+      context.proceed();
+    } finally {
+      // the provider clears this itself, unless the response wasn't written by it
+      ObjectWriterInjector.getAndClear();
+    }
+  }
+}
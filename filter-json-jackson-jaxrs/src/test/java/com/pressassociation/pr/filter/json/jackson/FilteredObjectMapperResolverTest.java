@@ -25,11 +25,35 @@
 package com.pressassociation.pr.filter.json.jackson;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.jaxrs.cfg.ObjectWriterInjector;
+import com.fasterxml.jackson.jaxrs.cfg.ObjectWriterModifier;
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
 
+import org.jboss.resteasy.core.Dispatcher;
+import org.jboss.resteasy.mock.MockDispatcherFactory;
+import org.jboss.resteasy.mock.MockHttpRequest;
+import org.jboss.resteasy.mock.MockHttpResponse;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.junit.Test;
-import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.inject.Provider;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -39,14 +63,102 @@ import static org.mockito.Mockito.when;
  */
 public class FilteredObjectMapperResolverTest {
 
+  /**
+   * Resource for the end to end test.
+   */
+  @Path("/article")
+  public static class ArticleResource {
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Article get() {
+      return new Article("Title", new Author("Name", "http://example.com/name"));
+    }
+  }
+
+  /**
+   * Entity returned by the resource.
+   */
+  public static class Article {
+    public final String title;
+    public final Author author;
+
+    Article(String title, Author author) {
+      this.title = title;
+      this.author = author;
+    }
+  }
+
+  /**
+   * Nested entity returned by the resource.
+   */
+  public static class Author {
+    public final String name;
+    public final String uri;
+
+    Author(String name, String uri) {
+      this.name = name;
+      this.uri = uri;
+    }
+  }
+
   @Test
   public void testGetContext() {
+    FilteredObjectMapperResolver resolver = new FilteredObjectMapperResolver(mock(JacksonRequestParamFilter.class));
+    ObjectMapper context = resolver.getContext(ObjectMapper.class);
+    assertNotNull(context.getSerializationConfig().getFilterProvider());
+    assertSame(context, resolver.getContext(Object.class));
+  }
+
+  @Test
+  public void testAroundWriteTo() throws Exception {
     JacksonRequestParamFilter filter = mock(JacksonRequestParamFilter.class);
-    ObjectMapper mapperResponse = new ObjectMapper();
-    ArgumentCaptor<ObjectMapper> mapper = ArgumentCaptor.forClass(ObjectMapper.class);
-    when(filter.configurePartialResponse(mapper.capture())).thenReturn(mapperResponse);
-    ObjectMapper context = new FilteredObjectMapperResolver(filter).getContext(ObjectMapper.class);
-    assertSame(mapperResponse, context);
-    verify(filter).configurePartialResponse(mapper.getValue());
+    ObjectWriter writer = new ObjectMapper().writer();
+    ObjectWriter filtered = writer.withDefaultPrettyPrinter();
+    when(filter.configurePartialResponse(writer)).thenReturn(filtered);
+
+    final AtomicReference<ObjectWriterModifier> modifier = new AtomicReference<ObjectWriterModifier>();
+    WriterInterceptorContext context = mock(WriterInterceptorContext.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        modifier.set(ObjectWriterInjector.get());
+        return null;
+      }
+    }).when(context).proceed();
+
+    new FilteredObjectMapperResolver(filter).aroundWriteTo(context);
+
+    verify(context).proceed();
+    assertNotNull(modifier.get());
+    assertNull(ObjectWriterInjector.get());
+    assertSame(filtered, modifier.get().modify(null, null, null, writer, null));
+  }
+
+  @Test
+  public void testFiltersResponse() throws Exception {
+    Dispatcher dispatcher = MockDispatcherFactory.createDispatcher();
+    JacksonRequestParamFilter paramFilter = new JacksonRequestParamFilter(new Provider<UriInfo>() {
+      @Override
+      public UriInfo get() {
+        return ResteasyProviderFactory.getContextData(UriInfo.class);
+      }
+    });
+    dispatcher.getProviderFactory().register(new FilteredObjectMapperResolver(paramFilter));
+    dispatcher.getProviderFactory().register(JacksonJsonProvider.class);
+    dispatcher.getRegistry().addPerRequestResource(ArticleResource.class);
+
+    assertEquals("{\"title\":\"Title\",\"author\":{\"name\":\"Name\"}}",
+                 get(dispatcher, "/article?fields=title,author/name"));
+    // the provider caches the writer for the resource, the next request must still get its own filter
+    assertEquals("{\"author\":{\"uri\":\"http://example.com/name\"}}", get(dispatcher, "/article?fields=*/uri"));
+    assertEquals("{\"title\":\"Title\",\"author\":{\"name\":\"Name\",\"uri\":\"http://example.com/name\"}}",
+                 get(dispatcher, "/article"));
+  }
+
+  private static String get(Dispatcher dispatcher, String uri) throws Exception {
+    MockHttpResponse response = new MockHttpResponse();
+    dispatcher.invoke(MockHttpRequest.get(uri), response);
+    assertEquals(200, response.getStatus());
+    return response.getContentAsString();
   }
 }
@@ -24,21 +24,29 @@
 
 package com.pressassociation.pr.filter.json.jackson;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 
 import com.fasterxml.jackson.databind.AnnotationIntrospector;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.introspect.Annotated;
 import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
 import com.fasterxml.jackson.databind.ser.PropertyFilter;
 import com.pressassociation.pr.match.Matcher;
+import com.pressassociation.pr.match.MatcherCache;
+import com.pressassociation.pr.parser.PatternLimits;
 
 import org.jboss.resteasy.spi.ResteasyUriInfo;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.net.URI;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.Nullable;
 import javax.inject.Provider;
@@ -50,8 +58,11 @@ import junitparams.Parameters;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests for {@link JacksonRequestParamFilter}.
@@ -126,6 +137,120 @@ public class JacksonRequestParamFilterTest {
     }
   }
 
+  @Test
+  public void testConfigurePartialResponseUsesCache() {
+    MatcherCache cache = MatcherCache.maximumSize(10);
+    JacksonRequestParamFilter subject = new JacksonRequestParamFilter(
+        Params.applies("fields=a,b", "a,b").scopedUriInfo(), JacksonRequestParamFilter.DEFAULT_FIELD_NAME, cache);
+    subject.configurePartialResponse(new ObjectMapper());
+    ObjectMapper mapper = subject.configurePartialResponse(new ObjectMapper());
+
+    assertConfiguredWithMatcher(mapper, Matcher.of("a,b"));
+    assertEquals(1, cache.stats().missCount());
+    assertEquals(1, cache.stats().hitCount());
+  }
+
+  @Test
+  @Parameters(method = "params")
+  public void testConfigurePartialResponseWriter(Params params) throws Exception {
+    JacksonRequestParamFilter subject = new JacksonRequestParamFilter(params.scopedUriInfo());
+    ObjectWriter writer = JacksonFilters.enableFiltering(new ObjectMapper()).writer();
+    ObjectWriter configured = subject.configurePartialResponse(writer);
+
+    if (params.matcher.isPresent()) {
+      PropertyFilter propertyFilter =
+          configured.getConfig().getFilterProvider().findPropertyFilter("PartialResponse", new TestObject());
+      assertTrue(propertyFilter instanceof JacksonMatcherFilter);
+      assertEquals(params.matcher.get().canonicalize(), ((JacksonMatcherFilter) propertyFilter).getMatcher());
+      // filters are shared between requests for the same pattern
+      assertSame(configured.getConfig().getFilterProvider(),
+                 subject.configurePartialResponse(writer).getConfig().getFilterProvider());
+    } else {
+      assertSame(writer, configured);
+    }
+  }
+
+  @Test
+  public void testConfigurePartialResponseWriterSharesEquivalentFilters() {
+    final AtomicReference<Params> request = new AtomicReference<Params>(Params.applies("fields=id,title", "id,title"));
+    JacksonRequestParamFilter subject = new JacksonRequestParamFilter(new Provider<UriInfo>() {
+      @Override
+      public UriInfo get() {
+        return request.get().getUriInfo();
+      }
+    });
+    ObjectWriter writer = JacksonFilters.enableFiltering(new ObjectMapper()).writer();
+    FilterProvider idTitle = subject.configurePartialResponse(writer).getConfig().getFilterProvider();
+    request.set(Params.applies("fields=title,id", "title,id"));
+    FilterProvider titleId = subject.configurePartialResponse(writer).getConfig().getFilterProvider();
+    request.set(Params.applies("fields=title", "title"));
+    FilterProvider title = subject.configurePartialResponse(writer).getConfig().getFilterProvider();
+
+    assertSame(idTitle, titleId);
+    assertNotSame(idTitle, title);
+  }
+
+  @Test
+  public void testPatternLimits() {
+    PatternLimits limits = PatternLimits.none().withMaxExpandedPaths(3);
+    JacksonRequestParamFilter subject = new JacksonRequestParamFilter(
+        Params.applies("fields=a(b,c)/d", "a(b,c)/d").scopedUriInfo(), JacksonRequestParamFilter.DEFAULT_FIELD_NAME,
+        MatcherCache.maximumSize(10), limits);
+    assertEquals(Optional.of(Matcher.of("a(b,c)/d")), subject.getRequestMatcher());
+
+    subject = new JacksonRequestParamFilter(
+        Params.applies("fields=a(b,c)/d(e,f)", "a(b,c)/d(e,f)").scopedUriInfo(),
+        JacksonRequestParamFilter.DEFAULT_FIELD_NAME, MatcherCache.maximumSize(10), limits);
+    try {
+      subject.getRequestMatcher();
+      fail("Expected the pattern to be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testDefaultPatternLimits() {
+    StringBuilder pattern = new StringBuilder("a(b,c)");
+    for (int i = 0; i < 20; i++) {
+      pattern.append("/a(b,c)");
+    }
+    JacksonRequestParamFilter subject = new JacksonRequestParamFilter(
+        Params.applies("fields=" + pattern, pattern).scopedUriInfo());
+    try {
+      subject.getRequestMatcher();
+      fail("Expected the pattern to be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testDefaultPatternLimitsBoundWildcards() {
+    // every field adds two wildcards in the middle of a path, which is what makes a pattern expensive to compile
+    JacksonRequestParamFilter subject = new JacksonRequestParamFilter(
+        Params.applies("fields=" + wildcardFields(16), wildcardFields(16)).scopedUriInfo());
+    assertEquals(Optional.of(Matcher.of(wildcardFields(16))), subject.getRequestMatcher());
+
+    MatcherCache cache = MatcherCache.maximumSize(10);
+    subject = new JacksonRequestParamFilter(
+        Params.applies("fields=" + wildcardFields(100), wildcardFields(100)).scopedUriInfo(),
+        JacksonRequestParamFilter.DEFAULT_FIELD_NAME, cache);
+    try {
+      subject.getRequestMatcher();
+      fail("Expected the pattern to be rejected");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Pattern is too complex, it has more than 32 wildcards", e.getMessage());
+    }
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  @Parameters(method = "params")
+  public void testGetRequestMatcher(Params params) {
+    assertEquals(params.matcher, new JacksonRequestParamFilter(params.scopedUriInfo()).getRequestMatcher());
+  }
+
   @SuppressWarnings("UnusedDeclaration")
   private Iterable<Params> params() {
     return ImmutableList.of(
@@ -139,6 +264,14 @@ public class JacksonRequestParamFilterTest {
     );
   }
 
+  private static String wildcardFields(int count) {
+    List<String> fields = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      fields.add("*/f" + i + "/*/g" + i);
+    }
+    return Joiner.on(',').join(fields);
+  }
+
   private void assertConfiguredWithMatcher(ObjectMapper mapper, Matcher matcher) {
     AnnotationIntrospector introspector = mapper.getSerializationConfig().getAnnotationIntrospector();
     Object filterId = introspector.findFilterId((Annotated) AnnotatedClass.construct(
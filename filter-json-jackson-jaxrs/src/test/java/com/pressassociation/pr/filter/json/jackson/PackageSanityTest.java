@@ -24,12 +24,21 @@
 
 package com.pressassociation.pr.filter.json.jackson;
 
+import com.google.common.base.Predicates;
 import com.google.common.testing.AbstractPackageSanityTests;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.ser.PropertyWriter;
 import com.pressassociation.pr.match.Matcher;
+import com.pressassociation.pr.match.MatcherCache;
+import com.pressassociation.pr.parser.PatternLimits;
+
+import javax.ws.rs.ext.WriterInterceptorContext;
 
 import static org.mockito.Mockito.mock;
 
@@ -44,9 +53,17 @@ public class PackageSanityTest extends AbstractPackageSanityTests {
     super.setUp();
     setDefault(JacksonRequestParamFilter.class, mock(JacksonRequestParamFilter.class));
     setDefault(Matcher.class, Matcher.all());
+    setDefault(MatcherCache.class, MatcherCache.maximumSize(10));
+    setDefault(PatternLimits.class, PatternLimits.none());
     setDefault(JsonGenerator.class, mock(JsonGenerator.class));
+    setDefault(JsonParser.class, mock(JsonParser.class));
     setDefault(SerializerProvider.class, mock(SerializerProvider.class));
     setDefault(PropertyWriter.class, mock(PropertyWriter.class));
     setDefault(CharSequence.class, "*");
+    setDefault(ObjectWriter.class, new ObjectMapper().writer());
+    setDefault(JsonNode.class, new ObjectMapper().createObjectNode());
+    setDefault(WriterInterceptorContext.class, mock(WriterInterceptorContext.class));
+    // like any JsonGenerator it accepts null values, its own module tests it explicitly
+    ignoreClasses(Predicates.<Class<?>>equalTo(JacksonMatcherGenerator.class));
   }
 }
@@ -24,12 +24,20 @@
 
 package com.pressassociation.pr.filter.json.jackson;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.introspect.Annotated;
 import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
-import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
 import com.pressassociation.pr.match.Matcher;
 
+import java.util.Collections;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * Set of utilities for filtering Jackson output based on partial response.
  *
@@ -50,7 +58,62 @@ public class JacksonFilters {
    * Filter all serialised output via the given ObjectMapper with the given matcher.
    */
   public static ObjectMapper filterAllOutput(ObjectMapper mapper, Matcher matcher) {
-    mapper.setFilters(new SimpleFilterProvider().addFilter(FILTER_ID, new JacksonMatcherFilter(matcher)));
+    mapper.setFilters(filterProvider(matcher));
+    return useFilterForAllTypes(mapper);
+  }
+
+  /**
+   * <p>Prepare the given ObjectMapper so that its output can be filtered per ObjectWriter using
+   * {@link #filterAllOutput(ObjectWriter, Matcher)}. Output from the ObjectMapper or its writers is not filtered until
+   * then.
+   *
+   * <p>Unlike {@link #filterAllOutput(ObjectMapper, Matcher)} this lets a single long lived ObjectMapper, and all the
+   * serialiser caches that go with it, be used for any number of different patterns.
+   */
+  public static ObjectMapper enableFiltering(ObjectMapper mapper) {
+    mapper.setFilters(new SingleFilterProvider(
+        FILTER_ID, SimpleBeanPropertyFilter.serializeAllExcept(Collections.<String>emptySet())));
+    return useFilterForAllTypes(mapper);
+  }
+
+  /**
+   * Filter all serialised output via the given ObjectWriter with the given matcher. The ObjectMapper the writer came
+   * from should have been prepared using {@link #enableFiltering(ObjectMapper)}.
+   */
+  public static ObjectWriter filterAllOutput(ObjectWriter writer, Matcher matcher) {
+    return writer.with(filterProvider(matcher));
+  }
+
+  /**
+   * Filter everything written through the returned generator with the given matcher, passing what matches on to the
+   * given generator. This works for any output, trees, maps and custom serialisers included, and needs no preparation
+   * of the ObjectMapper.
+   *
+   * @see JacksonMatcherGenerator
+   */
+  public static JsonGenerator filterAllOutput(JsonGenerator generator, Matcher matcher) {
+    return new JacksonMatcherGenerator(generator, matcher);
+  }
+
+  /**
+   * Remove everything from the given tree that isn't matched by the given matcher. The tree is changed in place and
+   * returned, nothing is copied or serialised. Objects and arrays left with nothing matched in them are removed too,
+   * other than those that are elements of an array.
+   */
+  public static JsonNode prune(JsonNode node, Matcher matcher) {
+    JsonNodePruner.prune(node, matcher);
+    return node;
+  }
+
+  /**
+   * Create the FilterProvider used to filter output with the given matcher. Providers are immutable and can be shared
+   * between any number of ObjectWriters, see {@link ObjectWriter#with(FilterProvider)}.
+   */
+  public static FilterProvider filterProvider(Matcher matcher) {
+    return new SingleFilterProvider(FILTER_ID, new JacksonMatcherFilter(checkNotNull(matcher)));
+  }
+
+  private static ObjectMapper useFilterForAllTypes(ObjectMapper mapper) {
     mapper.setAnnotationIntrospector(new JacksonAnnotationIntrospector() {
       @Override
       public Object findFilterId(Annotated a) {
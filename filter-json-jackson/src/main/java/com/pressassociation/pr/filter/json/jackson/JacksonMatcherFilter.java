@@ -24,26 +24,26 @@
 
 package com.pressassociation.pr.filter.json.jackson;
 
-import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Queues;
-import com.google.common.io.CharStreams;
 
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
 import com.fasterxml.jackson.databind.ser.PropertyWriter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
-import com.pressassociation.pr.match.Leaf;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.pressassociation.pr.match.MatchCursor;
 import com.pressassociation.pr.match.Matcher;
+import com.pressassociation.pr.match.PathPart;
 
-import java.util.Deque;
-
-import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.base.Preconditions.checkState;
 
 /**
  * Jackson json property filter backed by a partial response Matcher.
@@ -57,20 +57,40 @@ public class JacksonMatcherFilter extends SimpleBeanPropertyFilter {
    * In order to support filtering based on a Matcher we need to be able to support the inclusions of parent elements
    * when a child should be included. Unfortunately this is not directly supported by the standard classes.
    *
-   * To accomplish this we need to do two passes over the object tree. Pass one navigates to all leaf nodes of the tree
-   * looking for paths that should be included in the output. Once all these are found a second pass goes through
-   * writing out all included paths.
+   * The standard tree walking algorithm of jackson writes at the same time it navigates, we don't know if a parent
+   * should be written until we've seen it's children. To get around this without walking the tree twice we split
+   * properties into three groups as we come across them:
+   *
+   *  1. Properties the matcher matches, these are written straight out. Once a property is known to have every
+   *     property below it matched we stop consulting the matcher until that property has been written.
+   *  2. Properties that can't lead to a match, these are omitted without being serialised at all.
+   *  3. Properties that may have matching children. These are written into a buffer until one of their children
+   *     matches, at which point the buffer is replayed into the real output and writing continues directly. If no
+   *     child matches by the time the property is written the buffer is thrown away.
+   *
+   * The matcher only ever needs the name of a bean property, which is fixed for each BeanPropertyWriter, so every
+   * writer is resolved against the matcher once and that PathPart is reused each time the property is written. With
+   * the name resolved deciding which group a property is in costs a couple of table lookups.
    *
-   * The reason for the two paths is because the standard tree walking algorithm of jackson writes at the same time it
-   * navigates. We don't know if a parent should be written until we've seen it's children, something that can't be
-   * done without a no-op first pass.
+   * The state of a serialisation run is kept as an attribute of the SerializerProvider, which Jackson creates for each
+   * call to writeValue. This keeps the filter itself stateless so a single instance can be shared by any number of
+   * concurrent serialisations, without tying a run to the thread it started on.
+   *
+   * Each property is serialised at most once, so getters are never invoked more than once per serialisation and
+   * getters for properties in group 2 are never invoked at all.
    */
 
   private final Matcher matcher;
-  // this state only exists between the start and end of a full serialisation run, it will be empty before and after
-  // that run.
-  @VisibleForTesting
-  final ThreadLocal<State> state = new ThreadLocal<State>();
+  // bean property writers live as long as their serialisers, weak keys let them go when Jackson does
+  private final LoadingCache<PropertyWriter, PathPart> pathParts =
+      CacheBuilder.newBuilder()
+                  .weakKeys()
+                  .build(new CacheLoader<PropertyWriter, PathPart>() {
+                    @Override
+                    public PathPart load(PropertyWriter writer) {
+                      return matcher.pathPart(writer.getName());
+                    }
+                  });
 
   public JacksonMatcherFilter(Matcher matcher) {
     this.matcher = checkNotNull(matcher);
@@ -91,85 +111,58 @@ public class JacksonMatcherFilter extends SimpleBeanPropertyFilter {
     checkNotNull(provider);
     checkNotNull(writer);
 
-    // remember the node that triggered this method call
-    State state = this.state.get();
+    // the filter is the key for its state, different filters in the same serialisation don't interfere
+    State state = (State) provider.getAttribute(this);
     if (state == null) {
       state = new State();
-      this.state.set(state);
+      provider.setAttribute(this, state);
+    } else if (state.unfiltered) {
+      // an ancestor has already told us everything below it is included
+      writer.serializeAsField(pojo, jGen, provider);
+      return;
+    }
+    MatchCursor cursor = state.cursor;
+    if (writer instanceof BeanPropertyWriter) {
+      cursor.descend(pathParts.getUnchecked(writer));
+    } else {
+      // other writers, map entries for example, are reused for different names
+      cursor.descend(writer.getName());
     }
-    Node parentNode = state.currentNode;
-    state.propertyPath.addLast(writer.getName());
     try {
-      if (!state.serializationMode) {
-        processFirstPass(parentNode, pojo, provider, writer, jGen);
-      } else {
-        // do the actual writing of the field
-        // if the first child in the current node matches this field then we want to write it and it's children
-        if (state.currentNode.matchesFirstChild(writer)) {
-          state.currentNode = state.currentNode.popChild();
-          writer.serializeAsField(pojo, jGen, provider);
-        } else {
-          // write missing fields.
-          writer.serializeAsOmittedField(pojo, jGen, provider);
-        }
-      }
-
-      if (parentNode.isRoot()) {
+      if (cursor.matchesAllBelow()) {
+        state.includeBuffered();
+        state.unfiltered = true;
         try {
-          // about to enter the _real_ serialization pass, mark it as such so the above logic isn't repeated
-          state.serializationMode = true;
-          if (parentNode.isEmpty()) {
-            // write out that we will be omitting data
-            writer.serializeAsOmittedField(pojo, jGen, provider);
-          } else {
-            // in this case we've found a root property that needs to be output
-            // as we go through the child nodes again we check against the Node tree instead of the Matcher, we've
-            // already done those checks on the first pass
-            state.currentNode = parentNode.popChild();
-            checkState(state.currentNode.matchesName(writer), "Unexpected root node: %s", state.currentNode);
-            writer.serializeAsField(pojo, jGen, provider);
-          }
+          writer.serializeAsField(pojo, jGen, provider);
         } finally {
-          state.serializationMode = false;
-          this.state.remove();
+          state.unfiltered = false;
         }
+      } else if (cursor.matches()) {
+        // any parents waiting on us now need writing before we are
+        state.includeBuffered();
+        writer.serializeAsField(pojo, jGen, provider);
+      } else if (cursor.matchesAnyBelow()) {
+        serializeBuffered(state, pojo, jGen, provider, writer);
+      } else {
+        writer.serializeAsOmittedField(pojo, jGen, provider);
       }
     } finally {
-      state.propertyPath.removeLast();
-      state.currentNode = parentNode;
+      cursor.ascend();
     }
   }
 
-  private void processFirstPass(Node parentNode, Object pojo, SerializerProvider provider,
-                                PropertyWriter writer, JsonGenerator generator) throws Exception {
-    State state = this.state.get();
-    Leaf leaf = Leaf.copyOf(state.propertyPath);
-
-    // if this property _can_ contribute towards the path leading to a matching leaf then we have to check
-    boolean matches = matcher.matches(leaf);
-    if (matches || matcher.matchesParent(leaf)) {
-      if (parentNode.isRoot()) {
-        // make sure we don't actually write anything to the output, only replace if we are the root node, it will
-        // be passed to other nodes as needed via recursive calls
-        generator = new JsonFactory().createGenerator(CharStreams.nullWriter());
-      }
-
-      // prepare a node for this property so child branches can add to it as needed
-      state.currentNode = new Node(parentNode, writer.getName());
-      writer.serializeAsField(pojo, generator, provider);
-
-      // check the results of processing the children
-      if (state.currentNode.isEmpty()) {
-        // either we don't have any children or none of them are matching leaves.
-        // in any case
-        if (matches) {
-          // it turns out we match anyway so add this node
-          parentNode.addChild(state.currentNode);
-        }
-      } else {
-        // child leafs match so we need to include this node as a parent of them
-        parentNode.addChild(state.currentNode);
-      }
+  private void serializeBuffered(State state, Object pojo, JsonGenerator jGen, SerializerProvider provider,
+                                 PropertyWriter writer) throws Exception {
+    BufferedProperty property = new BufferedProperty(jGen);
+    state.buffered.add(property);
+    try {
+      writer.serializeAsField(pojo, property.generator, provider);
+    } finally {
+      state.removeBuffered();
+    }
+    if (!property.included) {
+      // none of the children matched so the property is left out after all
+      writer.serializeAsOmittedField(pojo, jGen, provider);
     }
   }
 
@@ -185,66 +178,66 @@ public class JacksonMatcherFilter extends SimpleBeanPropertyFilter {
   }
 
   /**
-   * Encapsulates a write request for later processing.
+   * A property whose output is held back until we know whether any of its children match.
    */
-  private static class Node {
-    @Nullable
-    private final Node parent;
-    private final String name;
-    private Deque<Node> children;
-
-    private Node() {
-      this.name = "<< root >>";
-      this.parent = null;
-    }
-
-    private Node(Node parent, String name) {
-      this.parent = checkNotNull(parent);
-      this.name = checkNotNull(name);
-    }
-
-    public boolean isRoot() {
-      return parent == null;
-    }
-
-    public void addChild(Node child) {
-      if (children == null) {
-        children = Lists.newLinkedList();
-      }
-      children.add(checkNotNull(child));
+  private static final class BufferedProperty {
+    private final JsonGenerator target;
+    private final TokenBuffer buffer;
+    private final SwitchingGenerator generator;
+    private boolean included = false;
+
+    private BufferedProperty(JsonGenerator target) {
+      this.target = target;
+      this.buffer = new TokenBuffer(target.getCodec(), false);
+      this.generator = new SwitchingGenerator(buffer);
     }
 
-    public boolean isEmpty() {
-      return children == null || children.isEmpty();
+    /**
+     * Write out everything buffered so far and send all further output straight to the target.
+     */
+    private void include() throws IOException {
+      buffer.serialize(target);
+      generator.switchTo(target);
+      included = true;
     }
+  }
 
-    public boolean matchesName(PropertyWriter writer) {
-      return name.equals(writer.getName());
+  /**
+   * Generator that can change where it is writing to part way through.
+   */
+  private static final class SwitchingGenerator extends JsonGeneratorDelegate {
+    private SwitchingGenerator(JsonGenerator delegate) {
+      super(delegate, false);
     }
 
-    public Node popChild() {
-      return children.removeFirst();
+    private void switchTo(JsonGenerator generator) {
+      delegate = generator;
     }
+  }
 
-    public boolean matchesFirstChild(PropertyWriter writer) {
-      if (children == null) {
-        return false;
+  private class State {
+    // tracks the path of the property currently being serialised
+    final MatchCursor cursor = matcher.cursor();
+
+    // properties waiting on their children, outermost first. Those before the included index have been written out
+    final List<BufferedProperty> buffered = Lists.newArrayList();
+    int included = 0;
+
+    // set while writing a property that has everything below it matched
+    boolean unfiltered = false;
+
+    /**
+     * Include all buffered properties, outermost first so each is written into an output that is itself included.
+     */
+    void includeBuffered() throws IOException {
+      for (; included < buffered.size(); included++) {
+        buffered.get(included).include();
       }
-      Node child = children.peekFirst();
-      return child != null && child.matchesName(writer);
     }
 
-    @Override
-    public String toString() {
-      return name + ' ' + (children == null ? "[]" : children);
+    void removeBuffered() {
+      buffered.remove(buffered.size() - 1);
+      included = Math.min(included, buffered.size());
     }
   }
-
-  private class State {
-    final Deque<String> propertyPath = Queues.newArrayDeque();
-
-    // contains the current parent node for use by recursive calls.
-    Node currentNode = new Node();
-    boolean serializationMode = false;
-  }
 }
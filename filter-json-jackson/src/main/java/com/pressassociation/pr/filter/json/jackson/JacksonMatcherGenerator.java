@@ -0,0 +1,524 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.filter.json.jackson;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonGenerationException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.json.JsonWriteContext;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+import com.pressassociation.pr.match.MatchCursor;
+import com.pressassociation.pr.match.Matcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>A JsonGenerator that only passes on to its delegate the parts of the output matched by a {@link Matcher}. As it
+ * works on the generated tokens it filters anything written through it the same way: beans, maps, trees or the output
+ * of custom serialisers, without needing a filter id for every class like {@link JacksonMatcherFilter}. For example
+ * <pre><code>
+ *   mapper.writeValue(JacksonFilters.filterAllOutput(mapper.getFactory().createGenerator(out), matcher), value);
+ * </code></pre>
+ *
+ * <p>Objects and arrays are only started in the delegate once something in them is matched, until then all that is
+ * kept of them is the output context. Array elements share the path of their array. As with
+ * {@link JacksonMatcherFilter} and {@link JacksonFilters#prune(com.fasterxml.jackson.databind.JsonNode, Matcher)
+ * pruning}, objects and arrays in a written array that have nothing matched in them are kept as empty elements so the
+ * other elements keep their positions. Those that come before the array is written are only counted until then, with
+ * one exception as in {@link JacksonStreamFilter}: an array in an array that has nothing matched in it is written out
+ * straight away along with the array around it. Values at the root of the output are always written.
+ *
+ * <p>Like any JsonGenerator instances are not safe for use by multiple threads.
+ *
+ * @author Matt Nathan
+ */
+public class JacksonMatcherGenerator extends JsonGeneratorDelegate {
+  private static final int NOT_SETTLED = -1;
+
+  private final Matcher matcher;
+  private final MatchCursor cursor;
+  private JsonWriteContext context = JsonWriteContext.createRootContext(null);
+  // how deeply nested the context is, and how many of those containers have been started in the delegate
+  private int depth = 0;
+  private int written = 0;
+  // the depth of the container everything in which is either written or dropped without checking the matcher
+  private int settledDepth = NOT_SETTLED;
+  private boolean settledIncluded;
+  // the context doesn't check values in objects have names so we do
+  private boolean expectingValue;
+  private final List<JsonWriteContext> unwritten = Lists.newArrayList();
+  // by depth, the number of empty objects to write at the start of an array once it is written
+  private int[] emptyObjects = new int[8];
+
+  public JacksonMatcherGenerator(JsonGenerator delegate, Matcher matcher) {
+    // the copy methods and writeObject need to come back through this generator to be filtered
+    super(checkNotNull(delegate), false);
+    this.matcher = checkNotNull(matcher);
+    this.cursor = matcher.cursor();
+    if (matcher.matchesAll()) {
+      settledDepth = 0;
+      settledIncluded = true;
+    }
+  }
+
+  /**
+   * Get the matcher this generator filters by.
+   */
+  public Matcher getMatcher() {
+    return matcher;
+  }
+
+  /**
+   * Get the context of everything written to this generator, including that which hasn't been passed on.
+   */
+  @Override
+  public JsonStreamContext getOutputContext() {
+    return context;
+  }
+
+  @Override
+  public void writeStartArray() throws IOException {
+    if (startContainer(context.createChildArrayContext())) {
+      delegate.writeStartArray();
+    }
+  }
+
+  @Override
+  public void writeEndArray() throws IOException {
+    if (!context.inArray()) {
+      _reportError("Current context not an ARRAY but " + context.getTypeDesc());
+    }
+    if (endContainer()) {
+      delegate.writeEndArray();
+    }
+  }
+
+  @Override
+  public void writeStartObject() throws IOException {
+    if (startContainer(context.createChildObjectContext())) {
+      delegate.writeStartObject();
+    }
+  }
+
+  @Override
+  public void writeEndObject() throws IOException {
+    if (!context.inObject()) {
+      _reportError("Current context not an object but " + context.getTypeDesc());
+    }
+    if (endContainer()) {
+      delegate.writeEndObject();
+    }
+  }
+
+  @Override
+  public void writeFieldName(String name) throws IOException {
+    if (fieldName(name)) {
+      delegate.writeFieldName(name);
+    }
+  }
+
+  @Override
+  public void writeFieldName(SerializableString name) throws IOException {
+    if (fieldName(name.getValue())) {
+      delegate.writeFieldName(name);
+    }
+  }
+
+  @Override
+  public void writeString(String text) throws IOException {
+    if (scalar()) {
+      delegate.writeString(text);
+    }
+  }
+
+  @Override
+  public void writeString(char[] text, int offset, int len) throws IOException {
+    if (scalar()) {
+      delegate.writeString(text, offset, len);
+    }
+  }
+
+  @Override
+  public void writeString(SerializableString text) throws IOException {
+    if (scalar()) {
+      delegate.writeString(text);
+    }
+  }
+
+  @Override
+  public void writeRawUTF8String(byte[] text, int offset, int length) throws IOException {
+    if (scalar()) {
+      delegate.writeRawUTF8String(text, offset, length);
+    }
+  }
+
+  @Override
+  public void writeUTF8String(byte[] text, int offset, int length) throws IOException {
+    if (scalar()) {
+      delegate.writeUTF8String(text, offset, length);
+    }
+  }
+
+  @Override
+  public void writeRaw(String text) throws IOException {
+    if (rawIncluded()) {
+      delegate.writeRaw(text);
+    }
+  }
+
+  @Override
+  public void writeRaw(String text, int offset, int len) throws IOException {
+    if (rawIncluded()) {
+      delegate.writeRaw(text, offset, len);
+    }
+  }
+
+  @Override
+  public void writeRaw(SerializableString raw) throws IOException {
+    if (rawIncluded()) {
+      delegate.writeRaw(raw);
+    }
+  }
+
+  @Override
+  public void writeRaw(char[] text, int offset, int len) throws IOException {
+    if (rawIncluded()) {
+      delegate.writeRaw(text, offset, len);
+    }
+  }
+
+  @Override
+  public void writeRaw(char c) throws IOException {
+    if (rawIncluded()) {
+      delegate.writeRaw(c);
+    }
+  }
+
+  @Override
+  public void writeRawValue(String text) throws IOException {
+    if (scalar()) {
+      delegate.writeRawValue(text);
+    }
+  }
+
+  @Override
+  public void writeRawValue(String text, int offset, int len) throws IOException {
+    if (scalar()) {
+      delegate.writeRawValue(text, offset, len);
+    }
+  }
+
+  @Override
+  public void writeRawValue(char[] text, int offset, int len) throws IOException {
+    if (scalar()) {
+      delegate.writeRawValue(text, offset, len);
+    }
+  }
+
+  @Override
+  public void writeBinary(Base64Variant b64variant, byte[] data, int offset, int len) throws IOException {
+    if (scalar()) {
+      delegate.writeBinary(b64variant, data, offset, len);
+    }
+  }
+
+  @Override
+  public int writeBinary(Base64Variant b64variant, InputStream data, int dataLength) throws IOException {
+    if (scalar()) {
+      return delegate.writeBinary(b64variant, data, dataLength);
+    }
+    // the data is consumed either way so callers see the same result
+    return (int) ByteStreams.copy(dataLength < 0 ? data : ByteStreams.limit(data, dataLength),
+                                  ByteStreams.nullOutputStream());
+  }
+
+  @Override
+  public void writeNumber(short v) throws IOException {
+    if (scalar()) {
+      delegate.writeNumber(v);
+    }
+  }
+
+  @Override
+  public void writeNumber(int v) throws IOException {
+    if (scalar()) {
+      delegate.writeNumber(v);
+    }
+  }
+
+  @Override
+  public void writeNumber(long v) throws IOException {
+    if (scalar()) {
+      delegate.writeNumber(v);
+    }
+  }
+
+  @Override
+  public void writeNumber(BigInteger v) throws IOException {
+    if (scalar()) {
+      delegate.writeNumber(v);
+    }
+  }
+
+  @Override
+  public void writeNumber(double v) throws IOException {
+    if (scalar()) {
+      delegate.writeNumber(v);
+    }
+  }
+
+  @Override
+  public void writeNumber(float v) throws IOException {
+    if (scalar()) {
+      delegate.writeNumber(v);
+    }
+  }
+
+  @Override
+  public void writeNumber(BigDecimal v) throws IOException {
+    if (scalar()) {
+      delegate.writeNumber(v);
+    }
+  }
+
+  @Override
+  public void writeNumber(String encodedValue) throws IOException {
+    if (scalar()) {
+      delegate.writeNumber(encodedValue);
+    }
+  }
+
+  @Override
+  public void writeBoolean(boolean state) throws IOException {
+    if (scalar()) {
+      delegate.writeBoolean(state);
+    }
+  }
+
+  @Override
+  public void writeNull() throws IOException {
+    if (scalar()) {
+      delegate.writeNull();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "JacksonMatcherGenerator[" + matcher + ']';
+  }
+
+  /**
+   * Record a field name in the output, returning whether it should be passed on now. Names of fields that haven't been
+   * decided on yet are passed on along with their value.
+   */
+  private boolean fieldName(String name) throws IOException {
+    if (context.writeFieldName(name) == JsonWriteContext.STATUS_EXPECT_VALUE) {
+      _reportError("Can not write a field name, expecting a value");
+    }
+    expectingValue = true;
+    if (settledDepth != NOT_SETTLED) {
+      return settledIncluded;
+    }
+    cursor.descend(name);
+    return false;
+  }
+
+  /**
+   * Record a scalar value in the output, returning whether it should be passed on. Any containers and field name
+   * waiting on the value are written first.
+   */
+  private boolean scalar() throws IOException {
+    checkValue();
+    if (settledDepth != NOT_SETTLED) {
+      return settledIncluded;
+    }
+    boolean include = cursor.getDepth() == 0 || cursor.matches();
+    if (include) {
+      writeContainers();
+      writeCurrentName();
+    }
+    if (context.inObject()) {
+      cursor.ascend();
+    }
+    return include;
+  }
+
+  /**
+   * Enter the given child context, returning whether the container should be started in the delegate now.
+   */
+  private boolean startContainer(JsonWriteContext child) throws IOException {
+    checkValue();
+    if (settledDepth != NOT_SETTLED) {
+      context = child;
+      depth++;
+      return settledIncluded;
+    }
+    boolean all = cursor.matchesAllBelow();
+    boolean include = all || cursor.getDepth() == 0 || cursor.matches();
+    if (include) {
+      // everything that's waiting, then this one's name
+      writeContainers();
+      writeCurrentName();
+    }
+    context = child;
+    depth++;
+    if (include) {
+      written = depth;
+      if (all) {
+        settle(true);
+      }
+    } else if (!cursor.matchesAnyBelow()) {
+      settle(false);
+    }
+    return include;
+  }
+
+  /**
+   * Leave the current context, returning whether the container was started in the delegate and should be ended.
+   */
+  private boolean endContainer() throws IOException {
+    boolean settled = settledDepth != NOT_SETTLED;
+    boolean include = settled ? settledIncluded : written == depth;
+    if (settledDepth == depth) {
+      settledDepth = NOT_SETTLED;
+    }
+    if (written == depth) {
+      written--;
+    }
+    boolean array = context.inArray();
+    context = context.getParent();
+    depth--;
+    if (!settled && !include) {
+      keepEmpty(array);
+    }
+    if (settledDepth == NOT_SETTLED && context.inObject()) {
+      cursor.ascend();
+    }
+    return include;
+  }
+
+  /**
+   * Keep the container just left, which had nothing matched in it, as an empty element if it is in an array. An object
+   * is only counted until the array is written, an array is written straight away along with the containers around it.
+   */
+  private void keepEmpty(boolean array) throws IOException {
+    int objects = takeEmptyObjects(depth + 1);
+    if (!context.inArray()) {
+      return;
+    }
+    if (array) {
+      writeContainers();
+      delegate.writeStartArray();
+      writeEmptyObjects(objects);
+      delegate.writeEndArray();
+    } else if (written == depth) {
+      writeEmptyObjects(1);
+    } else {
+      if (depth == emptyObjects.length) {
+        emptyObjects = Arrays.copyOf(emptyObjects, depth * 2);
+      }
+      emptyObjects[depth]++;
+    }
+  }
+
+  private int takeEmptyObjects(int containerDepth) {
+    if (containerDepth >= emptyObjects.length) {
+      return 0;
+    }
+    int objects = emptyObjects[containerDepth];
+    emptyObjects[containerDepth] = 0;
+    return objects;
+  }
+
+  private void writeEmptyObjects(int objects) throws IOException {
+    for (int i = 0; i < objects; i++) {
+      delegate.writeStartObject();
+      delegate.writeEndObject();
+    }
+  }
+
+  private boolean rawIncluded() {
+    return settledDepth != NOT_SETTLED ? settledIncluded : written == depth;
+  }
+
+  private void settle(boolean included) {
+    settledDepth = depth;
+    settledIncluded = included;
+  }
+
+  private void checkValue() throws JsonGenerationException {
+    if (context.inObject() && !expectingValue) {
+      _reportError("Can not write a value, expecting a field name");
+    }
+    expectingValue = false;
+    context.writeValue();
+  }
+
+  private void writeCurrentName() throws IOException {
+    if (context.inObject()) {
+      delegate.writeFieldName(context.getCurrentName());
+    }
+  }
+
+  /**
+   * Start, outermost first, any containers around the current value that haven't been started in the delegate yet.
+   */
+  private void writeContainers() throws IOException {
+    if (written == depth) {
+      return;
+    }
+    JsonWriteContext waiting = context;
+    for (int i = depth; i > written; i--) {
+      unwritten.add(waiting);
+      waiting = waiting.getParent();
+    }
+    for (int i = unwritten.size() - 1; i >= 0; i--) {
+      JsonWriteContext container = unwritten.get(i);
+      if (container.getParent().inObject()) {
+        delegate.writeFieldName(container.getParent().getCurrentName());
+      }
+      if (container.inArray()) {
+        delegate.writeStartArray();
+        // elements before this one that had nothing matched in them
+        writeEmptyObjects(takeEmptyObjects(depth - i));
+      } else {
+        delegate.writeStartObject();
+      }
+    }
+    unwritten.clear();
+    written = depth;
+  }
+}
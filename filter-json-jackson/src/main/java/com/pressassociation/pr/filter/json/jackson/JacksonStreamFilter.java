@@ -0,0 +1,290 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.filter.json.jackson;
+
+import com.google.common.collect.Lists;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.pressassociation.pr.match.MatchCursor;
+import com.pressassociation.pr.match.Matcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Filters json that has already been serialised, copying it token by token from a {@link JsonParser} to a
+ * {@link JsonGenerator} without binding it to any objects. This is useful for applying a partial response to json
+ * from elsewhere, for example when proxying another service.
+ *
+ * <p>Memory use doesn't depend on the size of the document, only how deeply it is nested. Branches that can't match
+ * are skipped using {@link JsonParser#skipChildren()}, branches that are matched in full are copied using
+ * {@link JsonGenerator#copyCurrentStructure(JsonParser)}. Array elements share the path of their array.
+ *
+ * <p>The output is the same as {@link JacksonMatcherFilter} would give for the same objects with one exception. Nothing
+ * is buffered, an object or array is written out once something in it is matched. Objects and arrays in a written
+ * array that have nothing matched in them are written empty so the other elements keep their positions, those that
+ * come before the array is written are only counted until then. An array in an array that has nothing matched in it
+ * can't be counted like that so the array around it is written out straight away, even if nothing else in it is
+ * matched later. Values at the root of the document are always written.
+ *
+ * <p>Instances are immutable and can be shared between threads.
+ *
+ * @author Matt Nathan
+ */
+public class JacksonStreamFilter {
+  private static final JsonFactory FACTORY = new JsonFactory()
+      .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+      .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+  private final Matcher matcher;
+
+  public JacksonStreamFilter(Matcher matcher) {
+    this.matcher = checkNotNull(matcher);
+  }
+
+  /**
+   * Get the matcher this filter is based on.
+   */
+  public Matcher getMatcher() {
+    return matcher;
+  }
+
+  /**
+   * Filter every json value read from the input into the output as UTF-8. Neither stream is closed.
+   *
+   * @param input  The json to filter
+   * @param output Where to write the filtered json
+   */
+  public void filter(InputStream input, OutputStream output) throws IOException {
+    checkNotNull(input);
+    checkNotNull(output);
+    JsonParser parser = FACTORY.createParser(input);
+    try {
+      JsonGenerator generator = FACTORY.createGenerator(output, JsonEncoding.UTF8);
+      try {
+        while (parser.nextToken() != null) {
+          filter(parser, generator);
+        }
+      } finally {
+        generator.close();
+      }
+    } finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Filter the next json value from the parser into the generator. The value starts at the parser's current token, or
+   * the next token if there isn't a current one, and the parser is left on the last token of the value. Neither the
+   * parser nor the generator are closed or flushed.
+   *
+   * @param parser    The json to filter
+   * @param generator Where to write the filtered json
+   */
+  public void filter(JsonParser parser, JsonGenerator generator) throws IOException {
+    checkNotNull(parser);
+    checkNotNull(generator);
+    JsonToken token = parser.getCurrentToken();
+    if (token == null) {
+      token = parser.nextToken();
+      if (token == null) {
+        return;
+      }
+    }
+    if (matcher.matchesAll()) {
+      generator.copyCurrentStructure(parser);
+      return;
+    }
+    new Walk(parser, generator, matcher.cursor()).run(token);
+  }
+
+  @Override
+  public String toString() {
+    return "JacksonStreamFilter[" + matcher + ']';
+  }
+
+  /**
+   * The state of filtering a single value. Containers are pushed as they are started, those that aren't known to be
+   * included are only written out when something in them is.
+   */
+  private static final class Walk {
+    private final JsonParser parser;
+    private final JsonGenerator generator;
+    private final MatchCursor cursor;
+    // containers entered, outermost first. Those before the written index have been started in the output
+    private final List<Container> containers = Lists.newArrayList();
+    private int written = 0;
+
+    Walk(JsonParser parser, JsonGenerator generator, MatchCursor cursor) {
+      this.parser = parser;
+      this.generator = generator;
+      this.cursor = cursor;
+    }
+
+    void run(JsonToken first) throws IOException {
+      value(first, null);
+      while (!containers.isEmpty()) {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.FIELD_NAME) {
+          String name = parser.getCurrentName();
+          cursor.descend(name);
+          value(parser.nextToken(), name);
+        } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+          end();
+        } else if (token == null) {
+          throw new IOException("Unexpected end of input");
+        } else {
+          // an array element, at the same path as the array
+          value(token, null);
+        }
+      }
+    }
+
+    /**
+     * Deal with the value at the parser's current token, with the cursor on its path. Field values have been
+     * descended into and are ascended from once they are done.
+     */
+    private void value(JsonToken token, @Nullable String name) throws IOException {
+      boolean atRoot = cursor.getDepth() == 0;
+      if (token.isStructStart()) {
+        if (cursor.matchesAllBelow()) {
+          writeField(name);
+          generator.copyCurrentStructure(parser);
+        } else if (atRoot || cursor.matches() || cursor.matchesAnyBelow()) {
+          containers.add(new Container(name, token == JsonToken.START_ARRAY));
+          if (atRoot || cursor.matches()) {
+            writeContainers();
+          }
+          // ascended from at the end of the container
+          return;
+        } else {
+          parser.skipChildren();
+        }
+      } else if (atRoot || cursor.matches()) {
+        writeField(name);
+        generator.copyCurrentEvent(parser);
+      }
+      if (name != null) {
+        cursor.ascend();
+      }
+    }
+
+    private void end() throws IOException {
+      Container container = containers.remove(containers.size() - 1);
+      if (written > containers.size()) {
+        written = containers.size();
+        if (container.array) {
+          generator.writeEndArray();
+        } else {
+          generator.writeEndObject();
+        }
+      } else if (!containers.isEmpty() && containers.get(containers.size() - 1).array) {
+        keepEmpty(container, containers.get(containers.size() - 1));
+      }
+      if (container.name != null) {
+        cursor.ascend();
+      }
+    }
+
+    /**
+     * Keep the given container, which had nothing matched in it, as an empty element of its array. An object is only
+     * counted until the array is written, an array is written straight away along with the containers around it.
+     */
+    private void keepEmpty(Container container, Container array) throws IOException {
+      if (container.array) {
+        writeContainers();
+        generator.writeStartArray();
+        writeEmptyObjects(container);
+        generator.writeEndArray();
+      } else if (written == containers.size()) {
+        generator.writeStartObject();
+        generator.writeEndObject();
+      } else {
+        array.emptyObjects++;
+      }
+    }
+
+    private void writeEmptyObjects(Container array) throws IOException {
+      for (; array.emptyObjects > 0; array.emptyObjects--) {
+        generator.writeStartObject();
+        generator.writeEndObject();
+      }
+    }
+
+    /**
+     * Write out any containers waiting on this field then the field's name, if it has one.
+     */
+    private void writeField(@Nullable String name) throws IOException {
+      writeContainers();
+      if (name != null) {
+        generator.writeFieldName(name);
+      }
+    }
+
+    /**
+     * Start all the containers that haven't been started yet, outermost first.
+     */
+    private void writeContainers() throws IOException {
+      for (; written < containers.size(); written++) {
+        Container container = containers.get(written);
+        if (container.name != null) {
+          generator.writeFieldName(container.name);
+        }
+        if (container.array) {
+          generator.writeStartArray();
+          // elements before this one that had nothing matched in them
+          writeEmptyObjects(container);
+        } else {
+          generator.writeStartObject();
+        }
+      }
+    }
+  }
+
+  /**
+   * An object or array that has been started in the input.
+   */
+  private static final class Container {
+    @Nullable
+    final String name;
+    final boolean array;
+    // the empty objects to write at the start of an array once it is written
+    int emptyObjects;
+
+    Container(@Nullable String name, boolean array) {
+      this.name = name;
+      this.array = array;
+    }
+  }
+}
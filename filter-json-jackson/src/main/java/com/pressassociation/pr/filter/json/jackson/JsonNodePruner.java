@@ -0,0 +1,124 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.filter.json.jackson;
+
+import com.google.common.collect.Lists;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ContainerNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.pressassociation.pr.match.MatchCursor;
+import com.pressassociation.pr.match.Matcher;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Removes, in place, everything from a tree of JsonNodes that isn't matched by a {@link Matcher}. The tree is walked
+ * depth first with an explicit stack so deeply nested trees are fine, branches that can't match are removed without
+ * being visited and those that are matched in full are kept without being visited.
+ *
+ * <p>Fields whose objects or arrays end up with nothing matched in them are removed, the same as the
+ * {@link JacksonMatcherFilter} would leave them out. Array elements share the path of their array, objects and arrays
+ * in them are kept but other values are only kept when the array itself is. Values at the root are always kept.
+ *
+ * @author Matt Nathan
+ */
+final class JsonNodePruner {
+
+  /**
+   * Remove everything from the given node that the matcher doesn't match.
+   */
+  static void prune(JsonNode node, Matcher matcher) {
+    checkNotNull(node);
+    checkNotNull(matcher);
+    if (matcher.matchesAll() || !(node instanceof ContainerNode)) {
+      return;
+    }
+    MatchCursor cursor = matcher.cursor();
+    List<Container> stack = Lists.newArrayList();
+    stack.add(new Container(node));
+    while (!stack.isEmpty()) {
+      Container container = stack.get(stack.size() - 1);
+      if (!container.children.hasNext()) {
+        stack.remove(stack.size() - 1);
+        if (!stack.isEmpty()) {
+          Container parent = stack.get(stack.size() - 1);
+          if (parent.object) {
+            cursor.ascend();
+            if (!container.matched) {
+              parent.children.remove();
+            }
+          }
+          parent.matched |= container.matched;
+        }
+        continue;
+      }
+
+      if (container.object) {
+        @SuppressWarnings("unchecked")
+        Map.Entry<String, JsonNode> field = (Map.Entry<String, JsonNode>) container.children.next();
+        cursor.descend(field.getKey());
+        if (cursor.matches() || cursor.matchesAllBelow()) {
+          container.matched = true;
+        } else if (field.getValue() instanceof ContainerNode && cursor.matchesAnyBelow()) {
+          // ascended from once the child is done
+          stack.add(new Container(field.getValue()));
+          continue;
+        } else {
+          container.children.remove();
+        }
+        cursor.ascend();
+      } else {
+        JsonNode element = (JsonNode) container.children.next();
+        if (element instanceof ContainerNode) {
+          stack.add(new Container(element));
+        } else if (cursor.getDepth() > 0) {
+          container.children.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * An object or array part way through being pruned.
+   */
+  private static final class Container {
+    final boolean object;
+    // fields for objects, elements for arrays. Both support remove
+    final Iterator<?> children;
+    boolean matched;
+
+    Container(JsonNode node) {
+      // instanceof rather than isObject() and friends which switch on getNodeType()
+      this.object = node instanceof ObjectNode;
+      this.children = object ? node.fields() : node.elements();
+    }
+  }
+
+  private JsonNodePruner() {}
+}
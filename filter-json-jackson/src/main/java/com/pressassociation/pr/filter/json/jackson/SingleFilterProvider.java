@@ -0,0 +1,66 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.filter.json.jackson;
+
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.PropertyFilter;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * FilterProvider for the one filter id used by {@link JacksonFilters}. Jackson asks for the filter every time it writes
+ * a bean, this answers with an identity check on the id instead of the map lookup a {@code SimpleFilterProvider} does.
+ *
+ * @author Matt Nathan
+ */
+final class SingleFilterProvider extends FilterProvider {
+  private final String filterId;
+  private final PropertyFilter filter;
+
+  SingleFilterProvider(String filterId, PropertyFilter filter) {
+    this.filterId = checkNotNull(filterId);
+    this.filter = checkNotNull(filter);
+  }
+
+  /**
+   * @deprecated Jackson no longer uses this method, the same as {@code SimpleFilterProvider} it is not supported.
+   */
+  @Override
+  @Deprecated
+  @SuppressWarnings("deprecation")
+  public com.fasterxml.jackson.databind.ser.BeanPropertyFilter findFilter(Object filterId) {
+    throw new UnsupportedOperationException("Access to deprecated filters not supported");
+  }
+
+  @Override
+  public PropertyFilter findPropertyFilter(Object filterId, @Nullable Object valueToFilter) {
+    // the id always comes from our own introspector so it is normally the very same string
+    if (filterId == this.filterId || this.filterId.equals(checkNotNull(filterId))) {
+      return filter;
+    }
+    throw new IllegalArgumentException("No filter configured with id '" + filterId + "'");
+  }
+}
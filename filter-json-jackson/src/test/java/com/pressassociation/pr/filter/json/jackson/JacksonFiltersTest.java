@@ -24,8 +24,13 @@
 
 package com.pressassociation.pr.filter.json.jackson;
 
+import com.google.common.collect.ImmutableMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.AnnotationIntrospector;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.introspect.Annotated;
 import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
 import com.fasterxml.jackson.databind.ser.PropertyFilter;
@@ -37,8 +42,11 @@ import org.junit.runner.RunWith;
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
 
+import java.io.StringWriter;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -73,6 +81,23 @@ public class JacksonFiltersTest {
    */
   private static class TestObject {}
 
+  /**
+   * Test object for serialisation tests.
+   */
+  @SuppressWarnings("UnusedDeclaration")
+  private static class TestBean {
+    public int a = 1;
+    public Nested b = new Nested();
+  }
+
+  /**
+   * Nested test object for serialisation tests.
+   */
+  @SuppressWarnings("UnusedDeclaration")
+  private static class Nested {
+    public int c = 2;
+  }
+
   @Test
   @Parameters(method = "methods")
   public void testFilterAllOutput(OverloadedFilterAllOutput method) {
@@ -89,6 +114,44 @@ public class JacksonFiltersTest {
     assertEquals(Matcher.of("foo/bar"), ((JacksonMatcherFilter) propertyFilter).getMatcher());
   }
 
+  @Test
+  public void testEnableFiltering() throws Exception {
+    ObjectMapper mapper = JacksonFilters.enableFiltering(new ObjectMapper());
+    ImmutableMap<String, Object> value = ImmutableMap.<String, Object>of("a", 1, "b", ImmutableMap.of("c", 2));
+    assertEquals("{\"a\":1,\"b\":{\"c\":2}}", mapper.writeValueAsString(new TestBean()));
+    assertEquals("{\"a\":1,\"b\":{\"c\":2}}", mapper.writeValueAsString(value));
+  }
+
+  @Test
+  public void testFilterAllOutputWriter() throws Exception {
+    ObjectMapper mapper = JacksonFilters.enableFiltering(new ObjectMapper());
+    ObjectWriter writer = mapper.writer();
+    assertEquals("{\"b\":{\"c\":2}}",
+                 JacksonFilters.filterAllOutput(writer, Matcher.of("b/c")).writeValueAsString(new TestBean()));
+    assertEquals("{\"a\":1}",
+                 JacksonFilters.filterAllOutput(writer, Matcher.of("a")).writeValueAsString(new TestBean()));
+    // the original writer and mapper are untouched
+    assertEquals("{\"a\":1,\"b\":{\"c\":2}}", writer.writeValueAsString(new TestBean()));
+  }
+
+  @Test
+  public void testFilterAllOutputGenerator() throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+    StringWriter output = new StringWriter();
+    JsonGenerator generator =
+        JacksonFilters.filterAllOutput(mapper.getFactory().createGenerator(output), Matcher.of("b/c"));
+    mapper.writeValue(generator, new TestBean());
+    assertEquals("{\"b\":{\"c\":2}}", output.toString());
+  }
+
+  @Test
+  public void testPrune() {
+    ObjectMapper mapper = new ObjectMapper();
+    ObjectNode node = mapper.valueToTree(new TestBean());
+    assertSame(node, JacksonFilters.prune(node, Matcher.of("b/c")));
+    assertEquals(mapper.valueToTree(ImmutableMap.of("b", ImmutableMap.of("c", 2))), node);
+  }
+
   @SuppressWarnings("UnusedDeclaration")
   private OverloadedFilterAllOutput[] methods() {
     return OverloadedFilterAllOutput.values();
@@ -25,7 +25,11 @@
 package com.pressassociation.pr.filter.json.jackson;
 
 import com.google.common.base.Objects;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultiset;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
 
 import com.fasterxml.jackson.annotation.JsonFilter;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -37,12 +41,17 @@ import com.pressassociation.pr.match.Matcher;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 
 /**
@@ -274,6 +283,102 @@ public class JacksonMatcherFilterTest {
         '}');
   }
 
+  @Test
+  public void testUnmatchedParentDiscarded() throws JsonProcessingException {
+    assertMatchesJson(
+        "address/missing,pets/name,version",
+        "{\n" +
+        "  \"version\" : 1,\n" +
+        "  \"pets\" : [ {\n" +
+        "    \"name\" : \"Lassie\"\n" +
+        "  }, {\n" +
+        "    \"name\" : \"Brian\"\n" +
+        "  }, {\n" +
+        "    \"name\" : \"Moggie\"\n" +
+        "  }, {\n" +
+        "    \"name\" : \"Black Beauty\"\n" +
+        "  } ]\n" +
+        '}');
+  }
+
+  @Test
+  public void testMatchedAfterUnmatchedSiblings() throws JsonProcessingException {
+    assertMatchesJson(
+        "address(postCode,missing)",
+        "{\n" +
+        "  \"address\" : {\n" +
+        "    \"postCode\" : \"S12 3IG\"\n" +
+        "  }\n" +
+        '}');
+  }
+
+  @Test
+  public void testGettersCalledAtMostOnce() throws JsonProcessingException {
+    assertGetterCalls("*", "name", "child", "x", "y");
+    assertGetterCalls("name", "name");
+    assertGetterCalls("child", "child", "x", "y");
+    // getters for properties that can't match are never called
+    assertGetterCalls("child/x", "child", "x");
+    assertGetterCalls("child(x,missing)", "child", "x");
+    assertGetterCalls("child/missing,name", "name", "child");
+    assertGetterCalls("missing");
+  }
+
+  @Test
+  public void testSharedBetweenThreads() throws Exception {
+    // stores with different numbers of pets so any state leaking between serialisations changes the output
+    final ObjectMapper mapper = new ObjectMapper();
+    mapper.setFilters(new SimpleFilterProvider().addFilter(
+        "test", new JacksonMatcherFilter(Matcher.of("address/postCode,pets/name,version"))));
+    final List<PetStore> stores = Lists.newArrayList();
+    List<String> expected = Lists.newArrayList();
+    for (int i = 0; i < 5; i++) {
+      PetStore store = new PetStore();
+      store.pets = store.pets.subList(0, i);
+      stores.add(store);
+      expected.add(mapper.writeValueAsString(store));
+    }
+
+    int threads = 8;
+    final int iterations = 500;
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<List<String>>> results = Lists.newArrayList();
+      for (int thread = 0; thread < threads; thread++) {
+        final int offset = thread;
+        results.add(executor.submit(new Callable<List<String>>() {
+          @Override
+          public List<String> call() throws Exception {
+            start.await();
+            List<String> json = Lists.newArrayList();
+            for (int i = 0; i < iterations; i++) {
+              json.add(mapper.writeValueAsString(stores.get((offset + i) % stores.size())));
+            }
+            return json;
+          }
+        }));
+      }
+      start.countDown();
+      for (int thread = 0; thread < threads; thread++) {
+        List<String> json = results.get(thread).get(1, TimeUnit.MINUTES);
+        for (int i = 0; i < iterations; i++) {
+          assertEquals(expected.get((thread + i) % stores.size()), json.get(i));
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testRootCollection() throws JsonProcessingException {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.setFilters(new SimpleFilterProvider().addFilter("test", new JacksonMatcherFilter(Matcher.of("version"))));
+    assertEquals("[{\"version\":1},{\"version\":1}]",
+                 mapper.writeValueAsString(ImmutableList.of(new PetStore(), new PetStore())));
+  }
+
   @Test
   public void testGetMatcher() {
     Matcher matcher = Matcher.of("foo/bar");
@@ -287,7 +392,58 @@ public class JacksonMatcherFilterTest {
     mapper.setFilters(new SimpleFilterProvider()
                           .addFilter("test", filter));
     assertEquals(json, mapper.writeValueAsString(new PetStore()));
-    assertNull("Runtime state was not cleared", filter.state.get());
+  }
+
+  private void assertGetterCalls(CharSequence fields, String... expectedCalls) throws JsonProcessingException {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.setFilters(new SimpleFilterProvider().addFilter("test", new JacksonMatcherFilter(Matcher.of(fields))));
+    Multiset<String> calls = HashMultiset.create();
+    mapper.writeValueAsString(new CountingBean(calls));
+    assertEquals("Getter calls for " + fields, ImmutableMultiset.copyOf(expectedCalls), calls);
+  }
+
+  /**
+   * Test object that records each call to its getters.
+   */
+  @JsonFilter("test")
+  public static class CountingBean {
+    private final Multiset<String> calls;
+
+    public CountingBean(Multiset<String> calls) {
+      this.calls = checkNotNull(calls);
+    }
+
+    public String getName() {
+      calls.add("name");
+      return "name";
+    }
+
+    public CountingChild getChild() {
+      calls.add("child");
+      return new CountingChild(calls);
+    }
+  }
+
+  /**
+   * Child test object that records each call to its getters.
+   */
+  @JsonFilter("test")
+  public static class CountingChild {
+    private final Multiset<String> calls;
+
+    public CountingChild(Multiset<String> calls) {
+      this.calls = checkNotNull(calls);
+    }
+
+    public String getX() {
+      calls.add("x");
+      return "x";
+    }
+
+    public String getY() {
+      calls.add("y");
+      return "y";
+    }
   }
 
   /**
@@ -0,0 +1,338 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.filter.json.jackson;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.testing.NullPointerTester;
+
+import com.fasterxml.jackson.core.JsonGenerationException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.pressassociation.pr.match.Matcher;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link JacksonMatcherGenerator}.
+ */
+@RunWith(JUnitParamsRunner.class)
+public class JacksonMatcherGeneratorTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String PERSON = "{'type':'type','version':1," +
+      "'address':{'line1':'123 Shop Road','line2':'Shop Town','postCode':'S12 3IG'}," +
+      "'pets':[{'type':'dog','name':'Lassie'},{'type':'cat','name':'Moggie','age':3}]}";
+
+  /**
+   * Bean with a custom serialiser for one of its properties.
+   */
+  @SuppressWarnings("UnusedDeclaration")
+  private static class Bean {
+    public int a = 1;
+    @JsonSerialize(using = PointSerializer.class)
+    public int[] point = {2, 3};
+    public Map<String, Object> map = ImmutableMap.<String, Object>of("x", 4, "y", ImmutableMap.of("x", 5));
+  }
+
+  /**
+   * Writes a point as an object with x and y fields.
+   */
+  private static class PointSerializer extends JsonSerializer<int[]> {
+    @Override
+    public void serialize(int[] value, JsonGenerator jgen, SerializerProvider provider) throws IOException {
+      jgen.writeStartObject();
+      jgen.writeNumberField("x", value[0]);
+      jgen.writeNumberField("y", value[1]);
+      jgen.writeEndObject();
+    }
+  }
+
+  @SuppressWarnings("unused")
+  private Object[] filteredJson() {
+    return new Object[]{
+        new Object[]{"*", PERSON, PERSON},
+        new Object[]{"missing", PERSON, "{}"},
+        new Object[]{"pets/age", PERSON, "{'pets':[{},{'age':3}]}"},
+        new Object[]{"pets/missing", PERSON, "{}"},
+        new Object[]{"type,version", PERSON, "{'type':'type','version':1}"},
+        new Object[]{"address/postCode", PERSON, "{'address':{'postCode':'S12 3IG'}}"},
+        new Object[]{"type,address(line1,line2)", PERSON,
+                     "{'type':'type','address':{'line1':'123 Shop Road','line2':'Shop Town'}}"},
+        new Object[]{"*/name", PERSON, "{'pets':[{'name':'Lassie'},{'name':'Moggie'}]}"},
+        new Object[]{"pets", PERSON,
+                     "{'pets':[{'type':'dog','name':'Lassie'},{'type':'cat','name':'Moggie','age':3}]}"},
+        new Object[]{"a/*/c", "{'a':{'b':{'c':1,'d':2},'c':3,'e':{'f':{'c':[4,5]}}}}",
+                     "{'a':{'b':{'c':1},'e':{'f':{'c':[4,5]}}}}"},
+        new Object[]{"a", "{'b':{'a':1},'a':null,'c':[]}", "{'a':null}"},
+        new Object[]{"a", "{'a':[[1,2],[3]],'b':[[1]]}", "{'a':[[1,2],[3]]}"},
+        new Object[]{"a/b", "{'a':[[{'b':1,'c':2}],[{'c':3}]]}", "{'a':[[{'b':1}],[{}]]}"},
+        new Object[]{"a/b", "{'a':[[{'c':1},[]],[{'b':2}]]}", "{'a':[[{},[]],[{'b':2}]]}"},
+        new Object[]{"a/b", "{'a':[{'c':1},{'c':2}],'d':[{'c':3}]}", "{}"},
+        new Object[]{"x/a", "{'x':[{'a':1},{'b':2}]}", "{'x':[{'a':1},{}]}"},
+        new Object[]{"x/a", "{'x':[{'b':1},[{'b':2}],{'a':3}]}", "{'x':[{},[{}],{'a':3}]}"},
+        new Object[]{"a/b", "{'a':[1,{'b':2}]}", "{'a':[{'b':2}]}"},
+        new Object[]{"a/b", "{'a':1}", "{}"},
+        new Object[]{"a", "[{'a':1,'b':2},{'b':3},4]", "[{'a':1},{},4]"},
+        new Object[]{"a", "'text'", "'text'"},
+        new Object[]{"a", "[]", "[]"},
+    };
+  }
+
+  @Test
+  @Parameters(method = "filteredJson")
+  public void testWriteTree(String pattern, String input, String expected) throws IOException {
+    StringWriter output = new StringWriter();
+    JsonGenerator generator = generator(output, pattern);
+    MAPPER.writeTree(generator, readTree(json(input)));
+    generator.close();
+
+    assertEquals(readTree(json(expected)), readTree(output.toString()));
+  }
+
+  @Test
+  @Parameters(method = "filteredJson")
+  public void testWriteMap(String pattern, String input, String expected) throws IOException {
+    StringWriter output = new StringWriter();
+    JsonGenerator generator = generator(output, pattern);
+    MAPPER.writeValue(generator, MAPPER.readValue(json(input), Object.class));
+
+    assertEquals(readTree(json(expected)), readTree(output.toString()));
+  }
+
+  @Test
+  @Parameters(method = "filteredJson")
+  public void testCopyStructure(String pattern, String input, String expected) throws IOException {
+    StringWriter output = new StringWriter();
+    JsonGenerator generator = generator(output, pattern);
+    JsonParser parser = MAPPER.getFactory().createParser(json(input));
+    parser.nextToken();
+    generator.copyCurrentStructure(parser);
+    generator.close();
+
+    assertEquals(readTree(json(expected)), readTree(output.toString()));
+  }
+
+  @SuppressWarnings("unused")
+  private Object[] filteredBeans() {
+    return new Object[]{
+        new Object[]{"*", "{'a':1,'point':{'x':2,'y':3},'map':{'x':4,'y':{'x':5}}}"},
+        new Object[]{"a", "{'a':1}"},
+        new Object[]{"point/y", "{'point':{'y':3}}"},
+        new Object[]{"*/x", "{'point':{'x':2},'map':{'x':4,'y':{'x':5}}}"},
+        new Object[]{"map/y", "{'map':{'y':{'x':5}}}"},
+        new Object[]{"missing", "{}"},
+    };
+  }
+
+  @Test
+  @Parameters(method = "filteredBeans")
+  public void testWriteBean(String pattern, String expected) throws IOException {
+    StringWriter output = new StringWriter();
+    MAPPER.writeValue(generator(output, pattern), new Bean());
+
+    assertEquals(readTree(json(expected)), readTree(output.toString()));
+  }
+
+  /**
+   * Bean holding elements of different types, not all of which have the filtered property.
+   */
+  @SuppressWarnings("UnusedDeclaration")
+  private static class Holder {
+    public List<Object> x;
+
+    Holder(Object... x) {
+      this.x = Arrays.asList(x);
+    }
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private static class A {
+    public int a = 1;
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private static class B {
+    public int b = 2;
+  }
+
+  @SuppressWarnings("unused")
+  private Object[] heterogeneousBeans() {
+    return new Object[]{
+        new Object[]{"x/a", new Holder(new A(), new B())},
+        new Object[]{"x/a", new Holder(new B(), new A())},
+        new Object[]{"x/b", new Holder(new A(), new B(), new A())},
+        new Object[]{"x/c", new Holder(new A(), new B())},
+        new Object[]{"x", new Holder(new A(), new B())},
+    };
+  }
+
+  @Test
+  @Parameters(method = "heterogeneousBeans")
+  public void testSameAsBeanFilter(String pattern, Holder holder) throws IOException {
+    StringWriter output = new StringWriter();
+    MAPPER.writeValue(generator(output, pattern), holder);
+    String filtered = JacksonFilters.filterAllOutput(new ObjectMapper(), pattern).writeValueAsString(holder);
+
+    assertEquals(readTree(filtered), readTree(output.toString()));
+  }
+
+  @Test
+  public void testOutputContext() throws IOException {
+    JsonGenerator generator = generator(new StringWriter(), "a");
+    generator.writeStartObject();
+    generator.writeFieldName("b");
+    assertEquals("b", generator.getOutputContext().getCurrentName());
+    generator.writeStartArray();
+    assertSame(true, generator.getOutputContext().inArray());
+    generator.writeEndArray();
+    generator.writeEndObject();
+    assertSame(true, generator.getOutputContext().inRoot());
+  }
+
+  @Test
+  public void testWriteBinaryStream() throws IOException {
+    StringWriter output = new StringWriter();
+    JsonGenerator generator = generator(output, "b");
+    generator.writeStartObject();
+    generator.writeFieldName("a");
+    assertEquals(3, generator.writeBinary(new ByteArrayInputStream(new byte[3]), -1));
+    generator.writeFieldName("b");
+    assertEquals(2, generator.writeBinary(new ByteArrayInputStream(new byte[2]), 2));
+    generator.writeEndObject();
+    generator.close();
+
+    assertEquals("{\"b\":\"AAA=\"}", output.toString());
+  }
+
+  @Test
+  public void testUnmatchedArrayInArray() throws IOException {
+    // written out along with the array around it rather than being held until something else in the array matches
+    assertEquals(readTree(json("{'a':[{},[{},{}],{}]}")),
+                 readTree(filter("a/b", "{'a':[{'c':1},[{'c':2},{'c':3}],{'c':4}],'d':[{'c':5}]}")));
+    assertEquals(readTree(json("{'a':[{},[{}],{'b':2}]}")),
+                 readTree(filter("a/b", "{'a':[{'c':1},[{'c':2}],{'b':2}]}")));
+  }
+
+  @Test
+  public void testManyUnmatchedElements() throws IOException {
+    StringBuilder input = new StringBuilder("{'a':[");
+    StringBuilder expected = new StringBuilder("{'a':[");
+    for (int i = 0; i < 10000; i++) {
+      input.append("{'c':").append(i).append("},");
+      expected.append("{},");
+    }
+    input.append("{'b':1}]}");
+    expected.append("{'b':1}]}");
+
+    assertEquals(readTree(json(expected.toString())), readTree(filter("a/b", input.toString())));
+    assertEquals(readTree("{}"), readTree(filter("a/b", input.toString().replace("'b'", "'c'"))));
+  }
+
+  @Test
+  public void testWriteRaw() throws IOException {
+    StringWriter output = new StringWriter();
+    JsonGenerator generator = generator(output, "b");
+    generator.writeStartObject();
+    generator.writeFieldName("a");
+    generator.writeRawValue("[1]");
+    generator.writeFieldName("b");
+    generator.writeRawValue("[2]");
+    generator.writeRaw(' ');
+    generator.writeEndObject();
+    generator.close();
+
+    assertEquals("{\"b\":[2] }", output.toString());
+  }
+
+  @Test(expected = JsonGenerationException.class)
+  public void testEndWithoutStart() throws IOException {
+    generator(new StringWriter(), "a").writeEndObject();
+  }
+
+  @Test(expected = JsonGenerationException.class)
+  public void testMismatchedEnd() throws IOException {
+    JsonGenerator generator = generator(new StringWriter(), "a");
+    generator.writeStartObject();
+    generator.writeEndArray();
+  }
+
+  @Test(expected = JsonGenerationException.class)
+  public void testValueWithoutName() throws IOException {
+    JsonGenerator generator = generator(new StringWriter(), "a");
+    generator.writeStartObject();
+    generator.writeNumber(1);
+  }
+
+  @Test
+  public void testGetMatcher() throws IOException {
+    Matcher matcher = Matcher.of("a/b");
+    JsonGenerator delegate = MAPPER.getFactory().createGenerator(new StringWriter());
+    assertSame(matcher, new JacksonMatcherGenerator(delegate, matcher).getMatcher());
+  }
+
+  @Test
+  public void testNulls() throws IOException {
+    NullPointerTester tester = new NullPointerTester();
+    tester.setDefault(JsonGenerator.class, MAPPER.getFactory().createGenerator(new StringWriter()));
+    tester.setDefault(Matcher.class, Matcher.of("a"));
+    tester.testAllPublicConstructors(JacksonMatcherGenerator.class);
+  }
+
+  private static JsonGenerator generator(StringWriter output, String pattern) throws IOException {
+    return new JacksonMatcherGenerator(MAPPER.getFactory().createGenerator(output), Matcher.of(pattern));
+  }
+
+  private static String filter(String pattern, String input) throws IOException {
+    StringWriter output = new StringWriter();
+    JsonGenerator generator = generator(output, pattern);
+    MAPPER.writeTree(generator, readTree(json(input)));
+    generator.close();
+    return output.toString();
+  }
+
+  private static String json(String singleQuoted) {
+    return singleQuoted.replace('\'', '"');
+  }
+
+  private static JsonNode readTree(String json) throws IOException {
+    return MAPPER.readTree(json);
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.filter.json.jackson;
+
+import com.google.common.base.Charsets;
+import com.google.common.testing.NullPointerTester;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pressassociation.pr.match.Matcher;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link JacksonStreamFilter}.
+ */
+@RunWith(JUnitParamsRunner.class)
+public class JacksonStreamFilterTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String PERSON = "{'type':'type','version':1," +
+      "'address':{'line1':'123 Shop Road','line2':'Shop Town','postCode':'S12 3IG'}," +
+      "'pets':[{'type':'dog','name':'Lassie'},{'type':'cat','name':'Moggie','age':3}]}";
+
+  @SuppressWarnings("unused")
+  private Object[] filteredJson() {
+    return new Object[]{
+        new Object[]{"*", PERSON, PERSON},
+        new Object[]{"missing", PERSON, "{}"},
+        new Object[]{"pets/age", PERSON, "{'pets':[{},{'age':3}]}"},
+        new Object[]{"pets/missing", PERSON, "{}"},
+        new Object[]{"type,version", PERSON, "{'type':'type','version':1}"},
+        new Object[]{"address/postCode", PERSON, "{'address':{'postCode':'S12 3IG'}}"},
+        new Object[]{"type,address(line1,line2)", PERSON,
+                     "{'type':'type','address':{'line1':'123 Shop Road','line2':'Shop Town'}}"},
+        new Object[]{"*/name", PERSON, "{'pets':[{'name':'Lassie'},{'name':'Moggie'}]}"},
+        new Object[]{"pets", PERSON,
+                     "{'pets':[{'type':'dog','name':'Lassie'},{'type':'cat','name':'Moggie','age':3}]}"},
+        new Object[]{"a/*/c", "{'a':{'b':{'c':1,'d':2},'c':3,'e':{'f':{'c':[4,5]}}}}",
+                     "{'a':{'b':{'c':1},'e':{'f':{'c':[4,5]}}}}"},
+        new Object[]{"a", "{'b':{'a':1},'a':null,'c':[]}", "{'a':null}"},
+        new Object[]{"a", "{'a':[[1,2],[3]],'b':[[1]]}", "{'a':[[1,2],[3]]}"},
+        new Object[]{"a/b", "{'a':[[{'b':1,'c':2}],[{'c':3}]]}", "{'a':[[{'b':1}],[{}]]}"},
+        new Object[]{"a/b", "{'a':[[{'c':1},[]],[{'b':2}]]}", "{'a':[[{},[]],[{'b':2}]]}"},
+        new Object[]{"a/b", "{'a':[{'c':1},{'c':2}],'d':[{'c':3}]}", "{}"},
+        new Object[]{"x/a", "{'x':[{'a':1},{'b':2}]}", "{'x':[{'a':1},{}]}"},
+        new Object[]{"x/a", "{'x':[{'b':1},[{'b':2}],{'a':3}]}", "{'x':[{},[{}],{'a':3}]}"},
+        new Object[]{"a/b", "{'a':[1,{'b':2}]}", "{'a':[{'b':2}]}"},
+        new Object[]{"a/b", "{'a':1}", "{}"},
+        new Object[]{"a", "[{'a':1,'b':2},{'b':3},4]", "[{'a':1},{},4]"},
+        new Object[]{"a", "'text'", "'text'"},
+        new Object[]{"a", "[]", "[]"},
+    };
+  }
+
+  @Test
+  @Parameters(method = "filteredJson")
+  public void testFilterParser(String pattern, String input, String expected) throws IOException {
+    JacksonStreamFilter filter = new JacksonStreamFilter(Matcher.of(pattern));
+    JsonParser parser = MAPPER.getFactory().createParser(json(input));
+    StringWriter output = new StringWriter();
+    JsonGenerator generator = MAPPER.getFactory().createGenerator(output);
+    filter.filter(parser, generator);
+    generator.close();
+
+    assertEquals(readTree(json(expected)), readTree(output.toString()));
+    // the parser is left on the last token of the value
+    assertEquals(null, parser.nextToken());
+  }
+
+  @Test
+  @Parameters(method = "filteredJson")
+  public void testFilterStream(String pattern, String input, String expected) throws IOException {
+    JacksonStreamFilter filter = new JacksonStreamFilter(Matcher.of(pattern));
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    filter.filter(new ByteArrayInputStream(json(input).getBytes(Charsets.UTF_8)), output);
+
+    assertEquals(readTree(json(expected)), readTree(new String(output.toByteArray(), Charsets.UTF_8)));
+  }
+
+  @Test
+  @Parameters(method = "filteredJson")
+  public void testSameAsPrune(String pattern, String input, String expected) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new JacksonStreamFilter(Matcher.of(pattern)).filter(
+        new ByteArrayInputStream(json(input).getBytes(Charsets.UTF_8)), output);
+
+    assertEquals(JacksonFilters.prune(readTree(json(input)), Matcher.of(pattern)),
+                 readTree(new String(output.toByteArray(), Charsets.UTF_8)));
+  }
+
+  @Test
+  public void testUnmatchedArrayInArray() throws IOException {
+    // written out along with the array around it rather than being held until something else in the array matches
+    assertEquals(readTree(json("{'a':[{},[{},{}],{}]}")),
+                 readTree(filter("a/b", "{'a':[{'c':1},[{'c':2},{'c':3}],{'c':4}],'d':[{'c':5}]}")));
+    assertEquals(readTree(json("{'a':[{},[{}],{'b':2}]}")),
+                 readTree(filter("a/b", "{'a':[{'c':1},[{'c':2}],{'b':2}]}")));
+  }
+
+  @Test
+  public void testManyUnmatchedElements() throws IOException {
+    StringBuilder input = new StringBuilder("{'a':[");
+    StringBuilder expected = new StringBuilder("{'a':[");
+    for (int i = 0; i < 10000; i++) {
+      input.append("{'c':").append(i).append("},");
+      expected.append("{},");
+    }
+    input.append("{'b':1}]}");
+    expected.append("{'b':1}]}");
+
+    assertEquals(readTree(json(expected.toString())), readTree(filter("a/b", input.toString())));
+    assertEquals(readTree("{}"), readTree(filter("a/b", input.toString().replace("'b'", "'c'"))));
+  }
+
+  @Test
+  public void testFilterStreamOfValues() throws IOException {
+    JacksonStreamFilter filter = new JacksonStreamFilter(Matcher.of("a"));
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    filter.filter(new ByteArrayInputStream(json("{'a':1,'b':2} {'b':3} [{'a':4}]").getBytes(Charsets.UTF_8)), output);
+
+    assertEquals(json("{\"a\":1} {} [{\"a\":4}]"), new String(output.toByteArray(), Charsets.UTF_8));
+  }
+
+  @Test
+  public void testFilterEmptyStream() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new JacksonStreamFilter(Matcher.of("a")).filter(new ByteArrayInputStream(new byte[0]), output);
+
+    assertEquals(0, output.size());
+  }
+
+  @Test
+  public void testFilterFromCurrentToken() throws IOException {
+    JsonParser parser = MAPPER.getFactory().createParser(json("{'outer':{'a':1,'b':2},'after':true}"));
+    assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+    assertEquals(JsonToken.FIELD_NAME, parser.nextToken());
+    assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+    StringWriter output = new StringWriter();
+    JsonGenerator generator = MAPPER.getFactory().createGenerator(output);
+    new JacksonStreamFilter(Matcher.of("b")).filter(parser, generator);
+    generator.close();
+
+    assertEquals("{\"b\":2}", output.toString());
+    assertEquals(JsonToken.FIELD_NAME, parser.nextToken());
+    assertEquals("after", parser.getCurrentName());
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedInput() throws IOException {
+    new JacksonStreamFilter(Matcher.of("a/b")).filter(
+        new ByteArrayInputStream(json("{'a':{'b':1").getBytes(Charsets.UTF_8)), new ByteArrayOutputStream());
+  }
+
+  @Test
+  public void testFilterLargeInput() throws IOException {
+    // deep enough that a recursive filter would run out of stack, wide enough to be noticed if held in memory
+    int depth = 5000;
+    int width = 20000;
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < depth; i++) {
+      input.append("{\"a\":");
+    }
+    input.append("[");
+    for (int i = 0; i < width; i++) {
+      input.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"skip\":{\"id\":[1,2,3]}}");
+    }
+    input.append("]");
+    for (int i = 0; i < depth; i++) {
+      input.append('}');
+    }
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new JacksonStreamFilter(Matcher.of("*/a/id")).filter(
+        new ByteArrayInputStream(input.toString().getBytes(Charsets.UTF_8)), output);
+
+    JsonParser parser = new JsonFactory().createParser(output.toByteArray());
+    int ids = 0;
+    for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+      if (token == JsonToken.FIELD_NAME) {
+        assertFalse(parser.getCurrentName().equals("skip"));
+        if (parser.getCurrentName().equals("id")) {
+          ids++;
+        }
+      }
+    }
+    assertEquals(width, ids);
+  }
+
+  @Test
+  public void testGetMatcher() {
+    Matcher matcher = Matcher.of("a/b");
+    assertSame(matcher, new JacksonStreamFilter(matcher).getMatcher());
+  }
+
+  @Test
+  public void testNulls() throws IOException {
+    NullPointerTester tester = new NullPointerTester();
+    tester.setDefault(JsonParser.class, MAPPER.getFactory().createParser("{}"));
+    tester.setDefault(JsonGenerator.class, MAPPER.getFactory().createGenerator(new StringWriter()));
+    tester.testAllPublicConstructors(JacksonStreamFilter.class);
+    tester.testAllPublicInstanceMethods(new JacksonStreamFilter(Matcher.of("a")));
+  }
+
+  private static String filter(String pattern, String input) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new JacksonStreamFilter(Matcher.of(pattern)).filter(
+        new ByteArrayInputStream(json(input).getBytes(Charsets.UTF_8)), output);
+    return new String(output.toByteArray(), Charsets.UTF_8);
+  }
+
+  private static String json(String singleQuoted) {
+    return singleQuoted.replace('\'', '"');
+  }
+
+  private static JsonNode readTree(String json) throws IOException {
+    return MAPPER.readTree(json);
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.filter.json.jackson;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.pressassociation.pr.match.Matcher;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link JsonNodePruner}.
+ */
+@RunWith(JUnitParamsRunner.class)
+public class JsonNodePrunerTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String PERSON = "{'type':'type','version':1," +
+      "'address':{'line1':'123 Shop Road','line2':'Shop Town','postCode':'S12 3IG'}," +
+      "'pets':[{'type':'dog','name':'Lassie'},{'type':'cat','name':'Moggie','age':3}]}";
+
+  @SuppressWarnings("unused")
+  private Object[] prunedJson() {
+    return new Object[]{
+        new Object[]{"*", PERSON, PERSON},
+        new Object[]{"missing", PERSON, "{}"},
+        new Object[]{"pets/age", PERSON, "{'pets':[{},{'age':3}]}"},
+        new Object[]{"pets/missing", PERSON, "{}"},
+        new Object[]{"type,version", PERSON, "{'type':'type','version':1}"},
+        new Object[]{"address/postCode", PERSON, "{'address':{'postCode':'S12 3IG'}}"},
+        new Object[]{"type,address(line1,line2)", PERSON,
+                     "{'type':'type','address':{'line1':'123 Shop Road','line2':'Shop Town'}}"},
+        new Object[]{"*/name", PERSON, "{'pets':[{'name':'Lassie'},{'name':'Moggie'}]}"},
+        new Object[]{"pets", PERSON,
+                     "{'pets':[{'type':'dog','name':'Lassie'},{'type':'cat','name':'Moggie','age':3}]}"},
+        new Object[]{"a/*/c", "{'a':{'b':{'c':1,'d':2},'c':3,'e':{'f':{'c':[4,5]}}}}",
+                     "{'a':{'b':{'c':1},'e':{'f':{'c':[4,5]}}}}"},
+        new Object[]{"a", "{'b':{'a':1},'a':null,'c':[]}", "{'a':null}"},
+        new Object[]{"a", "{'a':[[1,2],[3]],'b':[[1]]}", "{'a':[[1,2],[3]]}"},
+        new Object[]{"a/b", "{'a':[[{'b':1,'c':2}],[{'c':3}]]}", "{'a':[[{'b':1}],[{}]]}"},
+        new Object[]{"a/b", "{'a':[1,{'b':2}]}", "{'a':[{'b':2}]}"},
+        new Object[]{"a/b", "{'a':1}", "{}"},
+        new Object[]{"a/b", "{'a':{'c':{'b':1}}}", "{}"},
+        new Object[]{"a", "[{'a':1,'b':2},{'b':3},4]", "[{'a':1},{},4]"},
+        new Object[]{"a", "'text'", "'text'"},
+        new Object[]{"a", "[]", "[]"},
+    };
+  }
+
+  @Test
+  @Parameters(method = "prunedJson")
+  public void testPrune(String pattern, String input, String expected) throws IOException {
+    JsonNode node = readTree(input);
+    JsonNodePruner.prune(node, Matcher.of(pattern));
+
+    assertEquals(readTree(expected), node);
+  }
+
+  @Test
+  public void testPruneInPlace() throws IOException {
+    ObjectNode node = (ObjectNode) readTree("{'a':{'b':1,'c':2},'d':3}");
+    JsonNode a = node.get("a");
+    JsonNodePruner.prune(node, Matcher.of("a/b"));
+
+    assertSame(a, node.get("a"));
+    assertEquals(readTree("{'b':1}"), a);
+  }
+
+  @Test
+  public void testPruneDeep() throws IOException {
+    // deeper than a recursive walk could manage
+    int depth = 20000;
+    ObjectNode root = MAPPER.createObjectNode();
+    ObjectNode node = root;
+    for (int i = 0; i < depth; i++) {
+      node.put("drop", i);
+      node = node.putObject("a");
+    }
+    node.put("id", 1);
+    JsonNodePruner.prune(root, Matcher.of("*/id"));
+
+    node = root;
+    for (int i = 0; i < depth; i++) {
+      assertEquals(1, node.size());
+      node = (ObjectNode) node.get("a");
+    }
+    assertEquals(readTree("{'id':1}"), node);
+  }
+
+  private static JsonNode readTree(String singleQuoted) throws IOException {
+    return MAPPER.readTree(singleQuoted.replace('\'', '"'));
+  }
+}
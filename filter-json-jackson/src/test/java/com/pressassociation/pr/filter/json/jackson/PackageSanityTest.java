@@ -27,6 +27,9 @@ package com.pressassociation.pr.filter.json.jackson;
 import com.google.common.testing.AbstractPackageSanityTests;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.ser.PropertyWriter;
 import com.pressassociation.pr.match.Matcher;
@@ -47,5 +50,7 @@ public class PackageSanityTest extends AbstractPackageSanityTests {
     setDefault(SerializerProvider.class, mock(SerializerProvider.class));
     setDefault(PropertyWriter.class, mock(PropertyWriter.class));
     setDefault(CharSequence.class, "*");
+    setDefault(ObjectWriter.class, new ObjectMapper().writer());
+    setDefault(JsonNode.class, new ObjectMapper().createObjectNode());
   }
 }
@@ -0,0 +1,62 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.filter.json.jackson;
+
+import com.fasterxml.jackson.databind.ser.PropertyFilter;
+import com.pressassociation.pr.match.Matcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link SingleFilterProvider}.
+ */
+public class SingleFilterProviderTest {
+
+  private final PropertyFilter filter = new JacksonMatcherFilter(Matcher.of("a/b"));
+  private final SingleFilterProvider provider = new SingleFilterProvider("test", filter);
+
+  @Test
+  public void testFindPropertyFilter() {
+    assertSame(filter, provider.findPropertyFilter("test", new Object()));
+    assertSame(filter, provider.findPropertyFilter("test", null));
+  }
+
+  @Test
+  public void testFindPropertyFilterWithEqualId() {
+    assertSame(filter, provider.findPropertyFilter(new String("test"), new Object()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFindPropertyFilterUnknownId() {
+    provider.findPropertyFilter("other", new Object());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  @SuppressWarnings("deprecation")
+  public void testFindFilter() {
+    provider.findFilter("test");
+  }
+}
@@ -25,18 +25,46 @@
 package com.pressassociation.pr.ast;
 
 import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Lists;
 
 import com.pressassociation.pr.ast.visitor.AstVisitor;
 import com.pressassociation.pr.ast.visitor.ToStringVisitor;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
 import javax.annotation.Nullable;
 
 /**
- * Represents a node in a partial response AST. All other nodes types extend from this type.
+ * <p>Represents a node in a partial response AST. All other nodes types extend from this type.
+ *
+ * <p>Nodes are immutable, their hash codes and string forms are computed once and then cached. Nodes created via the
+ * static {@code of} factory methods of each type are interned so identical trees share the same instances, which makes
+ * comparing them as cheap as comparing references. Neither comparing nor hashing recurses, so very long or deeply
+ * nested trees can't overflow the stack.
  *
  * @author Matt Nathan
  */
 public abstract class AstNode {
+  private static final Interner<AstNode> INTERNER = Interners.newWeakInterner();
+
+  // lazily computed, threads racing to compute these will all compute the same values
+  private int hashCode;
+  private String stringValue;
+
+  /**
+   * Get the shared instance that is equal to the given node.
+   */
+  @SuppressWarnings("unchecked")
+  static <T extends AstNode> T intern(T node) {
+    // equal nodes are always of the same class
+    return (T) INTERNER.intern(node);
+  }
+
   /**
    * Apply the given visitor over the tree represented by this node.
    */
@@ -44,37 +72,127 @@ public abstract class AstNode {
 
   @Override
   public String toString() {
-    return new ToStringVisitor().applyTo(this);
+    String result = stringValue;
+    if (result == null) {
+      result = new ToStringVisitor().applyTo(this);
+      stringValue = result;
+    }
+    return result;
   }
 
   /**
-   * Compares objects by string.
+   * Compares nodes by structure. Nodes are equal if they are of the same type and their children are equal.
    *
    * @param other The other object
-   * @return Whether the string representations of this and other are the same
+   * @return Whether this and other represent the same tree
    */
   @Override
   public boolean equals(@Nullable Object other) {
     if (other == this) {
       return true;
     }
-    if (other == null) {
+    if (!(other instanceof AstNode)) {
       return false;
     }
-    if (!getClass().isInstance(other)) {
-      return false;
+    Deque<AstNode> pending = new ArrayDeque<AstNode>();
+    pending.addLast(this);
+    pending.addLast((AstNode) other);
+    while (!pending.isEmpty()) {
+      AstNode right = pending.removeLast();
+      AstNode left = pending.removeLast();
+      if (left == right) {
+        continue;
+      }
+      if (left.getClass() != right.getClass() || left.hashCode() != right.hashCode() || !left.equalsNode(right)) {
+        return false;
+      }
+      List<AstNode> leftChildren = left.getChildren();
+      List<AstNode> rightChildren = right.getChildren();
+      for (int i = 0; i < leftChildren.size(); i++) {
+        pending.addLast(leftChildren.get(i));
+        pending.addLast(rightChildren.get(i));
+      }
     }
-    String otherString = other.toString();
-    return toString().equals(otherString);
+    return true;
   }
 
   /**
-   * Uses the string representation to compute the hash.
+   * Computes the hash from the structure of the tree the first time it is called.
    *
    * @return The hash code.
    */
   @Override
   public int hashCode() {
-    return Objects.hashCode(getClass(), toString().hashCode());
+    int result = hashCode;
+    if (result == 0) {
+      computeChildHashCodes();
+      result = computeHashCode();
+      hashCode = result;
+    }
+    return result;
+  }
+
+  /**
+   * Get the direct children of this node, in order. Leaf nodes have none.
+   */
+  List<AstNode> getChildren() {
+    return ImmutableList.of();
+  }
+
+  /**
+   * Compare the parts of this node that aren't children with another node of the same type, the children are compared
+   * separately. The default implementation compares the string representations.
+   */
+  protected boolean equalsNode(AstNode other) {
+    return toString().equals(other.toString());
+  }
+
+  /**
+   * Compute the hash code for this node, called at most once per node in the absence of races. Subclasses should
+   * combine the hashes of their children, which will already have been computed, the default implementation uses the
+   * string representation.
+   */
+  protected int computeHashCode() {
+    return Objects.hashCode(getClass(), toString());
+  }
+
+  /**
+   * Combine the hashes of the children of a node of the given type. Unlike {@link Objects#hashCode(Object...)} the
+   * hashes are mixed at every step, so the hash of a long chain of paths or fields isn't just a weighted sum of the
+   * names in it, which would be the same for many different chains.
+   */
+  static int combineHashCodes(Class<? extends AstNode> type, AstNode first, AstNode second) {
+    return mix(31 * mix(31 * type.getName().hashCode() + first.hashCode()) + second.hashCode());
+  }
+
+  private static int mix(int hash) {
+    // the murmur3 finaliser
+    int result = hash;
+    result ^= result >>> 16;
+    result *= 0x85ebca6b;
+    result ^= result >>> 13;
+    result *= 0xc2b2ae35;
+    result ^= result >>> 16;
+    return result;
+  }
+
+  /**
+   * Compute the hash codes of all the nodes below this one that haven't got one yet, deepest first, so computing the
+   * hash of any one node never has to recurse.
+   */
+  private void computeChildHashCodes() {
+    List<AstNode> uncached = Lists.newArrayList();
+    Deque<AstNode> pending = new ArrayDeque<AstNode>(getChildren());
+    while (!pending.isEmpty()) {
+      AstNode node = pending.removeLast();
+      if (node.hashCode == 0) {
+        uncached.add(node);
+        pending.addAll(node.getChildren());
+      }
+    }
+    // every node was added before any of the nodes below it
+    for (AstNode node : Lists.reverse(uncached)) {
+      node.hashCode();
+    }
   }
 }
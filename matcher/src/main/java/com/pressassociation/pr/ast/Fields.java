@@ -24,8 +24,12 @@
 
 package com.pressassociation.pr.ast;
 
+import com.google.common.collect.ImmutableList;
+
 import com.pressassociation.pr.ast.visitor.AstVisitor;
 
+import java.util.List;
+
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -37,6 +41,13 @@ public class Fields extends AstNode {
   private final Field field;
   private final AstNode next;
 
+  /**
+   * Get the shared Fields with the given children.
+   */
+  public static Fields of(Field field, AstNode next) {
+    return intern(new Fields(field, next));
+  }
+
   public Fields(Field field, AstNode next) {
     this.field = checkNotNull(field);
     this.next = checkNotNull(next);
@@ -50,6 +61,22 @@ public class Fields extends AstNode {
     return next;
   }
 
+  @Override
+  List<AstNode> getChildren() {
+    return ImmutableList.<AstNode>of(field, next);
+  }
+
+  @Override
+  protected boolean equalsNode(AstNode other) {
+    // we have nothing to compare but our children
+    return true;
+  }
+
+  @Override
+  protected int computeHashCode() {
+    return combineHashCodes(Fields.class, field, next);
+  }
+
   @Override
   public void apply(AstVisitor visitor) {
     visitor.visitFields(this);
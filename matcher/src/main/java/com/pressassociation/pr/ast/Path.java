@@ -24,8 +24,12 @@
 
 package com.pressassociation.pr.ast;
 
+import com.google.common.collect.ImmutableList;
+
 import com.pressassociation.pr.ast.visitor.AstVisitor;
 
+import java.util.List;
+
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -37,6 +41,13 @@ public class Path extends Field {
   private final Node prefix;
   private final Field suffix;
 
+  /**
+   * Get the shared Path with the given children.
+   */
+  public static Path of(Node prefix, Field suffix) {
+    return intern(new Path(prefix, suffix));
+  }
+
   public Path(Node prefix, Field suffix) {
     this.prefix = checkNotNull(prefix);
     this.suffix = checkNotNull(suffix);
@@ -50,6 +61,22 @@ public class Path extends Field {
     return suffix;
   }
 
+  @Override
+  List<AstNode> getChildren() {
+    return ImmutableList.<AstNode>of(prefix, suffix);
+  }
+
+  @Override
+  protected boolean equalsNode(AstNode other) {
+    // we have nothing to compare but our children
+    return true;
+  }
+
+  @Override
+  protected int computeHashCode() {
+    return combineHashCodes(Path.class, prefix, suffix);
+  }
+
   @Override
   public void apply(AstVisitor visitor) {
     visitor.visitPath(this);
@@ -24,8 +24,12 @@
 
 package com.pressassociation.pr.ast;
 
+import com.google.common.collect.ImmutableList;
+
 import com.pressassociation.pr.ast.visitor.AstVisitor;
 
+import java.util.List;
+
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -37,6 +41,13 @@ public class SubSelection extends Node {
   private final Name name;
   private final AstNode fields;
 
+  /**
+   * Get the shared SubSelection with the given children.
+   */
+  public static SubSelection of(Name name, AstNode fields) {
+    return intern(new SubSelection(name, fields));
+  }
+
   public SubSelection(Name name, AstNode fields) {
     this.name = checkNotNull(name);
     this.fields = checkNotNull(fields);
@@ -50,6 +61,22 @@ public class SubSelection extends Node {
     return name;
   }
 
+  @Override
+  List<AstNode> getChildren() {
+    return ImmutableList.<AstNode>of(name, fields);
+  }
+
+  @Override
+  protected boolean equalsNode(AstNode other) {
+    // we have nothing to compare but our children
+    return true;
+  }
+
+  @Override
+  protected int computeHashCode() {
+    return combineHashCodes(SubSelection.class, name, fields);
+  }
+
   @Override
   public void apply(AstVisitor visitor) {
     visitor.visitSubSelection(this);
@@ -24,6 +24,8 @@
 
 package com.pressassociation.pr.ast;
 
+import com.google.common.base.Objects;
+
 import com.pressassociation.pr.ast.visitor.AstVisitor;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -37,6 +39,13 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class Word extends Name {
   private final String stringValue;
 
+  /**
+   * Get the shared Word for the given value.
+   */
+  public static Word of(String stringValue) {
+    return intern(new Word(stringValue));
+  }
+
   public Word(String stringValue) {
     checkNotNull(stringValue);
     checkArgument(!stringValue.isEmpty(), "stringValue cannot be empty");
@@ -51,4 +60,14 @@ public class Word extends Name {
   public void apply(AstVisitor visitor) {
     visitor.visitWord(this);
   }
+
+  @Override
+  protected boolean equalsNode(AstNode other) {
+    return stringValue.equals(((Word) other).stringValue);
+  }
+
+  @Override
+  protected int computeHashCode() {
+    return Objects.hashCode(Word.class, stringValue);
+  }
 }
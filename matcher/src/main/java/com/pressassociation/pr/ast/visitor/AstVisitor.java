@@ -24,22 +24,73 @@
 
 package com.pressassociation.pr.ast.visitor;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
 import com.pressassociation.pr.ast.*;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 /**
- * A visitor over an AST tree. While this class is abstract it doesn't require any methods to be implemented. The tree
- * is traversed automatically by default, sub-classes can override this behaviour if they need to.
+ * <p>A visitor over an AST tree. While this class is abstract it doesn't require any methods to be implemented. The
+ * tree is traversed automatically by default, sub-classes can override this behaviour if they need to.
+ *
+ * <p>The traversal uses an explicit stack rather than recursion so very long or deeply nested patterns can't overflow
+ * the call stack. Work that needs doing as a node is entered belongs in the {@code before} hooks, for example
+ * {@link #beforeFields(Fields)}, and work that needs the children to have been visited first in the {@code after}
+ * hooks, for example {@link #afterFields(Fields)}.
+ *
+ * <p>Overriding {@link #visitFields(Fields)}, {@link #visitPath(Path)} or {@link #visitSubSelection(SubSelection)}
+ * still works as it always has: calling the super implementation visits the children before it returns, not calling
+ * it skips them. Each such call nests on the call stack though, so visitors that may see very large patterns should
+ * use the hooks instead.
  *
  * @author Matt Nathan
  */
 public abstract class AstVisitor {
+  private static final int FIELDS = 1;
+  private static final int PATH = 2;
+  private static final int SUB_SELECTION = 4;
+  // which of the visit methods with children each visitor class overrides
+  private static final LoadingCache<Class<?>, Integer> OVERRIDDEN = CacheBuilder.newBuilder()
+      .weakKeys()
+      .build(new CacheLoader<Class<?>, Integer>() {
+        @Override
+        public Integer load(Class<?> type) {
+          return (overrides(type, "visitFields", Fields.class) ? FIELDS : 0)
+              | (overrides(type, "visitPath", Path.class) ? PATH : 0)
+              | (overrides(type, "visitSubSelection", SubSelection.class) ? SUB_SELECTION : 0);
+        }
+      });
+
+  private final int overridden = OVERRIDDEN.getUnchecked(getClass());
+  // null unless a traversal is in progress
+  private Deque<Step> steps;
+  // the child the traversal loop is dispatching to a visit method that isn't overridden, if any
+  private AstNode dispatching;
+
+  /**
+   * Visit a Fields node, visiting its children before returning.
+   */
   public void visitFields(Fields fields) {
-    fields.getField().apply(this);
-    if (beforeFieldsNext(fields)) {
-      fields.getNext().apply(this);
+    if (dispatching == fields) {
+      // called straight from the traversal loop, let it visit our children
+      dispatching = null;
+      steps.addLast(enterFields(fields));
+    } else {
+      traverse(enterFields(fields));
     }
   }
 
+  /**
+   * Called when a Fields node is visited, before any of its children.
+   */
+  protected void beforeFields(Fields fields) {
+    // empty
+  }
+
   /**
    * Called before the right hand side of a Fields node is visited. Return false to stop processing of that node.
    */
@@ -47,13 +98,33 @@ public abstract class AstVisitor {
     return true;
   }
 
+  /**
+   * Called after a Fields node and those of its children that were processed have been visited.
+   */
+  protected void afterFields(Fields fields) {
+    // empty
+  }
+
+  /**
+   * Visit a Path node, visiting its children before returning.
+   */
   public void visitPath(Path path) {
-    path.getPrefix().apply(this);
-    if (beforePathField(path)) {
-      path.getSuffix().apply(this);
+    if (dispatching == path) {
+      // called straight from the traversal loop, let it visit our children
+      dispatching = null;
+      steps.addLast(enterPath(path));
+    } else {
+      traverse(enterPath(path));
     }
   }
 
+  /**
+   * Called when a Path node is visited, before any of its children.
+   */
+  protected void beforePath(Path path) {
+    // empty
+  }
+
   /**
    * Called before the suffix part of a Path node is visited. Return false to stop processing.
    */
@@ -61,14 +132,33 @@ public abstract class AstVisitor {
     return true;
   }
 
+  /**
+   * Called after a Path node and those of its children that were processed have been visited.
+   */
+  protected void afterPath(Path path) {
+    // empty
+  }
+
+  /**
+   * Visit a SubSelection node, visiting its children before returning.
+   */
   public void visitSubSelection(SubSelection subSelection) {
-    subSelection.getName().apply(this);
-    if (beforeSubSelectionFields(subSelection)) {
-      subSelection.getFields().apply(this);
-      afterSubSelectionFields(subSelection);
+    if (dispatching == subSelection) {
+      // called straight from the traversal loop, let it visit our children
+      dispatching = null;
+      steps.addLast(enterSubSelection(subSelection));
+    } else {
+      traverse(enterSubSelection(subSelection));
     }
   }
 
+  /**
+   * Called when a SubSelection node is visited, before any of its children.
+   */
+  protected void beforeSubSelection(SubSelection subSelection) {
+    // empty
+  }
+
   /**
    * Called before the fields part of a SubSelection is visited. Return false to stop processing.
    */
@@ -83,6 +173,13 @@ public abstract class AstVisitor {
     // empty
   }
 
+  /**
+   * Called after a SubSelection node and those of its children that were processed have been visited.
+   */
+  protected void afterSubSelection(SubSelection subSelection) {
+    // empty
+  }
+
   public void visitWildcard(Wildcard wildcard) {
     // empty on purpose
   }
@@ -90,4 +187,191 @@ public abstract class AstVisitor {
   public void visitWord(Word word) {
     // empty on purpose
   }
+
+  private Step enterFields(Fields fields) {
+    beforeFields(fields);
+    return new FieldsStep(fields);
+  }
+
+  private Step enterPath(Path path) {
+    beforePath(path);
+    return new PathStep(path);
+  }
+
+  private Step enterSubSelection(SubSelection subSelection) {
+    beforeSubSelection(subSelection);
+    return new SubSelectionStep(subSelection);
+  }
+
+  /**
+   * Visit the children of the given step, and theirs, before returning. Children whose visit method isn't overridden
+   * push their step onto the stack of this loop instead of starting a nested one, so they need no stack frame of their
+   * own.
+   */
+  private void traverse(Step step) {
+    boolean outermost = steps == null;
+    if (outermost) {
+      steps = new ArrayDeque<Step>();
+    }
+    int depth = steps.size();
+    try {
+      steps.addLast(step);
+      while (steps.size() > depth) {
+        AstNode child = steps.getLast().next(this);
+        if (child == null) {
+          steps.removeLast();
+        } else {
+          dispatching = isInlined(child) ? child : null;
+          child.apply(this);
+        }
+      }
+    } finally {
+      dispatching = null;
+      if (outermost) {
+        steps = null;
+      } else {
+        // an exception part way through, don't leave our steps for the traversal we're nested in
+        while (steps.size() > depth) {
+          steps.removeLast();
+        }
+      }
+    }
+  }
+
+  private boolean isInlined(AstNode child) {
+    return child.getClass() == Fields.class && (overridden & FIELDS) == 0
+        || child.getClass() == Path.class && (overridden & PATH) == 0
+        || child.getClass() == SubSelection.class && (overridden & SUB_SELECTION) == 0;
+  }
+
+  private static boolean overrides(Class<?> type, String name, Class<?> parameterType) {
+    try {
+      return type.getMethod(name, parameterType).getDeclaringClass() != AstVisitor.class;
+    } catch (NoSuchMethodException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * The progress made visiting the two children of a node, calling the hooks for the node along the way.
+   */
+  private abstract static class Step {
+    private boolean firstReturned;
+    private boolean secondChecked;
+    boolean secondReturned;
+
+    /**
+     * Get the next child of the node that should be visited, or null if there are none left.
+     */
+    AstNode next(AstVisitor visitor) {
+      if (!firstReturned) {
+        firstReturned = true;
+        return first();
+      }
+      if (!secondChecked) {
+        secondChecked = true;
+        if (before(visitor)) {
+          secondReturned = true;
+          return second();
+        }
+      }
+      after(visitor);
+      return null;
+    }
+
+    abstract AstNode first();
+
+    abstract boolean before(AstVisitor visitor);
+
+    abstract AstNode second();
+
+    abstract void after(AstVisitor visitor);
+  }
+
+  private static final class FieldsStep extends Step {
+    private final Fields fields;
+
+    FieldsStep(Fields fields) {
+      this.fields = fields;
+    }
+
+    @Override
+    AstNode first() {
+      return fields.getField();
+    }
+
+    @Override
+    boolean before(AstVisitor visitor) {
+      return visitor.beforeFieldsNext(fields);
+    }
+
+    @Override
+    AstNode second() {
+      return fields.getNext();
+    }
+
+    @Override
+    void after(AstVisitor visitor) {
+      visitor.afterFields(fields);
+    }
+  }
+
+  private static final class PathStep extends Step {
+    private final Path path;
+
+    PathStep(Path path) {
+      this.path = path;
+    }
+
+    @Override
+    AstNode first() {
+      return path.getPrefix();
+    }
+
+    @Override
+    boolean before(AstVisitor visitor) {
+      return visitor.beforePathField(path);
+    }
+
+    @Override
+    AstNode second() {
+      return path.getSuffix();
+    }
+
+    @Override
+    void after(AstVisitor visitor) {
+      visitor.afterPath(path);
+    }
+  }
+
+  private static final class SubSelectionStep extends Step {
+    private final SubSelection subSelection;
+
+    SubSelectionStep(SubSelection subSelection) {
+      this.subSelection = subSelection;
+    }
+
+    @Override
+    AstNode first() {
+      return subSelection.getName();
+    }
+
+    @Override
+    boolean before(AstVisitor visitor) {
+      return visitor.beforeSubSelectionFields(subSelection);
+    }
+
+    @Override
+    AstNode second() {
+      return subSelection.getFields();
+    }
+
+    @Override
+    void after(AstVisitor visitor) {
+      if (secondReturned) {
+        visitor.afterSubSelectionFields(subSelection);
+      }
+      visitor.afterSubSelection(subSelection);
+    }
+  }
 }
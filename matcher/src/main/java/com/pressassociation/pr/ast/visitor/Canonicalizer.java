@@ -0,0 +1,190 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.ast.visitor;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.pressassociation.pr.ast.AstNode;
+import com.pressassociation.pr.ast.Field;
+import com.pressassociation.pr.ast.Fields;
+import com.pressassociation.pr.ast.Name;
+import com.pressassociation.pr.ast.Path;
+import com.pressassociation.pr.ast.SubSelection;
+import com.pressassociation.pr.ast.Wildcard;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Rewrites patterns into a canonical form, so patterns that differ only in the order of their fields, in repeated
+ * fields or in branches that other branches already include are rewritten to the same tree. For example
+ * {@code title,id}, {@code id,title,id} and {@code id,title,title/text} all become {@code id,title}, as does
+ * {@code id,title} itself.
+ *
+ * <p>The canonical form is the prefix tree of the pattern's {@link ExpandedPaths expanded paths} with the children of
+ * each name sorted, so {@code a/b,a/c} and {@code a(c,b)} both become {@code a(b,c)}. A path is left out when a shorter
+ * path ends at one of its ancestors, or when its parent is followed by a trailing wildcard, as either includes
+ * everything the longer path does.
+ *
+ * <p>The canonical form matches the same paths as the original pattern, though paths below a branch that was left out
+ * are no longer the parents of anything in the pattern. Patterns that expand to more than {@link #MAX_NAMES} names are
+ * returned as they are.
+ *
+ * @author Matt Nathan
+ */
+public final class Canonicalizer {
+  /**
+   * The most names we will read from the expanded paths of a pattern before giving up on it.
+   */
+  public static final int MAX_NAMES = 1 << 18;
+
+  private static final Comparator<TrieNode> BY_NAME = new Comparator<TrieNode>() {
+    @Override
+    public int compare(TrieNode left, TrieNode right) {
+      return left.name.toString().compareTo(right.name.toString());
+    }
+  };
+
+  /**
+   * Get the canonical form of the given pattern. The result is interned, equal canonical forms are the same instance.
+   */
+  public static AstNode canonicalize(AstNode ast) {
+    checkNotNull(ast);
+    TrieNode root = new TrieNode(null);
+    int names = 0;
+    for (Field path : ExpandedPaths.of(ast)) {
+      TrieNode node = root;
+      Field remaining = path;
+      while (node != null) {
+        if (++names > MAX_NAMES) {
+          return ast;
+        }
+        if (remaining instanceof Path) {
+          node = node.child((Name) ((Path) remaining).getPrefix());
+          remaining = ((Path) remaining).getSuffix();
+        } else {
+          node.end((Name) remaining);
+          node = null;
+        }
+      }
+    }
+    return toAst(root);
+  }
+
+  /**
+   * Build the ast for the tree bottom up without recursing, so a very long path can't overflow the stack.
+   */
+  private static AstNode toAst(TrieNode root) {
+    List<TrieNode> order = Lists.newArrayList();
+    Deque<TrieNode> pending = new ArrayDeque<TrieNode>();
+    pending.addLast(root);
+    while (!pending.isEmpty()) {
+      TrieNode node = pending.removeLast();
+      order.add(node);
+      pending.addAll(node.children.values());
+    }
+    // every node was added before any of its children
+    for (TrieNode node : Lists.reverse(order)) {
+      if (node.children.isEmpty()) {
+        node.field = node.name;
+        continue;
+      }
+      List<TrieNode> children = Lists.newArrayList(node.children.values());
+      Collections.sort(children, BY_NAME);
+      AstNode fields = children.get(children.size() - 1).field;
+      for (int i = children.size() - 2; i >= 0; i--) {
+        fields = Fields.of(children.get(i).field, fields);
+      }
+      if (node == root) {
+        return fields;
+      } else if (children.size() == 1) {
+        node.field = Path.of(node.name, (Field) fields);
+      } else {
+        node.field = SubSelection.of(node.name, fields);
+      }
+    }
+    throw new AssertionError("The root is always the last node");
+  }
+
+  private Canonicalizer() {}
+
+  /**
+   * A name in the prefix tree. Nodes that end a path have no children, they already include everything below them.
+   */
+  private static final class TrieNode {
+    final Name name;
+    final Map<Name, TrieNode> children = Maps.newHashMap();
+    boolean ends = false;
+    // the canonical form of the tree from here down, once it has been built
+    Field field;
+
+    TrieNode(Name name) {
+      this.name = name;
+    }
+
+    /**
+     * Get the child for the given name, or null if a path ending here or a trailing wildcard already includes it.
+     */
+    TrieNode child(Name childName) {
+      if (ends || endsWithWildcard()) {
+        return null;
+      }
+      TrieNode child = children.get(childName);
+      if (child == null) {
+        child = new TrieNode(childName);
+        children.put(childName, child);
+      }
+      return child;
+    }
+
+    /**
+     * Record a path that ends with the given name below this node.
+     */
+    void end(Name childName) {
+      TrieNode child = child(childName);
+      if (child == null) {
+        return;
+      }
+      child.ends = true;
+      child.children.clear();
+      if (childName instanceof Wildcard) {
+        // a trailing wildcard includes everything else below this node
+        children.clear();
+        children.put(childName, child);
+      }
+    }
+
+    private boolean endsWithWildcard() {
+      TrieNode wildcard = children.get(Wildcard.getSharedInstance());
+      return wildcard != null && wildcard.ends;
+    }
+  }
+}
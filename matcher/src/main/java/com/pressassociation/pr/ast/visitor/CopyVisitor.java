@@ -42,24 +42,21 @@ public class CopyVisitor extends TransformingVisitor<AstNode> {
   private final Deque<AstNode> stack = Lists.newLinkedList();
 
   @Override
-  public void visitFields(Fields fields) {
-    super.visitFields(fields);
+  protected void afterFields(Fields fields) {
     AstNode next = stack.removeLast();
     Field field = (Field) stack.removeLast();
     stack.addLast(createFieldsCopy(field, next));
   }
 
   @Override
-  public void visitPath(Path path) {
-    super.visitPath(path);
+  protected void afterPath(Path path) {
     Field suffix = (Field) stack.removeLast();
     Node prefix = (Node) stack.removeLast();
     stack.addLast(createPathCopy(prefix, suffix));
   }
 
   @Override
-  public void visitSubSelection(SubSelection subSelection) {
-    super.visitSubSelection(subSelection);
+  protected void afterSubSelection(SubSelection subSelection) {
     AstNode fields = stack.removeLast();
     Name name = (Name) stack.removeLast();
     stack.addLast(createSubSelectionCopy(name, fields));
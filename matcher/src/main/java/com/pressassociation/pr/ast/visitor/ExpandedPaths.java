@@ -0,0 +1,274 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.ast.visitor;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
+import com.google.common.primitives.Ints;
+
+import com.pressassociation.pr.ast.*;
+
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>The fully expanded paths of a pattern, produced lazily. These are the same paths the {@link ExpandingVisitor}
+ * produces, {@code items(id,name)/type} expands to {@code items/id/type} and {@code items/name/type}, but they are
+ * never all held in memory at once so patterns that expand to very many paths can still be enumerated.
+ *
+ * <p>Creating an instance takes time linear in the size of the pattern. Each path is then found by extending the path
+ * before it, paths are built from their last name backwards so paths with the same ending share the same
+ * {@link Path} nodes for it. Paths are grouped by the field they end with, in the order those fields appear in the
+ * pattern.
+ *
+ * @author Matt Nathan
+ */
+public final class ExpandedPaths implements Iterable<Field> {
+  private static final int[] NONE = new int[0];
+
+  // every name in the pattern is a position, names[position] is its name
+  private final Name[] names;
+  // the positions that can come directly before each position on an expanded path
+  private final int[][] predecessors;
+  // the positions that end an expanded path
+  private final int[] ends;
+
+  /**
+   * Get the expanded paths of the given pattern.
+   */
+  public static ExpandedPaths of(AstNode ast) {
+    Builder builder = new Builder();
+    checkNotNull(ast).apply(builder);
+    return builder.build();
+  }
+
+  private ExpandedPaths(Name[] names, int[][] predecessors, int[] ends) {
+    this.names = names;
+    this.predecessors = predecessors;
+    this.ends = ends;
+  }
+
+  /**
+   * Get an iterator that produces each expanded path in turn. Each path is either a {@link Name} or a {@link Path}
+   * made up only of names.
+   */
+  @Override
+  public Iterator<Field> iterator() {
+    return new PathIterator();
+  }
+
+  @Override
+  public String toString() {
+    return "ExpandedPaths" + Lists.newArrayList(this);
+  }
+
+  /**
+   * Walks backwards from each end position to every start position, a depth first search that only keeps the current
+   * path on its stack.
+   */
+  private final class PathIterator extends AbstractIterator<Field> {
+    private int nextEnd = 0;
+    private int depth = 0;
+    private int[] positions = new int[8];
+    private int[] nextPredecessors = new int[8];
+    private Field[] suffixes = new Field[8];
+
+    @Override
+    protected Field computeNext() {
+      while (true) {
+        int position;
+        Field suffix;
+        if (depth == 0) {
+          if (nextEnd == ends.length) {
+            return endOfData();
+          }
+          position = ends[nextEnd++];
+          suffix = null;
+        } else {
+          int top = depth - 1;
+          int[] before = predecessors[positions[top]];
+          if (nextPredecessors[top] == before.length) {
+            depth--;
+            continue;
+          }
+          position = before[nextPredecessors[top]++];
+          suffix = suffixes[top];
+        }
+        Field path = suffix == null ? names[position] : Path.of(names[position], suffix);
+        if (predecessors[position].length == 0) {
+          // nothing comes before this position so the path is complete
+          return path;
+        }
+        push(position, path);
+      }
+    }
+
+    private void push(int position, Field suffix) {
+      if (depth == positions.length) {
+        positions = Arrays.copyOf(positions, depth * 2);
+        nextPredecessors = Arrays.copyOf(nextPredecessors, depth * 2);
+        suffixes = Arrays.copyOf(suffixes, depth * 2);
+      }
+      positions[depth] = position;
+      nextPredecessors[depth] = 0;
+      suffixes[depth] = suffix;
+      depth++;
+    }
+  }
+
+  /**
+   * Finds the positions each position can follow by combining the first and last positions of each part of the ast
+   * from the bottom up.
+   */
+  private static final class Builder extends AstVisitor {
+    private final List<Name> names = Lists.newArrayList();
+    private final List<List<Integer>> predecessors = Lists.newArrayList();
+    private final Deque<Fragment> stack = Queues.newArrayDeque();
+
+    ExpandedPaths build() {
+      Fragment root = stack.removeLast();
+      int[][] predecessorArray = new int[names.size()][];
+      for (int position = 0; position < predecessorArray.length; position++) {
+        List<Integer> before = predecessors.get(position);
+        predecessorArray[position] = before == null ? NONE : Ints.toArray(before);
+      }
+      return new ExpandedPaths(names.toArray(new Name[names.size()]), predecessorArray, root.last.toArray());
+    }
+
+    @Override
+    protected void afterFields(Fields fields) {
+      Fragment next = stack.removeLast();
+      Fragment field = stack.removeLast();
+      field.first.append(next.first);
+      field.last.append(next.last);
+      stack.addLast(field);
+    }
+
+    @Override
+    protected void afterPath(Path path) {
+      concatenate();
+    }
+
+    @Override
+    protected void afterSubSelection(SubSelection subSelection) {
+      concatenate();
+    }
+
+    @Override
+    public void visitWildcard(Wildcard wildcard) {
+      addPosition(wildcard);
+    }
+
+    @Override
+    public void visitWord(Word word) {
+      addPosition(word);
+    }
+
+    private void addPosition(Name name) {
+      int position = names.size();
+      names.add(name);
+      predecessors.add(null);
+      stack.addLast(new Fragment(new Positions(position), new Positions(position)));
+    }
+
+    private void concatenate() {
+      Fragment suffix = stack.removeLast();
+      Fragment prefix = stack.removeLast();
+      // either the prefix is the name of a sub-selection with a single last position, or the suffix is the field of a
+      // path which has a single first position, so this adds at most as many links as there are positions
+      for (Positions.Link first = suffix.first.head; first != null; first = first.next) {
+        List<Integer> before = predecessors.get(first.position);
+        if (before == null) {
+          before = Lists.newArrayList();
+          predecessors.set(first.position, before);
+        }
+        for (Positions.Link last = prefix.last.head; last != null; last = last.next) {
+          before.add(last.position);
+        }
+      }
+      stack.addLast(new Fragment(prefix.first, suffix.last));
+    }
+  }
+
+  /**
+   * The first and last positions of a part of the ast.
+   */
+  private static final class Fragment {
+    final Positions first;
+    final Positions last;
+
+    Fragment(Positions first, Positions last) {
+      this.first = first;
+      this.last = last;
+    }
+  }
+
+  /**
+   * A list of positions that can be appended to another in constant time, so combining long lists of fields is linear.
+   */
+  private static final class Positions {
+    private final Link head;
+    private Link tail;
+    private int size;
+
+    Positions(int position) {
+      head = new Link(position);
+      tail = head;
+      size = 1;
+    }
+
+    /**
+     * Append the given positions to these, the given positions should not be used again.
+     */
+    void append(Positions other) {
+      tail.next = other.head;
+      tail = other.tail;
+      size += other.size;
+    }
+
+    int[] toArray() {
+      int[] result = new int[size];
+      int index = 0;
+      for (Link link = head; link != null; link = link.next) {
+        result[index++] = link.position;
+      }
+      return result;
+    }
+
+    private static final class Link {
+      final int position;
+      Link next;
+
+      Link(int position) {
+        this.position = position;
+      }
+    }
+  }
+}
@@ -38,6 +38,8 @@ import static com.google.common.base.Preconditions.checkState;
  * For example:<br/>
  * {@code items(id, name) -> items/id,items/name}<br/>
  * {@code items(id, homeTown/id)/auth -> items/id/auth,items/homeTown/id/auth}
+ * <p/>
+ * The whole expansion is built in memory, {@link ExpandedPaths} produces the same paths one at a time.
  *
  * @author Matt Nathan
  */
@@ -46,17 +48,15 @@ public class ExpandingVisitor extends TransformingVisitor<AstNode> {
   private final Deque<AstNode> stack = Lists.newLinkedList();
 
   @Override
-  public void visitFields(Fields fields) {
-    super.visitFields(fields);
+  protected void afterFields(Fields fields) {
     // the last two items on the stack should be the items for this field
     AstNode top = stack.removeLast();
     AstNode bottom = stack.removeLast();
-    stack.addLast(new Fields((Field) bottom, top));
+    stack.addLast(Fields.of((Field) bottom, top));
   }
 
   @Override
-  public void visitPath(Path path) {
-    super.visitPath(path);
+  protected void afterPath(Path path) {
     // the last two things on the stack should be the parts of the path
     // they could be anything, for example items(id,type)/name(other,again) would resolve to
     // items/id,items/type and name/other,name/again
@@ -132,7 +132,7 @@ public class ExpandingVisitor extends TransformingVisitor<AstNode> {
           result = new PathPostfixingVisitor(firstField).applyTo(secondField);
         } else {
           Field left = (Field) new PathPostfixingVisitor(firstField).applyTo(secondField);
-          result = new Fields(left, result);
+          result = Fields.of(left, result);
         }
       }
     }
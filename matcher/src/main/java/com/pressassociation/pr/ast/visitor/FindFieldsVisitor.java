@@ -53,9 +53,8 @@ public class FindFieldsVisitor extends TransformingVisitor<Iterable<Field>> {
   private Field last;
 
   @Override
-  public void visitFields(Fields fields) {
+  protected void beforeFields(Fields fields) {
     result.add(fields);
-    super.visitFields(fields);
   }
 
   @Override
@@ -52,9 +52,8 @@ public class MatchesParentVisitor extends TransformingVisitor<Boolean> {
   }
 
   @Override
-  public void visitFields(Fields fields) {
+  protected void beforeFields(Fields fields) {
     pushPathIndex();
-    super.visitFields(fields);
   }
 
   @Override
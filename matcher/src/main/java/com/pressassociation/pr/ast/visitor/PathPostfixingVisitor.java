@@ -25,10 +25,13 @@
 package com.pressassociation.pr.ast.visitor;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 
 import com.pressassociation.pr.ast.*;
 import com.pressassociation.pr.parser.Parser;
 
+import java.util.List;
+
 /**
  * Postfix some node to the visited nodes.
  * <p/>
@@ -50,9 +53,18 @@ public class PathPostfixingVisitor extends TransformingVisitor<AstNode> {
 
   @Override
   public void visitFields(Fields fields) {
-    Field field = (Field) appendPostfix(fields.getField());
-    AstNode next = new PathPostfixingVisitor(postfix).applyTo(fields.getNext());
-    result = new Fields(field, next);
+    // along the chain rather than down it, a long list of fields would otherwise need a stack frame each
+    List<Field> heads = Lists.newArrayList();
+    AstNode node = fields;
+    while (node instanceof Fields) {
+      heads.add((Field) appendPostfix(((Fields) node).getField()));
+      node = ((Fields) node).getNext();
+    }
+    AstNode postfixed = new PathPostfixingVisitor(postfix).applyTo(node);
+    for (int i = heads.size() - 1; i >= 0; i--) {
+      postfixed = Fields.of(heads.get(i), postfixed);
+    }
+    result = postfixed;
   }
 
   @Override
@@ -82,7 +94,7 @@ public class PathPostfixingVisitor extends TransformingVisitor<AstNode> {
   }
 
   private Path appendPostfix(Node wildcard) {
-    return new Path(wildcard, postfix);
+    return Path.of(wildcard, postfix);
   }
 
   private AstNode appendPostfix(AstNode node) {
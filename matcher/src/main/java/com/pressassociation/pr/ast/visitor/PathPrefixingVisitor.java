@@ -24,8 +24,12 @@
 
 package com.pressassociation.pr.ast.visitor;
 
+import com.google.common.collect.Lists;
+
 import com.pressassociation.pr.ast.*;
 
+import java.util.List;
+
 import static com.google.common.base.Preconditions.checkState;
 
 /**
@@ -48,8 +52,18 @@ public class PathPrefixingVisitor extends TransformingVisitor<AstNode> {
   @Override
   public void visitFields(Fields fields) {
     if (result == null) {
-      result = new Fields(new Path(prefix, fields.getField()),
-                          new PathPrefixingVisitor(prefix).applyTo(fields.getNext()));
+      // along the chain rather than down it, a long list of fields would otherwise need a stack frame each
+      List<Field> heads = Lists.newArrayList();
+      AstNode node = fields;
+      while (node instanceof Fields) {
+        heads.add(((Fields) node).getField());
+        node = ((Fields) node).getNext();
+      }
+      AstNode prefixed = Path.of(prefix, (Field) node);
+      for (int i = heads.size() - 1; i >= 0; i--) {
+        prefixed = Fields.of(Path.of(prefix, heads.get(i)), prefixed);
+      }
+      result = prefixed;
     } else {
       super.visitFields(fields);
     }
@@ -58,7 +72,7 @@ public class PathPrefixingVisitor extends TransformingVisitor<AstNode> {
   @Override
   public void visitPath(Path path) {
     if (result == null) {
-      result = new Path(prefix, path);
+      result = Path.of(prefix, path);
     } else {
       super.visitPath(path);
     }
@@ -67,7 +81,7 @@ public class PathPrefixingVisitor extends TransformingVisitor<AstNode> {
   @Override
   public void visitSubSelection(SubSelection subSelection) {
     if (result == null) {
-      result = new Path(prefix, subSelection);
+      result = Path.of(prefix, subSelection);
     } else {
       super.visitSubSelection(subSelection);
     }
@@ -76,7 +90,7 @@ public class PathPrefixingVisitor extends TransformingVisitor<AstNode> {
   @Override
   public void visitWildcard(Wildcard wildcard) {
     if (result == null) {
-      result = new Path(prefix, wildcard);
+      result = Path.of(prefix, wildcard);
     } else {
       super.visitWildcard(wildcard);
     }
@@ -85,7 +99,7 @@ public class PathPrefixingVisitor extends TransformingVisitor<AstNode> {
   @Override
   public void visitWord(Word word) {
     if (result == null) {
-      result = new Path(prefix, word);
+      result = Path.of(prefix, word);
     } else {
       super.visitWord(word);
     }
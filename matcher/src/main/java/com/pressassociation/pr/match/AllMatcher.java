@@ -42,6 +42,8 @@ class AllMatcher extends Matcher {
    */
   static final Matcher INSTANCE = new AllMatcher();
 
+  private final Automaton automaton = Automaton.compile(Wildcard.getSharedInstance());
+
   @Override
   public boolean matches(Leaf path) {
     return true;
@@ -52,6 +54,21 @@ class AllMatcher extends Matcher {
     return true;
   }
 
+  @Override
+  Automaton getAutomaton() {
+    return automaton;
+  }
+
+  @Override
+  public boolean matchesAllBelow(Leaf node) {
+    return true;
+  }
+
+  @Override
+  public boolean matchesAnyBelow(Leaf node) {
+    return true;
+  }
+
   @Override
   protected String patternString() {
     return "*";
@@ -25,31 +25,52 @@
 package com.pressassociation.pr.match;
 
 import com.pressassociation.pr.ast.AstNode;
-import com.pressassociation.pr.ast.visitor.MatchesParentVisitor;
-import com.pressassociation.pr.ast.visitor.MatchesPathVisitor;
+import com.pressassociation.pr.parser.PatternCost;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
- * Matcher based of a PartialResponse Ast.
+ * Matcher based of a PartialResponse Ast. The Ast is compiled into an {@link Automaton} up front so matching doesn't
+ * need to walk the Ast for every call, patterns without wildcards in the middle of their paths get a
+ * {@link TrieAutomaton} and the rest a {@link TableAutomaton}, or a {@link LazyAutomaton} when a table would need
+ * too many states.
  *
  * @author Matt Nathan
  */
 class AstMatcher extends Matcher {
   final AstNode fields;
+  private final Automaton automaton;
+  // lazily computed, threads racing to compute it will all compute the same value
+  private PatternCost cost;
 
   AstMatcher(AstNode fields) {
     this.fields = checkNotNull(fields);
+    this.automaton = Automaton.compile(fields);
   }
 
   @Override
   public boolean matches(Leaf input) {
-    return new MatchesPathVisitor(input.getPath()).applyTo(fields);
+    return automaton.matches(automaton.walk(input.getPath()));
   }
 
   @Override
   public boolean matchesParent(Leaf node) {
-    return new MatchesParentVisitor(node.getPath()).applyTo(fields);
+    return automaton.matchesParent(automaton.walk(node.getPath()));
+  }
+
+  @Override
+  Automaton getAutomaton() {
+    return automaton;
+  }
+
+  @Override
+  public PatternCost cost() {
+    PatternCost result = cost;
+    if (result == null) {
+      result = PatternCost.of(fields);
+      cost = result;
+    }
+    return result;
   }
 
   @Override
@@ -0,0 +1,252 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.match;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import com.pressassociation.pr.ast.AstNode;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Deterministic automaton compiled from a partial response Ast. Each state captures everything that is known about
+ * the path walked so far, matching a path is then one step per path part without any further allocation.
+ *
+ * <p>Words in the pattern are assigned symbols starting at 1, any path part that isn't one of those words maps to
+ * {@link #OTHER} which only wildcards will accept. A wildcard matches one or more path parts, or nothing when it is
+ * at the end of the pattern.
+ *
+ * <p>How the states are stored depends on the pattern. Patterns without wildcards, other than at the end of a path,
+ * are a {@link TrieAutomaton} which only stores the steps that go somewhere interesting. Anything else is a
+ * {@link TableAutomaton} which stores a step for every state and symbol, or a {@link LazyAutomaton} which only works
+ * out the states that are walked into when there would be too many to work out up front.
+ *
+ * @author Matt Nathan
+ */
+abstract class Automaton {
+  /**
+   * The symbol given to all path parts that are not words in the pattern.
+   */
+  static final int OTHER = 0;
+
+  static final byte MATCHES = 1;
+  static final byte MATCHES_PARENT = 2;
+  static final byte MATCHES_ALL_BELOW = 4;
+  static final byte MATCHES_ANY_BELOW = 8;
+  // every step from the state leads back to it, walking any further won't change the answer
+  static final byte SETTLED = 16;
+
+  /**
+   * Compile the given ast into an automaton.
+   */
+  static Automaton compile(AstNode ast) {
+    checkNotNull(ast);
+    Automaton trie = TrieAutomaton.compile(ast);
+    return trie != null ? trie : TableAutomaton.compile(ast);
+  }
+
+  // only ever replaced by a LazyAutomaton adding a state, before any step to that state can be seen
+  private byte[] flags;
+  // the words in an open addressed table, hashed the same as String so parts of a CharSequence can be looked up too
+  private final String[] words;
+  private final int[] wordSymbols;
+
+  Automaton(ImmutableMap<String, Integer> symbols, byte[] flags) {
+    this.flags = flags;
+    int capacity = Integer.highestOneBit(Math.max(symbols.size(), 1) * 2) * 2;
+    this.words = new String[capacity];
+    this.wordSymbols = new int[capacity];
+    for (Map.Entry<String, Integer> symbol : symbols.entrySet()) {
+      int index = spread(symbol.getKey().hashCode()) & (capacity - 1);
+      while (words[index] != null) {
+        index = (index + 1) & (capacity - 1);
+      }
+      words[index] = symbol.getKey();
+      wordSymbols[index] = symbol.getValue();
+    }
+  }
+
+  /**
+   * Replace the flags of all the states, for automata that add states as they are walked.
+   */
+  void setFlags(byte[] flags) {
+    this.flags = flags;
+  }
+
+  byte[] getFlags() {
+    return flags;
+  }
+
+  int getStartState() {
+    return 0;
+  }
+
+  int getStateCount() {
+    return flags.length;
+  }
+
+  /**
+   * Get the symbol for the given path part, {@link #OTHER} if the part is not mentioned in the pattern.
+   */
+  int symbolOf(String pathPart) {
+    // names are often the very instance the pattern holds, words the parser has seen before share one string
+    int hash = pathPart.hashCode();
+    int mask = words.length - 1;
+    for (int index = spread(hash) & mask; words[index] != null; index = (index + 1) & mask) {
+      String word = words[index];
+      if (word == pathPart || (word.hashCode() == hash && word.equals(pathPart))) {
+        return wordSymbols[index];
+      }
+    }
+    return OTHER;
+  }
+
+  /**
+   * Get the symbol for the characters of the given path from start up to end, the same as
+   * {@code symbolOf(path.subSequence(start, end).toString())} without creating the string.
+   */
+  int symbolOf(CharSequence path, int start, int end) {
+    // the same hash String uses so the words can use their cached hash codes
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + path.charAt(i);
+    }
+    int mask = words.length - 1;
+    for (int index = spread(hash) & mask; words[index] != null; index = (index + 1) & mask) {
+      String word = words[index];
+      if (word.hashCode() == hash && regionMatches(word, path, start, end)) {
+        return wordSymbols[index];
+      }
+    }
+    return OTHER;
+  }
+
+  /**
+   * Get the words of the pattern, those path parts that have a symbol of their own.
+   */
+  List<String> getWords() {
+    List<String> result = Lists.newArrayList();
+    for (String word : words) {
+      if (word != null) {
+        result.add(word);
+      }
+    }
+    return result;
+  }
+
+  int step(int state, String pathPart) {
+    return step(state, symbolOf(pathPart));
+  }
+
+  abstract int step(int state, int symbol);
+
+  /**
+   * Walk the automaton from the start state over the given path, returning the state we end up in.
+   */
+  int walk(List<String> path) {
+    int state = getStartState();
+    for (int i = 0, size = path.size(); i < size && (flags[state] & SETTLED) == 0; i++) {
+      state = step(state, path.get(i));
+    }
+    return state;
+  }
+
+  /**
+   * Walk the automaton from the start state over the given {@code /} separated path, returning the state we end up in.
+   * Empty parts of the path are ignored, the same as {@link Leaf#fromPath(CharSequence)}.
+   */
+  int walk(CharSequence path) {
+    int state = getStartState();
+    int length = path.length();
+    int start = 0;
+    while (start < length && (flags[state] & SETTLED) == 0) {
+      int end = start;
+      while (end < length && path.charAt(end) != '/') {
+        end++;
+      }
+      if (end > start) {
+        state = step(state, symbolOf(path, start, end));
+      }
+      start = end + 1;
+    }
+    return state;
+  }
+
+  /**
+   * Whether walking any further from the given state would never change the answers.
+   */
+  boolean isSettled(int state) {
+    return (flags[state] & SETTLED) != 0;
+  }
+
+  /**
+   * Whether the path that lead to the given state is matched by the pattern.
+   */
+  boolean matches(int state) {
+    return (flags[state] & MATCHES) != 0;
+  }
+
+  /**
+   * Whether the path that lead to the given state is the start of (or equal to) a path in the pattern.
+   */
+  boolean matchesParent(int state) {
+    return (flags[state] & MATCHES_PARENT) != 0;
+  }
+
+  /**
+   * Whether every path below the path that lead to the given state is matched by the pattern.
+   */
+  boolean matchesAllBelow(int state) {
+    return (flags[state] & MATCHES_ALL_BELOW) != 0;
+  }
+
+  /**
+   * Whether any path below the path that lead to the given state could be matched by the pattern.
+   */
+  boolean matchesAnyBelow(int state) {
+    return (flags[state] & MATCHES_ANY_BELOW) != 0;
+  }
+
+  private static boolean regionMatches(String word, CharSequence path, int start, int end) {
+    if (word.length() != end - start) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      if (word.charAt(i - start) != path.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int spread(int hash) {
+    // string hashes of similar words differ mostly in their low bits, mix in the high ones
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.match;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * <p>Automaton that works out its states as paths walk into them, simulating the positions of the pattern the same way
+ * {@link TableAutomaton} does up front. Some patterns, {@code *&#47;a&#47;*&#47;b} repeated with different words for
+ * example, need far too many states to work all of them out but any one walk only passes through a few of them. The
+ * first step into a state works it out, every later step is a lookup like any other automaton.
+ *
+ * <p>Each state is a set of positions, with one bit more for whether the end of the pattern has been passed. The flags
+ * of a state only depend on its own positions: once the end of the pattern has been passed everything below matches,
+ * and there is a path below any live position that reaches the end.
+ *
+ * <p>States are added while holding the lock of the automaton, stepping to a state that has already been worked out
+ * only needs a volatile read. Like the other automata instances can be shared between threads.
+ *
+ * @author Matt Nathan
+ */
+final class LazyAutomaton extends Automaton {
+  private static final int UNKNOWN = -1;
+
+  private final BitSet[] follows;
+  private final BitSet wildcards;
+  private final BitSet last;
+  private final BitSet finishers;
+  private final BitSet[] accepting;
+  private final int matchedBit;
+  private final BitSet matchedWildcard;
+  private final int symbolCount;
+  // guarded by this
+  private final Map<BitSet, Integer> stateIds = Maps.newHashMap();
+  private int stateCount;
+  // replaced, under the lock, by a longer copy as states are added
+  private volatile State[] states;
+
+  /**
+   * Create the automaton for the given positions.
+   *
+   * @param follows   The positions that can follow each position, the last of them is a virtual start position
+   * @param wildcards The positions that are wildcards
+   * @param last      The positions that end the pattern
+   * @param finishers The wildcard positions from which the end can be reached through wildcards alone
+   * @param accepting The positions that accept each symbol
+   */
+  LazyAutomaton(ImmutableMap<String, Integer> symbols, List<BitSet> follows, BitSet wildcards, BitSet last,
+                BitSet finishers, BitSet[] accepting) {
+    super(symbols, new byte[16]);
+    this.follows = follows.toArray(new BitSet[follows.size()]);
+    this.wildcards = wildcards;
+    this.last = last;
+    this.finishers = finishers;
+    this.accepting = accepting;
+    this.symbolCount = accepting.length;
+    int startPosition = follows.size() - 1;
+    this.matchedBit = startPosition + 1;
+    this.matchedWildcard = new BitSet();
+    matchedWildcard.set(Math.max(wildcards.nextSetBit(0), 0));
+    matchedWildcard.set(matchedBit);
+    this.states = new State[16];
+    BitSet start = new BitSet();
+    start.set(startPosition);
+    synchronized (this) {
+      addState(start);
+    }
+  }
+
+  @Override
+  int step(int state, int symbol) {
+    int next = states[state].steps.get(symbol);
+    return next != UNKNOWN ? next : addStep(state, symbol);
+  }
+
+  @Override
+  synchronized int getStateCount() {
+    return stateCount;
+  }
+
+  private synchronized int addStep(int state, int symbol) {
+    State from = states[state];
+    int next = from.steps.get(symbol);
+    if (next != UNKNOWN) {
+      return next;
+    }
+    BitSet positions = (BitSet) from.reachable.clone();
+    positions.and(accepting[symbol]);
+    if (from.matched || positions.intersects(last)) {
+      positions.set(matchedBit);
+      if (positions.intersects(wildcards)) {
+        // every path below matches and is the start of a path in the pattern whichever positions are live
+        positions = matchedWildcard;
+      }
+    }
+    Integer id = stateIds.get(positions);
+    next = id != null ? id : addState(positions);
+    // after the state has been added, any thread that sees this step sees the state too
+    from.steps.set(symbol, next);
+    return next;
+  }
+
+  private int addState(BitSet positions) {
+    State state = new State(positions);
+    byte flags = 0;
+    if (state.matched || state.reachable.intersects(finishers)) {
+      // everything below a matched path is matched too
+      flags |= MATCHES | MATCHES_ALL_BELOW | MATCHES_ANY_BELOW;
+    }
+    int firstPosition = positions.nextSetBit(0);
+    if (firstPosition >= 0 && firstPosition < matchedBit) {
+      flags |= MATCHES_PARENT;
+    }
+    if (!state.reachable.isEmpty()) {
+      flags |= MATCHES_ANY_BELOW;
+    }
+    // the shared state is only ever stepped to as itself, patterns without wildcards have a state equal to it
+    if (positions == matchedWildcard || firstPosition < 0 || firstPosition == matchedBit) {
+      // nothing is live, or a wildcard is live after the end of the pattern, every step leads back here
+      flags |= SETTLED;
+    }
+
+    int id = stateCount++;
+    State[] current = states;
+    if (id == current.length) {
+      current = Arrays.copyOf(current, id * 2);
+      setFlags(Arrays.copyOf(getFlags(), id * 2));
+    }
+    getFlags()[id] = flags;
+    current[id] = state;
+    stateIds.put(positions, id);
+    states = current;
+    return id;
+  }
+
+  /**
+   * The positions of a state and the steps from it worked out so far.
+   */
+  private final class State {
+    final boolean matched;
+    // the positions the next path part could be at
+    final BitSet reachable = new BitSet();
+    final AtomicIntegerArray steps = new AtomicIntegerArray(symbolCount);
+
+    State(BitSet positions) {
+      matched = positions.get(matchedBit);
+      for (int position = positions.nextSetBit(0);
+           position >= 0 && position < matchedBit;
+           position = positions.nextSetBit(position + 1)) {
+        reachable.or(follows[position]);
+      }
+      for (int symbol = 0; symbol < symbolCount; symbol++) {
+        steps.set(symbol, UNKNOWN);
+      }
+    }
+  }
+}
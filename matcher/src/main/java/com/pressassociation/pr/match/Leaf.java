@@ -25,50 +25,176 @@
 package com.pressassociation.pr.match;
 
 import com.google.common.base.Joiner;
-import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
 /**
- * A path that represents a leaf in a search tree. This class is used by Matcher as the token to search for.
+ * <p>A path that represents a leaf in a search tree. This class is used by Matcher as the token to search for.
+ *
+ * <p>Leafs are immutable and share their parent with every other leaf created from it via {@link #child(String)}, so
+ * walking down a tree creates one small object per level without copying the path so far. Moving back up via
+ * {@link #parent()} creates nothing at all.
  *
  * @author Matt Nathan
  */
 public class Leaf {
-  private static final Splitter PATH_SPLITTER = Splitter.on('/').omitEmptyStrings();
+  private static final Leaf ROOT = new Leaf(null, null);
 
   /**
-   * Create a new leaf from the given path. This will split the path using the {@code /} character.
+   * Get the empty path, the root of the tree.
+   */
+  public static Leaf root() {
+    return ROOT;
+  }
+
+  /**
+   * Create a new leaf from the given path. This will split the path using the {@code /} character, ignoring any empty
+   * parts.
    */
   public static Leaf fromPath(CharSequence path) {
-    return copyOf(PATH_SPLITTER.split(path));
+    Leaf leaf = ROOT;
+    int length = path.length();
+    int start = 0;
+    while (start < length) {
+      int end = start;
+      while (end < length && path.charAt(end) != '/') {
+        end++;
+      }
+      if (end > start) {
+        leaf = leaf.child(path.subSequence(start, end).toString());
+      }
+      start = end + 1;
+    }
+    return leaf;
   }
 
   /**
    * Create a new Leaf from a single part.
    */
   public static Leaf of(String pathPart) {
-    return new Leaf(ImmutableList.of(pathPart));
+    return ROOT.child(pathPart);
   }
 
   /**
    * Create a Leaf from the list of parts.
    */
   public static Leaf copyOf(Iterable<String> pathParts) {
-    return new Leaf(ImmutableList.copyOf(pathParts));
+    Leaf leaf = ROOT;
+    for (String pathPart : pathParts) {
+      leaf = leaf.child(pathPart);
+    }
+    return leaf;
   }
 
-  private final ImmutableList<String> path;
+  @Nullable
+  private final Leaf parent;
+  @Nullable
+  private final String name;
+  private final int depth;
+  // the same as getPath().hashCode()
+  private final int hash;
+  // lazily computed, threads racing to compute it will all compute an equal value
+  private ImmutableList<String> path;
 
-  Leaf(ImmutableList<String> path) {
-    this.path = path;
+  private Leaf(@Nullable Leaf parent, @Nullable String name) {
+    this.parent = parent;
+    this.name = name;
+    if (parent == null) {
+      this.depth = 0;
+      this.hash = 1;
+      this.path = ImmutableList.of();
+    } else {
+      this.depth = parent.depth + 1;
+      this.hash = 31 * parent.hash + name.hashCode();
+    }
+  }
+
+  /**
+   * Get the leaf for the child of this one with the given name.
+   */
+  public Leaf child(String name) {
+    return new Leaf(this, checkNotNull(name));
+  }
+
+  /**
+   * Get the leaf this one is a child of.
+   *
+   * @throws IllegalStateException If this is the root.
+   */
+  public Leaf parent() {
+    checkState(parent != null, "The root has no parent");
+    return parent;
+  }
+
+  /**
+   * Whether this is the empty path at the root of the tree.
+   */
+  public boolean isRoot() {
+    return parent == null;
+  }
+
+  /**
+   * Get the last part of the path.
+   *
+   * @throws IllegalStateException If this is the root.
+   */
+  public String getName() {
+    checkState(name != null, "The root has no name");
+    return name;
+  }
+
+  /**
+   * Get the number of parts in the path.
+   */
+  public int getDepth() {
+    return depth;
   }
 
   public ImmutableList<String> getPath() {
-    return path;
+    ImmutableList<String> result = path;
+    if (result == null) {
+      String[] parts = new String[depth];
+      for (Leaf leaf = this; leaf.parent != null; leaf = leaf.parent) {
+        parts[leaf.depth - 1] = leaf.name;
+      }
+      result = ImmutableList.copyOf(parts);
+      path = result;
+    }
+    return result;
+  }
+
+  @Override
+  public boolean equals(@Nullable Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (!(obj instanceof Leaf)) {
+      return false;
+    }
+    Leaf other = (Leaf) obj;
+    if (other.depth != depth || other.hash != hash) {
+      return false;
+    }
+    // stop as soon as the two share a parent, leafs created from the same parent usually do
+    for (Leaf a = this, b = other; a != b; a = a.parent, b = b.parent) {
+      if (!a.name.equals(b.name)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
   }
 
   @Override
   public String toString() {
-    return "Leaf[" + Joiner.on('/').join(path) + ']';
+    return "Leaf[" + Joiner.on('/').join(getPath()) + ']';
   }
 }
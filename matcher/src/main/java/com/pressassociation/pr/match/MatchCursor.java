@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.match;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * <p>A position in a tree being matched against a {@link Matcher}. The cursor starts at the root of the tree and is
+ * moved up and down it via {@link #descend(String)} and {@link #ascend()}, each step costs the same no matter how deep
+ * the cursor is. This is useful when walking a tree, instead of building a {@link Leaf} for every node and matching it
+ * from the root the matching state is carried along with the walk.
+ *
+ * <p>Instances are not thread safe, each walk of a tree should use its own cursor.
+ *
+ * @author Matt Nathan
+ * @see Matcher#cursor()
+ */
+public final class MatchCursor {
+  private static final int INITIAL_DEPTH = 8;
+
+  private final Automaton automaton;
+  private int[] states = new int[INITIAL_DEPTH];
+  private int depth = 0;
+
+  MatchCursor(Automaton automaton) {
+    this.automaton = checkNotNull(automaton);
+    this.states[0] = automaton.getStartState();
+  }
+
+  /**
+   * Move the cursor to the child of the current node with the given name.
+   *
+   * @return this cursor
+   */
+  public MatchCursor descend(String name) {
+    checkNotNull(name);
+    return push(automaton.step(states[depth], name));
+  }
+
+  /**
+   * Move the cursor to the child of the current node with the given pre-resolved name.
+   *
+   * @return this cursor
+   * @throws IllegalArgumentException If the path part was created by a different matcher.
+   */
+  public MatchCursor descend(PathPart pathPart) {
+    checkArgument(pathPart.getAutomaton() == automaton, "%s was not created by this cursor's matcher", pathPart);
+    return push(automaton.step(states[depth], pathPart.getSymbol()));
+  }
+
+  private MatchCursor push(int state) {
+    if (++depth == states.length) {
+      states = Arrays.copyOf(states, depth * 2);
+    }
+    states[depth] = state;
+    return this;
+  }
+
+  /**
+   * Move the cursor back to the parent of the current node.
+   *
+   * @return this cursor
+   * @throws IllegalStateException If the cursor is at the root.
+   */
+  public MatchCursor ascend() {
+    checkState(depth > 0, "Cannot ascend past the root");
+    depth--;
+    return this;
+  }
+
+  /**
+   * Get the number of steps the cursor is below the root.
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  Automaton getAutomaton() {
+    return automaton;
+  }
+
+  int getState() {
+    return states[depth];
+  }
+
+  /**
+   * Whether the path to the current node is {@link Matcher#matches(Leaf) matched} by the matcher.
+   */
+  public boolean matches() {
+    return automaton.matches(states[depth]);
+  }
+
+  /**
+   * Whether the path to the current node is the start of a path {@link Matcher#matchesParent(Leaf) matched} by the
+   * matcher, that is whether the current node or some node below it may match.
+   */
+  public boolean matchesParent() {
+    return automaton.matchesParent(states[depth]);
+  }
+
+  /**
+   * Whether every node below the current node is matched by the matcher. When this is true there is no need to check
+   * any of the descendants of the current node.
+   */
+  public boolean matchesAllBelow() {
+    return automaton.matchesAllBelow(states[depth]);
+  }
+
+  /**
+   * Whether any node below the current node could be matched by the matcher. When this is false there is no need to
+   * visit any of the descendants of the current node.
+   */
+  public boolean matchesAnyBelow() {
+    return automaton.matchesAnyBelow(states[depth]);
+  }
+
+  @Override
+  public String toString() {
+    return "MatchCursor[depth=" + depth + ", matches=" + matches() + ", matchesParent=" + matchesParent() + ']';
+  }
+}
@@ -25,16 +25,22 @@
 package com.pressassociation.pr.match;
 
 import com.google.common.base.Function;
-import com.google.common.base.Objects;
+import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
 
 import com.pressassociation.pr.ast.AstNode;
+import com.pressassociation.pr.ast.Wildcard;
 import com.pressassociation.pr.ast.Word;
+import com.pressassociation.pr.ast.visitor.Canonicalizer;
 import com.pressassociation.pr.ast.visitor.CopyVisitor;
 import com.pressassociation.pr.parser.Parser;
+import com.pressassociation.pr.parser.PatternCost;
+import com.pressassociation.pr.parser.PatternLimits;
 
 import javax.annotation.Nullable;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -66,7 +72,62 @@ public abstract class Matcher implements Predicate<Leaf> {
     if ("*".equals(fields)) {
       return all();
     }
-    return new AstMatcher(new Parser().parse(checkNotNull(fields)));
+    return compile(new Parser().parse(checkNotNull(fields)));
+  }
+
+  /**
+   * Get a new Matcher that will match against the given fields string, as long as the pattern is within the given
+   * limits. Use this for patterns that come from untrusted sources, for example a request parameter.
+   *
+   * @param fields The fields string
+   * @param limits The limits the pattern must be within
+   * @return The matcher.
+   * @throws IllegalArgumentException If the fields string is not a valid pattern or is beyond the limits.
+   */
+  public static Matcher of(CharSequence fields, PatternLimits limits) {
+    if ("*".equals(fields)) {
+      return all();
+    }
+    return compile(new Parser().parse(checkNotNull(fields), limits));
+  }
+
+  /**
+   * Get a new Matcher for the given percent encoded fields string, as it appears in the query string of a URL. The
+   * string is decoded as it is parsed so there is no need to decode it first.
+   *
+   * @param encodedFields The percent encoded fields string
+   * @return The matcher.
+   */
+  public static Matcher ofEncoded(CharSequence encodedFields) {
+    if ("*".equals(encodedFields)) {
+      return all();
+    }
+    return compile(new Parser().parseEncoded(checkNotNull(encodedFields)));
+  }
+
+  /**
+   * Get a new Matcher for the given percent encoded fields string, as long as the decoded pattern is within the given
+   * limits. Use this for encoded patterns that come from untrusted sources, for example a raw query string.
+   *
+   * @param encodedFields The percent encoded fields string
+   * @param limits        The limits the decoded pattern must be within
+   * @return The matcher.
+   * @throws IllegalArgumentException If the fields string is not a valid encoded pattern or is beyond the limits.
+   */
+  public static Matcher ofEncoded(CharSequence encodedFields, PatternLimits limits) {
+    if ("*".equals(encodedFields)) {
+      return all();
+    }
+    return compile(new Parser().parseEncoded(checkNotNull(encodedFields), limits));
+  }
+
+  /**
+   * Pick the implementation best suited to the given pattern. Lists of words are a set lookup, everything else walks
+   * an {@link Automaton}.
+   */
+  static Matcher compile(AstNode fields) {
+    ImmutableSet<String> words = WordSetMatcher.wordsOf(fields);
+    return words != null ? new WordSetMatcher(fields, words) : new AstMatcher(fields);
   }
 
   // package-private to stop any custom implementations.
@@ -94,12 +155,12 @@ public abstract class Matcher implements Predicate<Leaf> {
 
   /**
    * Return whether this matcher pattern applies to the given path. The path will be split according to
-   * {@link Leaf#fromPath(CharSequence)}.
+   * {@link Leaf#fromPath(CharSequence)}, though it is matched in place without creating a Leaf.
    *
    * @see #matches(Leaf)
    */
   public boolean matches(CharSequence path) {
-    return matches(Leaf.fromPath(path));
+    return getAutomaton().matches(getAutomaton().walk(checkNotNull(path)));
   }
 
   /**
@@ -117,9 +178,172 @@ public abstract class Matcher implements Predicate<Leaf> {
    * @see #matchesParent(Leaf)
    */
   public boolean matchesParent(CharSequence path) {
-    return matchesParent(Leaf.fromPath(path));
+    return getAutomaton().matchesParent(getAutomaton().walk(checkNotNull(path)));
+  }
+
+  /**
+   * Returns whether every leaf below the given node is {@link #matches(Leaf) matched} by this instance. For example,
+   * given the pattern {@code my/property} this method will return true for {@code my/property} and anything below it
+   * but not for {@code my}. Code walking a tree can use this to stop checking once it knows a whole branch is included.
+   */
+  public boolean matchesAllBelow(Leaf node) {
+    return getAutomaton().matchesAllBelow(getAutomaton().walk(node.getPath()));
+  }
+
+  /**
+   * Returns whether every leaf below the given node is matched by this instance. The path will be split according to
+   * {@link Leaf#fromPath(CharSequence)}.
+   *
+   * @see #matchesAllBelow(Leaf)
+   */
+  public boolean matchesAllBelow(CharSequence path) {
+    return getAutomaton().matchesAllBelow(getAutomaton().walk(checkNotNull(path)));
+  }
+
+  /**
+   * Returns whether any leaf below the given node could be {@link #matches(Leaf) matched} by this instance. When this
+   * is false the whole branch below the node can be skipped. For example, given the pattern {@code my/property} this
+   * method will return true for {@code my} and {@code my/property} but false for {@code other}.
+   */
+  public boolean matchesAnyBelow(Leaf node) {
+    return getAutomaton().matchesAnyBelow(getAutomaton().walk(node.getPath()));
+  }
+
+  /**
+   * Returns whether any leaf below the given node could be matched by this instance. The path will be split according
+   * to {@link Leaf#fromPath(CharSequence)}.
+   *
+   * @see #matchesAnyBelow(Leaf)
+   */
+  public boolean matchesAnyBelow(CharSequence path) {
+    return getAutomaton().matchesAnyBelow(getAutomaton().walk(checkNotNull(path)));
+  }
+
+  /**
+   * Get a new cursor positioned at the root of the tree this matcher is matching against. The cursor can then be moved
+   * through the tree one node at a time, answering the same questions as {@link #matches(Leaf)} and
+   * {@link #matchesParent(Leaf)} for each node it visits.
+   *
+   * @return The new cursor.
+   */
+  public MatchCursor cursor() {
+    return new MatchCursor(getAutomaton());
   }
 
+  /**
+   * Resolve the given path part name against this matcher for use with {@link MatchCursor#descend(PathPart)}.
+   *
+   * @return The resolved path part.
+   */
+  public PathPart pathPart(String name) {
+    return new PathPart(getAutomaton(), checkNotNull(name));
+  }
+
+  /**
+   * Get a matcher for the same pattern that remembers the answers it gave for recently matched {@link Leaf}s. This is
+   * worth doing when the same leafs are matched many times, for example once for every one of a large number of
+   * objects of the same shape. Code walking a tree should prefer a {@link #cursor()} which never needs to match from
+   * the root.
+   *
+   * <p>The returned matcher is safe for use by multiple threads and is equal to this one.
+   *
+   * @param maximumSize The most paths to remember at once, rounded up to a power of two
+   * @return The memoizing matcher.
+   * @throws IllegalArgumentException If maximumSize is not positive or is more than 2<sup>20</sup>.
+   */
+  public Matcher memoizing(int maximumSize) {
+    checkArgument(maximumSize > 0 && maximumSize <= MemoizingMatcher.MAX_SIZE,
+                  "maximumSize must be between 1 and %s: %s", MemoizingMatcher.MAX_SIZE, maximumSize);
+    // there is nothing to remember when everything matches
+    return matchesAll() ? this : new MemoizingMatcher(this, maximumSize);
+  }
+
+  /**
+   * <p>Get a matcher for the canonical form of this matcher's pattern. Patterns that differ only in the order of their
+   * fields, in repeated fields or in branches that other branches already include have equal canonical matchers, for
+   * example {@code title,id}, {@code id,title,id} and {@code id,title,title/text} are all canonically
+   * {@code id,title}. The canonical matcher's {@link #toString()} and {@link #hashCode()} are stable, which makes it a
+   * better key than the pattern as written for caches of anything derived from the matcher.
+   *
+   * <p>The canonical matcher gives the same answers as this one except for {@link #matchesParent(Leaf)}, which is false
+   * below the end of a path that was included by another, for example {@code title/text} in {@code title,title/text}.
+   *
+   * @return The canonical matcher, this matcher if it is already canonical.
+   * @see com.pressassociation.pr.ast.visitor.Canonicalizer
+   */
+  public Matcher canonicalize() {
+    if (matchesAll()) {
+      return this;
+    }
+    AstNode ast = getAstNode();
+    AstNode canonical = Canonicalizer.canonicalize(ast);
+    if (canonical.equals(ast)) {
+      return this;
+    }
+    return canonical instanceof Wildcard ? all() : compile(canonical);
+  }
+
+  /**
+   * Get a matcher that matches every path this or the other matcher matches. Checking the one matcher costs the same
+   * as checking either of them.
+   *
+   * @param other The other matcher
+   * @return The union of both matchers.
+   */
+  public Matcher union(Matcher other) {
+    checkNotNull(other);
+    if (matchesAll()) {
+      return this;
+    }
+    if (other.matchesAll()) {
+      return other;
+    }
+    return compile(MatcherAlgebra.union(getAstNode(), other.getAstNode()));
+  }
+
+  /**
+   * Get a matcher that only matches the paths both this and the other matcher match, for example to limit the fields
+   * a client asks for to those it is allowed to see. The pattern of the result is in {@link #canonicalize() canonical}
+   * form, as with canonical matchers {@link #matchesParent(Leaf)} is only true for the parents of the paths the
+   * intersection matches.
+   *
+   * @param other The other matcher
+   * @return The intersection of both matchers, or absent if there is no path both match.
+   * @throws IllegalArgumentException If the patterns are too complex to intersect.
+   */
+  public Optional<Matcher> intersect(Matcher other) {
+    checkNotNull(other);
+    if (matchesAll()) {
+      return Optional.of(other);
+    }
+    if (other.matchesAll()) {
+      return Optional.of(this);
+    }
+    AstNode intersection = MatcherAlgebra.intersection(getAstNode(), other.getAstNode());
+    if (intersection == null) {
+      return Optional.absent();
+    }
+    return Optional.of(intersection instanceof Wildcard ? all() : compile(intersection));
+  }
+
+  /**
+   * Returns whether this matcher matches every path the other one does. For example, a response filtered with
+   * {@code items(id,title)} can be filtered again to answer a request for {@code items/id} because
+   * {@code items(id,title)} subsumes {@code items/id}.
+   *
+   * @param other The other matcher
+   * @return {@code true} if every path matched by other is matched by this.
+   */
+  public boolean subsumes(Matcher other) {
+    checkNotNull(other);
+    return matchesAll() || MatcherAlgebra.subsumes(getAutomaton(), other.getAutomaton());
+  }
+
+  /**
+   * Get the compiled form of this matcher.
+   */
+  abstract Automaton getAutomaton();
+
   /**
    * Transform the words in the given matcher according to the nameTransformer given. This can be used to fulfil
    * certain
@@ -142,7 +366,7 @@ public abstract class Matcher implements Predicate<Leaf> {
         return super.createWordCopy(nameTransformer.apply(stringValue));
       }
     }.applyTo(ast);
-    return new AstMatcher(transformed);
+    return compile(transformed);
   }
 
   /**
@@ -162,6 +386,13 @@ public abstract class Matcher implements Predicate<Leaf> {
     return "Matcher.of(" + patternString() + ')';
   }
 
+  /**
+   * Get an estimate of how expensive the pattern of this matcher is, for checking against {@link PatternLimits}.
+   */
+  public PatternCost cost() {
+    return PatternCost.of(getAstNode());
+  }
+
   /**
    * Get the pattern this Matcher represents. Used for toString().
    */
@@ -182,9 +413,12 @@ public abstract class Matcher implements Predicate<Leaf> {
     return other.patternString().equals(patternString());
   }
 
+  /**
+   * Hashes the pattern string, so the hash is the same in every JVM.
+   */
   @Override
   public int hashCode() {
-    return Objects.hashCode(Matcher.class, patternString());
+    return patternString().hashCode();
   }
 
   /**
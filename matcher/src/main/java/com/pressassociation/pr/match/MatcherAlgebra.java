@@ -0,0 +1,388 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.match;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import com.pressassociation.pr.ast.AstNode;
+import com.pressassociation.pr.ast.Field;
+import com.pressassociation.pr.ast.Fields;
+import com.pressassociation.pr.ast.Name;
+import com.pressassociation.pr.ast.Path;
+import com.pressassociation.pr.ast.Wildcard;
+import com.pressassociation.pr.ast.visitor.Canonicalizer;
+import com.pressassociation.pr.ast.visitor.ExpandedPaths;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * <p>Combines and compares patterns. Unions join the fields of both patterns, intersections are worked out one pair
+ * of expanded paths at a time and subsumption walks both compiled automata side by side. Expanded paths the other
+ * pattern matches all of are found by subsumption first, they are part of the intersection as they are and need no
+ * pairing, which leaves the pairs for paths that only overlap.
+ *
+ * <p>For intersections each expanded path is read as a sequence of words and wildcards followed by anything at all,
+ * as everything below a matched path is matched. A wildcard in the middle of a path is one or more path parts and a
+ * trailing wildcard is the same as no wildcard at all, so {@code a/*} and {@code a} match the same paths. Where the
+ * result has to end with one or more path parts it ends with {@code *&#47;*}, a wildcard followed by a trailing one.
+ *
+ * @author Matt Nathan
+ */
+final class MatcherAlgebra {
+  /**
+   * The most steps we will take intersecting two patterns. Every pair of expanded paths is at least one step and
+   * paths with several wildcards can line up with each other in very many ways.
+   */
+  static final int MAX_STEPS = 1 << 18;
+
+  /**
+   * Get a pattern that matches every path either of the given patterns match.
+   */
+  static AstNode union(AstNode first, AstNode second) {
+    List<Field> fields = Lists.newArrayList();
+    addFields(first, fields);
+    addFields(second, fields);
+    AstNode result = fields.get(fields.size() - 1);
+    for (int i = fields.size() - 2; i >= 0; i--) {
+      result = Fields.of(fields.get(i), result);
+    }
+    return result;
+  }
+
+  /**
+   * Get a pattern, in canonical form, that matches the paths both of the given patterns match. None of the paths of
+   * the result matches only paths another of them matches too.
+   *
+   * @return The pattern or null if no path is matched by both.
+   * @throws IllegalArgumentException If the patterns are too complex to intersect.
+   */
+  @Nullable
+  static AstNode intersection(AstNode first, AstNode second) {
+    List<Covering> within = Lists.newArrayList();
+    List<Name[]> firstPaths = withoutWithin(namesOf(first), Automaton.compile(second), within);
+    List<Name[]> secondPaths = withoutWithin(namesOf(second), Automaton.compile(first), within);
+    List<Field> paths = Lists.newArrayList();
+    Deque<Step> pending = new ArrayDeque<Step>();
+    int steps = 0;
+    for (Name[] left : firstPaths) {
+      for (Name[] right : secondPaths) {
+        pending.addLast(new Step(0, false, 0, false, null));
+        while (!pending.isEmpty()) {
+          if (++steps > MAX_STEPS) {
+            throw new IllegalArgumentException("Patterns are too complex to intersect, they need more than "
+                                               + MAX_STEPS + " steps");
+          }
+          pending.removeLast().take(left, right, pending, paths);
+        }
+      }
+    }
+    if (paths.isEmpty() && within.isEmpty()) {
+      return null;
+    }
+    List<Field> kept = withoutCovered(within, paths);
+    AstNode result = kept.get(kept.size() - 1);
+    for (int i = kept.size() - 2; i >= 0; i--) {
+      result = Fields.of(kept.get(i), result);
+    }
+    return Canonicalizer.canonicalize(result);
+  }
+
+  /**
+   * Whether every path matched by {@code narrower} is also matched by {@code wider}. Walks both automata over every
+   * word the narrower one knows, plus one it doesn't, visiting each pair of states at most once. A word only the
+   * wider one knows can only be taken by a wildcard of the narrower one, and anywhere it takes such a word it would
+   * take any other word too, so swapping it for an unknown word can only make the wider one match less.
+   */
+  static boolean subsumes(Automaton wider, Automaton narrower) {
+    List<String> words = Lists.newArrayList(narrower.getWords());
+    Set<Long> visited = Sets.newHashSet();
+    Deque<int[]> pending = new ArrayDeque<int[]>();
+    pending.addLast(new int[]{wider.getStartState(), narrower.getStartState()});
+    // lazy automata add states as they are walked so the pairs are keyed by both states in full
+    visited.add((long) wider.getStartState() << 32 | narrower.getStartState());
+    while (!pending.isEmpty()) {
+      int[] states = pending.removeLast();
+      if (narrower.matches(states[1]) && !wider.matches(states[0])) {
+        return false;
+      }
+      if (wider.matchesAllBelow(states[0]) || !narrower.matchesAnyBelow(states[1])) {
+        // nothing below here can tell them apart
+        continue;
+      }
+      for (int i = 0; i <= words.size(); i++) {
+        int next;
+        int nextNarrower;
+        if (i == words.size()) {
+          next = wider.step(states[0], Automaton.OTHER);
+          nextNarrower = narrower.step(states[1], Automaton.OTHER);
+        } else {
+          next = wider.step(states[0], words.get(i));
+          nextNarrower = narrower.step(states[1], words.get(i));
+        }
+        if (visited.add((long) next << 32 | nextNarrower)) {
+          pending.addLast(new int[]{next, nextNarrower});
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get the expanded paths the other pattern doesn't match all of, adding those it does to {@code within}. A path
+   * the other pattern matches all of is its own intersection with that pattern, any intersection of it with one path
+   * of the other pattern is a part of it so there is no need to work those out.
+   */
+  private static List<Name[]> withoutWithin(List<Name[]> paths, Automaton other, List<Covering> within) {
+    List<Name[]> result = Lists.newArrayList();
+    for (Name[] path : paths) {
+      Covering covering = new Covering(Step.toPath(path, 0, null));
+      if (subsumes(other, covering.automaton)) {
+        within.add(covering);
+      } else {
+        result.add(path);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get the given paths without those every path of which another of them matches too. Each pair of expanded paths
+   * gets its own part of an intersection, so they overlap a lot, {@code *&#47;*&#47;*&#47;b} and {@code *&#47;b} give
+   * {@code *&#47;*&#47;*&#47;b} and several longer paths it already matches.
+   */
+  private static List<Field> withoutCovered(List<Covering> within, List<Field> paths) {
+    List<Covering> kept = Lists.newArrayList();
+    for (Covering covering : within) {
+      keepUnlessCovered(kept, covering);
+    }
+    for (Field path : Sets.newLinkedHashSet(paths)) {
+      keepUnlessCovered(kept, new Covering(path));
+    }
+    List<Field> result = Lists.newArrayListWithCapacity(kept.size());
+    for (Covering covering : kept) {
+      result.add(covering.path);
+    }
+    return result;
+  }
+
+  private static void keepUnlessCovered(List<Covering> kept, Covering candidate) {
+    for (Covering covering : kept) {
+      if (covering.covers(candidate)) {
+        return;
+      }
+    }
+    for (Iterator<Covering> iterator = kept.iterator(); iterator.hasNext(); ) {
+      if (candidate.covers(iterator.next())) {
+        iterator.remove();
+      }
+    }
+    kept.add(candidate);
+  }
+
+  private static void addFields(AstNode ast, List<Field> fields) {
+    AstNode node = ast;
+    while (node instanceof Fields) {
+      fields.add(((Fields) node).getField());
+      node = ((Fields) node).getNext();
+    }
+    fields.add((Field) node);
+  }
+
+  /**
+   * Get the names of each expanded path, without any trailing wildcard.
+   */
+  private static List<Name[]> namesOf(AstNode ast) {
+    List<Name[]> result = Lists.newArrayList();
+    int names = 0;
+    for (Field path : ExpandedPaths.of(ast)) {
+      List<Name> parts = Lists.newArrayList();
+      Field remaining = path;
+      while (remaining instanceof Path) {
+        parts.add((Name) ((Path) remaining).getPrefix());
+        remaining = ((Path) remaining).getSuffix();
+      }
+      if (!(remaining instanceof Wildcard)) {
+        parts.add((Name) remaining);
+      }
+      names += parts.size() + 1;
+      if (names > MAX_STEPS) {
+        throw new IllegalArgumentException("Patterns are too complex to intersect, they expand to more than "
+                                           + MAX_STEPS + " names");
+      }
+      result.add(parts.toArray(new Name[parts.size()]));
+    }
+    return result;
+  }
+
+  private MatcherAlgebra() {}
+
+  /**
+   * A position part way along both paths, along with the names of the intersection so far. A wildcard that has
+   * already taken one path part can take any number more, including none.
+   */
+  private static final class Step {
+    final int left;
+    final boolean leftStarted;
+    final int right;
+    final boolean rightStarted;
+    @Nullable
+    final Taken taken;
+
+    Step(int left, boolean leftStarted, int right, boolean rightStarted, @Nullable Taken taken) {
+      this.left = left;
+      this.leftStarted = leftStarted;
+      this.right = right;
+      this.rightStarted = rightStarted;
+      this.taken = taken;
+    }
+
+    /**
+     * Add the steps that follow this one to pending, or the path if one of the paths has come to an end.
+     */
+    void take(Name[] leftPath, Name[] rightPath, Deque<Step> pending, List<Field> paths) {
+      if (left == leftPath.length || right == rightPath.length) {
+        // the path that has ended matches everything, so the rest of the other one is all that is left
+        Name[] rest = left == leftPath.length ? rightPath : leftPath;
+        int from = left == leftPath.length ? right : left;
+        boolean started = left == leftPath.length ? rightStarted : leftStarted;
+        if (started) {
+          // the rest of a started wildcard can be nothing or one or more path parts
+          paths.add(toPath(rest, from + 1, taken));
+          paths.add(toPath(rest, from + 1, new Taken(Wildcard.getSharedInstance(), taken)));
+        } else {
+          paths.add(toPath(rest, from, taken));
+        }
+        return;
+      }
+      Name leftName = leftPath[left];
+      Name rightName = rightPath[right];
+      boolean leftWildcard = leftName instanceof Wildcard;
+      boolean rightWildcard = rightName instanceof Wildcard;
+      if (!leftWildcard && !rightWildcard) {
+        if (leftName.equals(rightName)) {
+          pending.addLast(new Step(left + 1, false, right + 1, false, new Taken(leftName, taken)));
+        }
+      } else if (!leftWildcard) {
+        if (rightStarted) {
+          pending.addLast(new Step(left, false, right + 1, false, taken));
+        }
+        pending.addLast(new Step(left + 1, false, right, true, new Taken(leftName, taken)));
+      } else if (!rightWildcard) {
+        if (leftStarted) {
+          pending.addLast(new Step(left + 1, false, right, false, taken));
+        }
+        pending.addLast(new Step(left, true, right + 1, false, new Taken(rightName, taken)));
+      } else {
+        if (leftStarted) {
+          pending.addLast(new Step(left + 1, false, right, rightStarted, taken));
+        }
+        if (rightStarted) {
+          pending.addLast(new Step(left, leftStarted, right + 1, false, taken));
+        }
+        // both wildcards take the same one or more parts, then at least one of them stops
+        Taken both = new Taken(Wildcard.getSharedInstance(), taken);
+        pending.addLast(new Step(left + 1, false, right + 1, false, both));
+        pending.addLast(new Step(left + 1, false, right, true, both));
+        pending.addLast(new Step(left, true, right + 1, false, both));
+      }
+    }
+
+    /**
+     * Build the path made of the names taken followed by the rest of the given path from the given index.
+     */
+    private static Field toPath(Name[] rest, int from, @Nullable Taken taken) {
+      Field path = null;
+      for (int i = rest.length - 1; i >= from; i--) {
+        path = prepend(rest[i], path);
+      }
+      for (Taken name = taken; name != null; name = name.previous) {
+        path = prepend(name.name, path);
+      }
+      return path == null ? Wildcard.getSharedInstance() : path;
+    }
+
+    private static Field prepend(Name name, @Nullable Field path) {
+      if (path == null) {
+        // a wildcard at the end of a pattern would also match nothing, one followed by a trailing wildcard won't
+        return name instanceof Wildcard ? Path.of(name, name) : name;
+      }
+      return Path.of(name, path);
+    }
+  }
+
+  /**
+   * A path of an intersection along with what is needed to tell whether it matches every path another one does.
+   */
+  private static final class Covering {
+    final Field path;
+    final Set<Name> words = Sets.newHashSet();
+    final Automaton automaton;
+
+    Covering(Field path) {
+      this.path = path;
+      Field remaining = path;
+      while (remaining instanceof Path) {
+        addWord(((Path) remaining).getPrefix());
+        remaining = ((Path) remaining).getSuffix();
+      }
+      addWord(remaining);
+      automaton = Automaton.compile(path);
+    }
+
+    private void addWord(Field name) {
+      if (!(name instanceof Wildcard)) {
+        words.add((Name) name);
+      }
+    }
+
+    /**
+     * Whether this path matches every path the other one does. A wildcard can be anything at all, including words
+     * neither path has, so the other path needs all of our words for that to be the case.
+     */
+    boolean covers(Covering other) {
+      return other.words.containsAll(words) && subsumes(automaton, other.automaton);
+    }
+  }
+
+  /**
+   * The names taken so far by a step, most recent first. Steps share the names they have in common.
+   */
+  private static final class Taken {
+    final Name name;
+    @Nullable
+    final Taken previous;
+
+    Taken(Name name, @Nullable Taken previous) {
+      this.name = name;
+      this.previous = previous;
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.match;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import com.pressassociation.pr.parser.PatternLimits;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>A bounded cache of Matchers keyed by their pattern string. Parsing and compiling a pattern is far more expensive
+ * than looking it up, and in practice the same patterns are requested over and over again.
+ *
+ * <p>This class is safe for use by multiple threads, concurrent requests for the same uncached pattern will only
+ * compile it once with the other callers waiting for that result.
+ *
+ * @author Matt Nathan
+ */
+public final class MatcherCache {
+
+  /**
+   * Create a cache that holds at most {@code maximumSize} matchers.
+   */
+  public static MatcherCache maximumSize(long maximumSize) {
+    checkArgument(maximumSize >= 0, "maximumSize cannot be negative: %s", maximumSize);
+    return new MatcherCache(CacheBuilder.newBuilder().maximumSize(maximumSize));
+  }
+
+  /**
+   * Create a cache that holds matchers whose patterns total at most {@code maximumWeight} characters.
+   */
+  public static MatcherCache maximumWeight(long maximumWeight) {
+    checkArgument(maximumWeight >= 0, "maximumWeight cannot be negative: %s", maximumWeight);
+    return new MatcherCache(CacheBuilder.newBuilder().maximumWeight(maximumWeight).weigher(PatternWeigher.INSTANCE));
+  }
+
+  private final LoadingCache<String, Matcher> cache;
+
+  private MatcherCache(CacheBuilder<? super String, ? super Matcher> builder) {
+    this.cache = builder.recordStats().build(new CacheLoader<String, Matcher>() {
+      @Override
+      public Matcher load(String fields) {
+        return Matcher.of(fields);
+      }
+    });
+  }
+
+  /**
+   * Get the Matcher for the given fields string, compiling it if it isn't already cached. Equivalent to
+   * {@link Matcher#of(CharSequence)}.
+   *
+   * @param fields The fields string
+   * @return The matcher.
+   * @throws IllegalArgumentException If the fields string is not a valid pattern.
+   */
+  public Matcher get(CharSequence fields) {
+    try {
+      return cache.getUnchecked(checkNotNull(fields).toString());
+    } catch (UncheckedExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * Get the Matcher for the given fields string as long as the pattern is within the given limits, compiling it if it
+   * isn't already cached. Patterns beyond the limits are rejected without being cached, those that are already cached
+   * are checked against the cost of the cached matcher. Equivalent to {@link Matcher#of(CharSequence, PatternLimits)}.
+   *
+   * @param fields The fields string
+   * @param limits The limits the pattern must be within
+   * @return The matcher.
+   * @throws IllegalArgumentException If the fields string is not a valid pattern or is beyond the limits.
+   */
+  public Matcher get(CharSequence fields, final PatternLimits limits) {
+    checkNotNull(limits);
+    final String pattern = checkNotNull(fields).toString();
+    Matcher matcher;
+    try {
+      matcher = cache.get(pattern, new Callable<Matcher>() {
+        @Override
+        public Matcher call() {
+          return Matcher.of(pattern, limits);
+        }
+      });
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } catch (UncheckedExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+    // the matcher may have been cached by a caller with different limits
+    limits.check(matcher.cost());
+    return matcher;
+  }
+
+  /**
+   * Get the hit, miss, eviction and load time statistics for this cache.
+   */
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  /**
+   * The approximate number of matchers in this cache.
+   */
+  public long size() {
+    return cache.size();
+  }
+
+  /**
+   * Remove all matchers from this cache.
+   */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  @Override
+  public String toString() {
+    return "MatcherCache" + cache.stats();
+  }
+
+  /**
+   * Weighs matchers by the length of their pattern.
+   */
+  private enum PatternWeigher implements Weigher<String, Matcher> {
+    INSTANCE;
+
+    @Override
+    public int weigh(String fields, Matcher matcher) {
+      return fields.length();
+    }
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.match;
+
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>A number of matchers checked together. The matchers are compiled into one automaton up front so checking a path
+ * against all of them costs much the same as checking it against one, each query returns a bit mask where bit
+ * {@code i} is the answer for the {@code i}'th matcher. For example checking what a client asked for against what it
+ * is allowed to see:
+ *
+ * <pre>{@code
+ * MatcherSet set = MatcherSet.of(requested, licensed);
+ * long matched = set.matches(leaf);
+ * boolean include = matched == set.all();
+ * }</pre>
+ *
+ * <p>Code walking a tree can use a {@link #cursor()}, whose own methods answer for any of the matchers, along with
+ * {@link #matches(MatchCursor)} and friends for the answers of each one.
+ *
+ * <p>Instances are immutable and safe for use by multiple threads.
+ *
+ * @author Matt Nathan
+ */
+public final class MatcherSet {
+  /**
+   * The most matchers a set can hold, one for each bit of a long.
+   */
+  public static final int MAX_SIZE = 64;
+
+  /**
+   * Create a set of the given matchers, in the order their bits will be in.
+   *
+   * @throws IllegalArgumentException If there are no matchers, more than {@link #MAX_SIZE} or the combination of them
+   *                                  is too complex.
+   */
+  public static MatcherSet of(Matcher... matchers) {
+    return of(ImmutableList.copyOf(matchers));
+  }
+
+  /**
+   * Create a set of the given matchers, in the order their bits will be in.
+   *
+   * @throws IllegalArgumentException If there are no matchers, more than {@link #MAX_SIZE} or the combination of them
+   *                                  is too complex.
+   */
+  public static MatcherSet of(Iterable<? extends Matcher> matchers) {
+    ImmutableList<Matcher> list = ImmutableList.copyOf(matchers);
+    checkArgument(!list.isEmpty() && list.size() <= MAX_SIZE,
+                  "A MatcherSet needs between 1 and %s matchers: %s", MAX_SIZE, list.size());
+    Automaton[] members = new Automaton[list.size()];
+    for (int i = 0; i < members.length; i++) {
+      members[i] = list.get(i).getAutomaton();
+    }
+    return new MatcherSet(list, ProductAutomaton.of(members));
+  }
+
+  private final ImmutableList<Matcher> matchers;
+  private final ProductAutomaton automaton;
+
+  private MatcherSet(ImmutableList<Matcher> matchers, ProductAutomaton automaton) {
+    this.matchers = matchers;
+    this.automaton = automaton;
+  }
+
+  /**
+   * Get the matchers in this set, in bit order.
+   */
+  public ImmutableList<Matcher> getMatchers() {
+    return matchers;
+  }
+
+  /**
+   * Get the mask with a bit set for every matcher in this set.
+   */
+  public long all() {
+    return matchers.size() == MAX_SIZE ? -1L : (1L << matchers.size()) - 1;
+  }
+
+  /**
+   * Get the mask of matchers that {@link Matcher#matches(Leaf) match} the given leaf.
+   */
+  public long matches(Leaf leaf) {
+    return automaton.getMatches(automaton.walk(leaf.getPath()));
+  }
+
+  /**
+   * Get the mask of matchers that match the given path, split according to {@link Leaf#fromPath(CharSequence)}.
+   */
+  public long matches(CharSequence path) {
+    return automaton.getMatches(automaton.walk(checkNotNull(path)));
+  }
+
+  /**
+   * Get the mask of matchers that match the current node of the given cursor.
+   *
+   * @throws IllegalArgumentException If the cursor was not created by this set.
+   */
+  public long matches(MatchCursor cursor) {
+    return automaton.getMatches(stateOf(cursor));
+  }
+
+  /**
+   * Get the mask of matchers that {@link Matcher#matchesParent(Leaf) match a path starting with} the given leaf.
+   */
+  public long matchesParent(Leaf node) {
+    return automaton.getMatchesParent(automaton.walk(node.getPath()));
+  }
+
+  /**
+   * Get the mask of matchers that match a path starting with the given path.
+   */
+  public long matchesParent(CharSequence path) {
+    return automaton.getMatchesParent(automaton.walk(checkNotNull(path)));
+  }
+
+  /**
+   * Get the mask of matchers that match a path starting with the current node of the given cursor.
+   *
+   * @throws IllegalArgumentException If the cursor was not created by this set.
+   */
+  public long matchesParent(MatchCursor cursor) {
+    return automaton.getMatchesParent(stateOf(cursor));
+  }
+
+  /**
+   * Get the mask of matchers that {@link Matcher#matchesAllBelow(Leaf) match everything below} the given leaf.
+   */
+  public long matchesAllBelow(Leaf node) {
+    return automaton.getMatchesAllBelow(automaton.walk(node.getPath()));
+  }
+
+  /**
+   * Get the mask of matchers that match everything below the given path.
+   */
+  public long matchesAllBelow(CharSequence path) {
+    return automaton.getMatchesAllBelow(automaton.walk(checkNotNull(path)));
+  }
+
+  /**
+   * Get the mask of matchers that match everything below the current node of the given cursor.
+   *
+   * @throws IllegalArgumentException If the cursor was not created by this set.
+   */
+  public long matchesAllBelow(MatchCursor cursor) {
+    return automaton.getMatchesAllBelow(stateOf(cursor));
+  }
+
+  /**
+   * Get the mask of matchers that {@link Matcher#matchesAnyBelow(Leaf) could match something below} the given leaf.
+   */
+  public long matchesAnyBelow(Leaf node) {
+    return automaton.getMatchesAnyBelow(automaton.walk(node.getPath()));
+  }
+
+  /**
+   * Get the mask of matchers that could match something below the given path.
+   */
+  public long matchesAnyBelow(CharSequence path) {
+    return automaton.getMatchesAnyBelow(automaton.walk(checkNotNull(path)));
+  }
+
+  /**
+   * Get the mask of matchers that could match something below the current node of the given cursor.
+   *
+   * @throws IllegalArgumentException If the cursor was not created by this set.
+   */
+  public long matchesAnyBelow(MatchCursor cursor) {
+    return automaton.getMatchesAnyBelow(stateOf(cursor));
+  }
+
+  /**
+   * Get a new cursor positioned at the root of the tree. The cursor's own methods are true when they would be for any
+   * of the matchers, for example {@link MatchCursor#matchesAnyBelow()} is false once none of the matchers could match
+   * anything further down.
+   */
+  public MatchCursor cursor() {
+    return new MatchCursor(automaton);
+  }
+
+  /**
+   * Resolve the given path part name for use with {@link MatchCursor#descend(PathPart)} on this set's cursors.
+   */
+  public PathPart pathPart(String name) {
+    return new PathPart(automaton, checkNotNull(name));
+  }
+
+  private int stateOf(MatchCursor cursor) {
+    checkArgument(cursor.getAutomaton() == automaton, "%s was not created by this set", cursor);
+    return cursor.getState();
+  }
+
+  @Override
+  public boolean equals(@Nullable Object obj) {
+    return obj == this || (obj instanceof MatcherSet && ((MatcherSet) obj).matchers.equals(matchers));
+  }
+
+  @Override
+  public int hashCode() {
+    return matchers.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "MatcherSet" + matchers;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.match;
+
+import com.pressassociation.pr.ast.AstNode;
+import com.pressassociation.pr.parser.PatternCost;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Matcher that remembers the state the automaton of another matcher reached for recently matched leafs. Asking
+ * about the same leaf again costs its cached hash code and a comparison with the remembered leaf, which stops at the
+ * first shared parent, instead of a walk from the root. This pays off when the same few paths are matched over and
+ * over again, for example the properties of thousands of objects of the same shape.
+ *
+ * <p>The memo is a fixed size table of small buckets picked by the hash of the leaf, a leaf can only be remembered in
+ * its own bucket so a new leaf simply replaces one of those already there. This keeps it bounded without any
+ * bookkeeping and lets any number of threads share it without locking, a thread that loses a race to update a slot
+ * just has its answer forgotten.
+ *
+ * <p>Paths given as strings are not remembered, walking the automaton over the characters in place costs no more than
+ * finding the remembered leaf would.
+ *
+ * @author Matt Nathan
+ * @see Matcher#memoizing(int)
+ */
+final class MemoizingMatcher extends Matcher {
+  /**
+   * The largest memo we will create.
+   */
+  static final int MAX_SIZE = 1 << 20;
+
+  // the number of slots in each bucket, a path can be remembered in any slot of the bucket its hash picks
+  private static final int WAYS = 4;
+
+  private final Matcher delegate;
+  private final Automaton automaton;
+  private final Entry[] memo;
+  // selects the first slot of the bucket for a hash
+  private final int mask;
+
+  MemoizingMatcher(Matcher delegate, int maximumSize) {
+    this.delegate = checkNotNull(delegate);
+    this.automaton = delegate.getAutomaton();
+    // the memo is a power of two in size, and at least one bucket, so the hash can be masked to a bucket
+    int size = Math.max(WAYS, maximumSize == 1 ? 1 : Integer.highestOneBit(maximumSize - 1) << 1);
+    this.memo = new Entry[size];
+    this.mask = size - WAYS;
+  }
+
+  @Override
+  public boolean matches(Leaf leaf) {
+    return automaton.matches(stateOf(leaf));
+  }
+
+  @Override
+  public boolean matchesParent(Leaf node) {
+    return automaton.matchesParent(stateOf(node));
+  }
+
+  @Override
+  public boolean matchesAllBelow(Leaf node) {
+    return automaton.matchesAllBelow(stateOf(node));
+  }
+
+  @Override
+  public boolean matchesAnyBelow(Leaf node) {
+    return automaton.matchesAnyBelow(stateOf(node));
+  }
+
+  @Override
+  public Matcher memoizing(int maximumSize) {
+    return delegate.memoizing(maximumSize);
+  }
+
+  private int stateOf(Leaf leaf) {
+    int hash = leaf.hashCode();
+    int bucket = (hash ^ (hash >>> 16)) & mask;
+    for (int i = bucket; i < bucket + WAYS; i++) {
+      Entry entry = memo[i];
+      if (entry != null && entry.path.equals(leaf)) {
+        return entry.state;
+      }
+    }
+    int state = automaton.walk(leaf.getPath());
+    // replace an empty slot if there is one, otherwise whichever slot the hash picks
+    int slot = bucket + ((hash >>> 28) & (WAYS - 1));
+    for (int i = bucket; i < bucket + WAYS; i++) {
+      if (memo[i] == null) {
+        slot = i;
+        break;
+      }
+    }
+    memo[slot] = new Entry(leaf, state);
+    return state;
+  }
+
+  @Override
+  Automaton getAutomaton() {
+    return automaton;
+  }
+
+  @Override
+  public boolean matchesAll() {
+    return delegate.matchesAll();
+  }
+
+  @Override
+  public PatternCost cost() {
+    return delegate.cost();
+  }
+
+  @Override
+  protected String patternString() {
+    return delegate.patternString();
+  }
+
+  @Override
+  protected AstNode getAstNode() {
+    return delegate.getAstNode();
+  }
+
+  /**
+   * A remembered path and the state it lead to. Immutable so it can be published to other threads through the memo
+   * without any synchronisation.
+   */
+  private static final class Entry {
+    final Leaf path;
+    final int state;
+
+    Entry(Leaf path, int state) {
+      this.path = path;
+      this.state = state;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.match;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>A path part name resolved against a particular {@link Matcher}. Moving a {@link MatchCursor} using a PathPart
+ * skips looking up the name each time, so callers that visit the same names over and over again, for example the
+ * properties of a class being serialised, should create a PathPart for each name once and reuse it.
+ *
+ * <p>Instances are immutable and can be shared between threads, they can only be used with cursors from the matcher
+ * that created them.
+ *
+ * @author Matt Nathan
+ * @see Matcher#pathPart(String)
+ */
+public final class PathPart {
+  private final Automaton automaton;
+  private final String name;
+  private final int symbol;
+
+  PathPart(Automaton automaton, String name) {
+    this.automaton = checkNotNull(automaton);
+    this.name = checkNotNull(name);
+    this.symbol = automaton.symbolOf(name);
+  }
+
+  /**
+   * Get the name of this path part.
+   */
+  public String getName() {
+    return name;
+  }
+
+  Automaton getAutomaton() {
+    return automaton;
+  }
+
+  int getSymbol() {
+    return symbol;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
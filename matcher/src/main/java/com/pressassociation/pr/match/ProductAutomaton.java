@@ -0,0 +1,262 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.match;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Automaton that runs several automata side by side. Each state is a combination of one state from each member,
+ * stepping it steps all of the members at once, and the flags of every member are kept as bit masks for each state
+ * so one walk answers for all of them. The flags of the state itself are those of any member, a state is only
+ * settled once all of the members are.
+ *
+ * <p>Only the steps that go somewhere other than where a word outside every pattern would go are stored, in order of
+ * their symbol for each state.
+ *
+ * @author Matt Nathan
+ */
+final class ProductAutomaton extends Automaton {
+  /**
+   * The maximum number of combined states before we give up.
+   */
+  static final int MAX_STATES = 1 << 16;
+
+  /**
+   * The maximum number of steps stored for all the states together before we give up.
+   */
+  static final int MAX_STEPS = 1 << 22;
+
+  // states with more steps than this are binary searched
+  private static final int SCAN_LIMIT = 8;
+
+  /**
+   * Combine the given automata, there can be no more than 64 of them.
+   *
+   * @throws IllegalArgumentException If the combination needs too many states or steps.
+   */
+  static ProductAutomaton of(Automaton... members) {
+    return new Builder(members).build();
+  }
+
+  // the steps for state s are rows[s] up to rows[s + 1]
+  private final int[] rows;
+  private final int[] stepSymbols;
+  private final int[] stepTargets;
+  private final int[] otherwise;
+  // bit i of each mask is the flag of the i'th member
+  private final long[] matches;
+  private final long[] matchesParent;
+  private final long[] matchesAllBelow;
+  private final long[] matchesAnyBelow;
+
+  private ProductAutomaton(ImmutableMap<String, Integer> symbols, byte[] flags, int[] rows, int[] stepSymbols,
+                           int[] stepTargets, int[] otherwise, long[][] masks) {
+    super(symbols, flags);
+    this.rows = rows;
+    this.stepSymbols = stepSymbols;
+    this.stepTargets = stepTargets;
+    this.otherwise = otherwise;
+    this.matches = masks[0];
+    this.matchesParent = masks[1];
+    this.matchesAllBelow = masks[2];
+    this.matchesAnyBelow = masks[3];
+  }
+
+  @Override
+  int step(int state, int symbol) {
+    int from = rows[state];
+    int to = rows[state + 1];
+    if (to - from > SCAN_LIMIT) {
+      int index = Arrays.binarySearch(stepSymbols, from, to, symbol);
+      return index >= 0 ? stepTargets[index] : otherwise[state];
+    }
+    for (int step = from; step < to; step++) {
+      if (stepSymbols[step] == symbol) {
+        return stepTargets[step];
+      }
+    }
+    return otherwise[state];
+  }
+
+  long getMatches(int state) {
+    return matches[state];
+  }
+
+  long getMatchesParent(int state) {
+    return matchesParent[state];
+  }
+
+  long getMatchesAllBelow(int state) {
+    return matchesAllBelow[state];
+  }
+
+  long getMatchesAnyBelow(int state) {
+    return matchesAnyBelow[state];
+  }
+
+  /**
+   * Finds every reachable combination of member states, breadth first from the combination of start states.
+   */
+  private static final class Builder {
+    private final Automaton[] members;
+    private final Map<String, Integer> symbols = Maps.newLinkedHashMap();
+    // memberSymbols[member][symbol] is the member's own symbol for the combined symbol
+    private final int[][] memberSymbols;
+    private final List<int[]> states = Lists.newArrayList();
+    private final Map<List<Integer>, Integer> stateIds = Maps.newHashMap();
+
+    Builder(Automaton[] members) {
+      this.members = members;
+      for (Automaton member : members) {
+        for (String word : member.getWords()) {
+          if (!symbols.containsKey(word)) {
+            symbols.put(word, symbols.size() + 1);
+          }
+        }
+      }
+      memberSymbols = new int[members.length][symbols.size() + 1];
+      for (Map.Entry<String, Integer> symbol : symbols.entrySet()) {
+        for (int member = 0; member < members.length; member++) {
+          memberSymbols[member][symbol.getValue()] = members[member].symbolOf(symbol.getKey());
+        }
+      }
+    }
+
+    ProductAutomaton build() {
+      int[] start = new int[members.length];
+      for (int member = 0; member < members.length; member++) {
+        start[member] = members[member].getStartState();
+      }
+      stateId(start);
+
+      int symbolCount = symbols.size() + 1;
+      List<int[]> rowSymbols = Lists.newArrayList();
+      List<int[]> rowTargets = Lists.newArrayList();
+      List<Integer> otherwise = Lists.newArrayList();
+      int[] symbolBuffer = new int[symbolCount];
+      int[] targetBuffer = new int[symbolCount];
+      int stepCount = 0;
+      // states are added as they are found, so this visits every one of them
+      for (int state = 0; state < states.size(); state++) {
+        int[] current = states.get(state);
+        int other = stateId(next(current, Automaton.OTHER));
+        otherwise.add(other);
+        int count = 0;
+        if (!isSettled(current)) {
+          for (int symbol = 1; symbol < symbolCount; symbol++) {
+            int target = stateId(next(current, symbol));
+            if (target != other) {
+              symbolBuffer[count] = symbol;
+              targetBuffer[count] = target;
+              count++;
+            }
+          }
+        }
+        stepCount += count;
+        if (stepCount > MAX_STEPS) {
+          throw new IllegalArgumentException("Matchers are too complex to combine, they need more than "
+                                             + MAX_STEPS + " steps");
+        }
+        rowSymbols.add(Arrays.copyOf(symbolBuffer, count));
+        rowTargets.add(Arrays.copyOf(targetBuffer, count));
+      }
+      return toAutomaton(rowSymbols, rowTargets, otherwise, stepCount);
+    }
+
+    private ProductAutomaton toAutomaton(List<int[]> rowSymbols, List<int[]> rowTargets, List<Integer> otherwise,
+                                         int stepCount) {
+      int stateCount = states.size();
+      int[] rows = new int[stateCount + 1];
+      int[] stepSymbols = new int[stepCount];
+      int[] stepTargets = new int[stepCount];
+      for (int state = 0; state < stateCount; state++) {
+        int[] row = rowSymbols.get(state);
+        rows[state + 1] = rows[state] + row.length;
+        System.arraycopy(row, 0, stepSymbols, rows[state], row.length);
+        System.arraycopy(rowTargets.get(state), 0, stepTargets, rows[state], row.length);
+      }
+      byte[] flags = new byte[stateCount];
+      long[][] masks = new long[4][stateCount];
+      for (int state = 0; state < stateCount; state++) {
+        int[] current = states.get(state);
+        boolean settled = true;
+        for (int member = 0; member < members.length; member++) {
+          Automaton automaton = members[member];
+          long bit = 1L << member;
+          masks[0][state] |= automaton.matches(current[member]) ? bit : 0;
+          masks[1][state] |= automaton.matchesParent(current[member]) ? bit : 0;
+          masks[2][state] |= automaton.matchesAllBelow(current[member]) ? bit : 0;
+          masks[3][state] |= automaton.matchesAnyBelow(current[member]) ? bit : 0;
+          settled &= automaton.isSettled(current[member]);
+        }
+        flags[state] = (byte) ((masks[0][state] != 0 ? MATCHES : 0)
+                               | (masks[1][state] != 0 ? MATCHES_PARENT : 0)
+                               | (masks[2][state] != 0 ? MATCHES_ALL_BELOW : 0)
+                               | (masks[3][state] != 0 ? MATCHES_ANY_BELOW : 0)
+                               | (settled ? SETTLED : 0));
+      }
+      return new ProductAutomaton(ImmutableMap.copyOf(symbols), flags, rows, stepSymbols, stepTargets,
+                                  Ints.toArray(otherwise), masks);
+    }
+
+    private int[] next(int[] current, int symbol) {
+      int[] result = new int[members.length];
+      for (int member = 0; member < members.length; member++) {
+        result[member] = members[member].step(current[member], memberSymbols[member][symbol]);
+      }
+      return result;
+    }
+
+    private boolean isSettled(int[] current) {
+      for (int member = 0; member < members.length; member++) {
+        if (!members[member].isSettled(current[member])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int stateId(int[] state) {
+      List<Integer> key = Ints.asList(state);
+      Integer id = stateIds.get(key);
+      if (id == null) {
+        if (states.size() == MAX_STATES) {
+          throw new IllegalArgumentException("Matchers are too complex to combine, they need more than "
+                                             + MAX_STATES + " states");
+        }
+        id = states.size();
+        states.add(state);
+        stateIds.put(key, id);
+      }
+      return id;
+    }
+  }
+}
@@ -0,0 +1,484 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.match;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+
+import com.pressassociation.pr.ast.*;
+import com.pressassociation.pr.ast.visitor.AstVisitor;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * <p>Automaton that stores the next state for every state and symbol in a single table, matching a path is then one
+ * table lookup per path part. This handles any pattern but the table grows with the number of states times the number
+ * of words in the pattern, patterns that need more than {@link #MAX_STATES} states get a {@link LazyAutomaton}
+ * instead.
+ *
+ * @author Matt Nathan
+ */
+final class TableAutomaton extends Automaton {
+  /**
+   * The maximum number of states a pattern can compile to before we leave the states to be worked out as they are
+   * walked into.
+   */
+  static final int MAX_STATES = 4096;
+
+  /**
+   * The most steps, states times symbols, a pattern can compile to before we leave the states to be worked out as they
+   * are walked into. Working out each step costs more the more positions there are, so patterns with a lot of words
+   * give up on working out every state up front sooner.
+   */
+  static final int MAX_STEPS = 1 << 16;
+
+  /**
+   * The most positions, names in the pattern, we will look for positions that simulate each other in when a pattern
+   * needs too many states otherwise. Every position is compared with every other one.
+   */
+  static final int MAX_SIMULATED_POSITIONS = 1024;
+
+  /**
+   * Compile the given ast into a table automaton, or a {@link LazyAutomaton} if it would need more than
+   * {@link #MAX_STATES} states or {@link #MAX_STEPS} steps.
+   */
+  static Automaton compile(AstNode ast) {
+    return new Compiler().compile(checkNotNull(ast), false);
+  }
+
+  /**
+   * Compile the given ast into a {@link LazyAutomaton} without working out any of its states up front.
+   */
+  static LazyAutomaton compileLazily(AstNode ast) {
+    return (LazyAutomaton) new Compiler().compile(checkNotNull(ast), true);
+  }
+
+  private final int symbolCount;
+  private final int[] transitions;
+
+  private TableAutomaton(ImmutableMap<String, Integer> symbols, int[] transitions, byte[] flags) {
+    super(symbols, flags);
+    this.symbolCount = symbols.size() + 1;
+    this.transitions = transitions;
+  }
+
+  @Override
+  int step(int state, int symbol) {
+    return transitions[state * symbolCount + symbol];
+  }
+
+  /**
+   * Builds the automaton. The ast is first converted into a position automaton where every name in the pattern is a
+   * position, the follow sets say which positions can come next. That is then turned into a deterministic automaton
+   * using the usual subset construction.
+   */
+  private static final class Compiler extends AstVisitor {
+    // labels for each position, null for wildcards
+    private final List<String> labels = Lists.newArrayList();
+    private final List<BitSet> follows = Lists.newArrayList();
+    private final BitSet wildcards = new BitSet();
+    private final Map<String, Integer> symbols = Maps.newLinkedHashMap();
+    private final Deque<Fragment> stack = Queues.newArrayDeque();
+
+    Automaton compile(AstNode ast, boolean lazily) {
+      ast.apply(this);
+      Fragment root = stack.removeLast();
+      checkState(stack.isEmpty(), "Unbalanced ast traversal");
+      follows.add(root.first);
+      BitSet last = root.last;
+      BitSet finishers = findFinishers(last);
+      int symbolCount = symbols.size() + 1;
+      BitSet[] accepting = new BitSet[symbolCount];
+      for (int symbol = 0; symbol < symbolCount; symbol++) {
+        accepting[symbol] = (BitSet) wildcards.clone();
+      }
+      for (int position = 0; position < labels.size(); position++) {
+        String label = labels.get(position);
+        if (label != null) {
+          accepting[symbols.get(label)].set(position);
+        }
+      }
+
+      TableAutomaton automaton = lazily ? null : determinize(last, finishers, accepting, null);
+      if (automaton == null && !lazily && labels.size() <= MAX_SIMULATED_POSITIONS) {
+        // overlapping paths, those of an intersection for example, can need far more states than the language they
+        // match, try again leaving out the positions of each state that another of its positions can stand in for
+        BitSet[] simulations = findSimulations(last, finishers);
+        if (anySimulated(simulations)) {
+          automaton = determinize(last, finishers, accepting, simulations);
+        }
+      }
+      if (automaton == null) {
+        return new LazyAutomaton(ImmutableMap.copyOf(symbols), follows, wildcards, last, finishers, accepting);
+      }
+      return automaton;
+    }
+
+    /**
+     * Turn the positions into states using the subset construction.
+     *
+     * @param simulations The positions that can stand in for each position, as found by
+     *                    {@link #findSimulations(BitSet, BitSet)}, or null to keep every position.
+     * @return The automaton or null if it needs more than {@link #MAX_STATES} states or {@link #MAX_STEPS} steps.
+     */
+    @Nullable
+    private TableAutomaton determinize(BitSet last, BitSet finishers, BitSet[] accepting,
+                                       @Nullable BitSet[] simulations) {
+      // the start position is a virtual position that is followed by the first positions of the pattern. Set bits
+      // below the matched bit represent the positions a state is in, the matched bit means the path walked so far
+      // has passed through the end of the pattern.
+      int startPosition = labels.size();
+      int matchedBit = startPosition + 1;
+      int symbolCount = accepting.length;
+      int maxStates = Math.min(MAX_STATES, MAX_STEPS / symbolCount);
+      // once the end of the pattern has been passed with a wildcard still live every path below is matched and is the
+      // start of a path in the pattern, which positions are live no longer changes anything so they share one state
+      BitSet matchedWildcard = new BitSet();
+      matchedWildcard.set(Math.max(wildcards.nextSetBit(0), 0));
+      matchedWildcard.set(matchedBit);
+
+      List<BitSet> states = Lists.newArrayList();
+      Map<BitSet, Integer> stateIds = Maps.newHashMap();
+      List<int[]> rows = Lists.newArrayList();
+      List<Byte> stateFlags = Lists.newArrayList();
+      BitSet start = new BitSet();
+      start.set(startPosition);
+      stateIdOf(start, states, stateIds, maxStates);
+
+      for (int id = 0; id < states.size(); id++) {
+        BitSet state = states.get(id);
+        boolean matched = state.get(matchedBit);
+        BitSet reachable = new BitSet();
+        for (int position = state.nextSetBit(0);
+             position >= 0 && position < matchedBit;
+             position = state.nextSetBit(position + 1)) {
+          reachable.or(follows.get(position));
+        }
+
+        byte flags = 0;
+        if (matched || reachable.intersects(finishers)) {
+          flags |= MATCHES;
+        }
+        int firstPosition = state.nextSetBit(0);
+        if (firstPosition >= 0 && firstPosition < matchedBit) {
+          flags |= MATCHES_PARENT;
+        }
+        stateFlags.add(flags);
+
+        int[] row = new int[symbolCount];
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+          BitSet next = (BitSet) reachable.clone();
+          next.and(accepting[symbol]);
+          if (matched || next.intersects(last)) {
+            next.set(matchedBit);
+            if (next.intersects(wildcards)) {
+              next = matchedWildcard;
+            }
+          }
+          if (simulations != null && next != matchedWildcard) {
+            removeSimulated(next, simulations);
+          }
+          row[symbol] = stateIdOf(next, states, stateIds, maxStates);
+          if (row[symbol] < 0) {
+            return null;
+          }
+        }
+        rows.add(row);
+      }
+
+      int[] transitions = new int[rows.size() * symbolCount];
+      byte[] flags = new byte[rows.size()];
+      for (int id = 0; id < rows.size(); id++) {
+        System.arraycopy(rows.get(id), 0, transitions, id * symbolCount, symbolCount);
+        flags[id] = stateFlags.get(id);
+      }
+      markAllBelow(transitions, flags, symbolCount);
+      markAnyBelow(transitions, flags, symbolCount);
+      markSettled(transitions, flags, symbolCount);
+      return new TableAutomaton(ImmutableMap.copyOf(symbols), transitions, flags);
+    }
+
+    @Override
+    protected void afterFields(Fields fields) {
+      Fragment next = stack.removeLast();
+      Fragment field = stack.removeLast();
+      field.first.or(next.first);
+      field.last.or(next.last);
+      stack.addLast(field);
+    }
+
+    @Override
+    protected void afterPath(Path path) {
+      concatenate();
+    }
+
+    @Override
+    protected void afterSubSelection(SubSelection subSelection) {
+      concatenate();
+    }
+
+    @Override
+    public void visitWildcard(Wildcard wildcard) {
+      int position = addPosition(null);
+      // a wildcard can match any number of path parts so it follows itself
+      follows.get(position).set(position);
+      wildcards.set(position);
+    }
+
+    @Override
+    public void visitWord(Word word) {
+      String stringValue = word.getStringValue();
+      if (!symbols.containsKey(stringValue)) {
+        symbols.put(stringValue, symbols.size() + 1);
+      }
+      addPosition(stringValue);
+    }
+
+    private int addPosition(String label) {
+      int position = labels.size();
+      labels.add(label);
+      follows.add(new BitSet());
+      BitSet only = new BitSet();
+      only.set(position);
+      stack.addLast(new Fragment(only, (BitSet) only.clone()));
+      return position;
+    }
+
+    private void concatenate() {
+      Fragment suffix = stack.removeLast();
+      Fragment prefix = stack.removeLast();
+      for (int position = prefix.last.nextSetBit(0); position >= 0; position = prefix.last.nextSetBit(position + 1)) {
+        follows.get(position).or(suffix.first);
+      }
+      stack.addLast(new Fragment(prefix.first, suffix.last));
+    }
+
+    /**
+     * Wildcards can match nothing if they end the pattern, find all the wildcard positions from which the end of the
+     * pattern can be reached by only passing through other wildcards.
+     */
+    private BitSet findFinishers(BitSet last) {
+      BitSet finishers = new BitSet();
+      boolean changed = true;
+      while (changed) {
+        changed = false;
+        for (int position = wildcards.nextSetBit(0); position >= 0; position = wildcards.nextSetBit(position + 1)) {
+          if (!finishers.get(position) && (last.get(position) || follows.get(position).intersects(finishers))) {
+            finishers.set(position);
+            changed = true;
+          }
+        }
+      }
+      return finishers;
+    }
+
+    /**
+     * Find, for every position, the positions that can do anything it can. They accept the same path parts or more,
+     * end the pattern wherever it does and every position that follows it has one following them that can do anything
+     * it can. Whatever comes after a position comes after one that simulates it too, so a state needs only one of
+     * them.
+     */
+    private BitSet[] findSimulations(BitSet last, BitSet finishers) {
+      int positionCount = labels.size();
+      BitSet[] simulations = new BitSet[positionCount];
+      for (int position = 0; position < positionCount; position++) {
+        String label = labels.get(position);
+        boolean ends = last.get(position);
+        boolean finishes = follows.get(position).intersects(finishers);
+        BitSet candidates = new BitSet();
+        for (int other = 0; other < positionCount; other++) {
+          String otherLabel = labels.get(other);
+          if ((otherLabel == null || otherLabel.equals(label))
+              && (!ends || last.get(other))
+              && (!finishes || follows.get(other).intersects(finishers))) {
+            candidates.set(other);
+          }
+        }
+        simulations[position] = candidates;
+      }
+      boolean changed = true;
+      while (changed) {
+        changed = false;
+        for (int position = 0; position < positionCount; position++) {
+          BitSet candidates = simulations[position];
+          BitSet positionFollows = follows.get(position);
+          for (int other = candidates.nextSetBit(0); other >= 0; other = candidates.nextSetBit(other + 1)) {
+            BitSet otherFollows = follows.get(other);
+            for (int next = positionFollows.nextSetBit(0); next >= 0; next = positionFollows.nextSetBit(next + 1)) {
+              if (!simulations[next].intersects(otherFollows)) {
+                candidates.clear(other);
+                changed = true;
+                break;
+              }
+            }
+          }
+        }
+      }
+      return simulations;
+    }
+
+    /**
+     * Whether any position can be stood in for by another, every position simulates itself.
+     */
+    private static boolean anySimulated(BitSet[] simulations) {
+      for (BitSet simulating : simulations) {
+        if (simulating.cardinality() > 1) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Remove the positions of the state that another of its positions simulates, keeping the first of those that
+     * simulate each other.
+     */
+    private static void removeSimulated(BitSet state, BitSet[] simulations) {
+      BitSet simulating = new BitSet();
+      for (int position = state.nextSetBit(0);
+           position >= 0 && position < simulations.length;
+           position = state.nextSetBit(position + 1)) {
+        simulating.clear();
+        simulating.or(simulations[position]);
+        simulating.and(state);
+        simulating.clear(position);
+        for (int other = simulating.nextSetBit(0); other >= 0; other = simulating.nextSetBit(other + 1)) {
+          if (other < position || !simulations[other].get(position)) {
+            state.clear(position);
+            break;
+          }
+        }
+      }
+    }
+
+    /**
+     * Get the id of the given state, adding it if it is new.
+     *
+     * @return The id or -1 if there are already {@code maxStates} states.
+     */
+    private static int stateIdOf(BitSet state, List<BitSet> states, Map<BitSet, Integer> stateIds, int maxStates) {
+      Integer id = stateIds.get(state);
+      if (id == null) {
+        if (states.size() == maxStates) {
+          return -1;
+        }
+        id = states.size();
+        states.add(state);
+        stateIds.put(state, id);
+      }
+      return id;
+    }
+
+    /**
+     * A state matches everything below it if every state it can step to matches and also matches everything below.
+     */
+    private static void markAllBelow(int[] transitions, byte[] flags, int symbolCount) {
+      boolean[] allBelow = new boolean[flags.length];
+      Arrays.fill(allBelow, true);
+      boolean changed = true;
+      while (changed) {
+        changed = false;
+        for (int state = 0; state < flags.length; state++) {
+          if (allBelow[state]) {
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+              int next = transitions[state * symbolCount + symbol];
+              if ((flags[next] & MATCHES) == 0 || !allBelow[next]) {
+                allBelow[state] = false;
+                changed = true;
+                break;
+              }
+            }
+          }
+        }
+      }
+      for (int state = 0; state < flags.length; state++) {
+        if (allBelow[state]) {
+          flags[state] |= MATCHES_ALL_BELOW;
+        }
+      }
+    }
+
+    /**
+     * A state may match something below it if any state it can step to matches or may match something below it.
+     */
+    private static void markAnyBelow(int[] transitions, byte[] flags, int symbolCount) {
+      boolean changed = true;
+      while (changed) {
+        changed = false;
+        for (int state = 0; state < flags.length; state++) {
+          if ((flags[state] & MATCHES_ANY_BELOW) == 0) {
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+              int next = transitions[state * symbolCount + symbol];
+              if ((flags[next] & (MATCHES | MATCHES_ANY_BELOW)) != 0) {
+                flags[state] |= MATCHES_ANY_BELOW;
+                changed = true;
+                break;
+              }
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * A state is settled if every symbol steps back to it, the dead state for example.
+     */
+    private static void markSettled(int[] transitions, byte[] flags, int symbolCount) {
+      for (int state = 0; state < flags.length; state++) {
+        boolean settled = true;
+        for (int symbol = 0; symbol < symbolCount && settled; symbol++) {
+          settled = transitions[state * symbolCount + symbol] == state;
+        }
+        if (settled) {
+          flags[state] |= SETTLED;
+        }
+      }
+    }
+  }
+
+  /**
+   * The first and last positions of a part of the ast.
+   */
+  private static final class Fragment {
+    final BitSet first;
+    final BitSet last;
+
+    Fragment(BitSet first, BitSet last) {
+      this.first = first;
+      this.last = last;
+    }
+  }
+}
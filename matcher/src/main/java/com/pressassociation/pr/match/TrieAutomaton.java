@@ -0,0 +1,230 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.match;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.pressassociation.pr.ast.AstNode;
+import com.pressassociation.pr.ast.Field;
+import com.pressassociation.pr.ast.Path;
+import com.pressassociation.pr.ast.Word;
+import com.pressassociation.pr.ast.visitor.ExpandedPaths;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * <p>Automaton for patterns that only have wildcards at the end of their paths, like {@code items(id,links/*)}. The
+ * states are the nodes of a prefix tree of the pattern's expanded paths plus three shared states: one for anything
+ * below the end of a path, one for anything below a trailing wildcard and the dead state. Only the steps from a node
+ * to its children are stored so a long list of words takes space in proportion to its length rather than its square
+ * like a {@link TableAutomaton} would.
+ *
+ * @author Matt Nathan
+ */
+final class TrieAutomaton extends Automaton {
+  /**
+   * The most names we will read from the expanded paths of a pattern before falling back to a table. Nested
+   * selections can expand to very many paths which would each need their own nodes.
+   */
+  static final int MAX_NAMES = 1 << 18;
+
+  // words that appear under more parents than this are binary searched
+  private static final int SCAN_LIMIT = 8;
+
+  /**
+   * Compile the given ast into a trie automaton, if it can be.
+   *
+   * @return The automaton or null if the pattern has wildcards before the end of a path or expands to too many names.
+   */
+  @Nullable
+  static TrieAutomaton compile(AstNode ast) {
+    return new Builder().build(ast);
+  }
+
+  // the steps to child nodes grouped by symbol, parents and children from edges[symbol] up to edges[symbol + 1] are
+  // the steps for that symbol with the parents in ascending order. Most words appear once in a pattern so finding the
+  // step is a single comparison
+  private final int[] edges;
+  private final int[] parents;
+  private final int[] children;
+  // the state to step to for symbols that aren't a child
+  private final int[] otherwise;
+
+  private TrieAutomaton(ImmutableMap<String, Integer> symbols, byte[] flags,
+                        int[] edges, int[] parents, int[] children, int[] otherwise) {
+    super(symbols, flags);
+    this.edges = edges;
+    this.parents = parents;
+    this.children = children;
+    this.otherwise = otherwise;
+  }
+
+  @Override
+  int step(int state, int symbol) {
+    int from = edges[symbol];
+    int to = edges[symbol + 1];
+    if (to - from > SCAN_LIMIT) {
+      int index = Arrays.binarySearch(parents, from, to, state);
+      return index >= 0 ? children[index] : otherwise[state];
+    }
+    for (int edge = from; edge < to; edge++) {
+      if (parents[edge] == state) {
+        return children[edge];
+      }
+    }
+    return otherwise[state];
+  }
+
+  /**
+   * Builds the tree one expanded path at a time, then works out the flags for each node. A node is matched if it or
+   * one of its ancestors ends a path, everything below a node followed by a trailing wildcard is matched.
+   */
+  private static final class Builder {
+    private final Map<String, Integer> symbols = Maps.newLinkedHashMap();
+    private final List<Map<Integer, Integer>> nodes = Lists.newArrayList();
+    private final List<Boolean> ends = Lists.newArrayList();
+    private final List<Boolean> wildcards = Lists.newArrayList();
+    private final List<Integer> parents = Lists.newArrayList();
+
+    @Nullable
+    TrieAutomaton build(AstNode ast) {
+      addNode(-1);
+      int names = 0;
+      for (Field path : ExpandedPaths.of(ast)) {
+        int node = 0;
+        Field remaining = path;
+        while (remaining instanceof Path) {
+          if (!(((Path) remaining).getPrefix() instanceof Word) || ++names > MAX_NAMES) {
+            return null;
+          }
+          node = child(node, ((Word) ((Path) remaining).getPrefix()).getStringValue());
+          remaining = ((Path) remaining).getSuffix();
+        }
+        if (++names > MAX_NAMES) {
+          return null;
+        }
+        if (remaining instanceof Word) {
+          node = child(node, ((Word) remaining).getStringValue());
+          ends.set(node, true);
+        } else {
+          wildcards.set(node, true);
+        }
+      }
+      return toAutomaton();
+    }
+
+    private TrieAutomaton toAutomaton() {
+      int nodeCount = nodes.size();
+      int matchedBelow = nodeCount;
+      int wildcardBelow = nodeCount + 1;
+      int dead = nodeCount + 2;
+      int stateCount = nodeCount + 3;
+      byte[] flags = new byte[stateCount];
+      int[] otherwise = new int[stateCount];
+      int symbolCount = symbols.size() + 1;
+      int[] edges = new int[symbolCount + 1];
+
+      // parents are always added before their children so a single pass sees every ancestor first
+      boolean[] matched = new boolean[nodeCount];
+      for (int node = 0; node < nodeCount; node++) {
+        int parent = parents.get(node);
+        matched[node] = ends.get(node) || (parent >= 0 && matched[parent]);
+        boolean wildcard = wildcards.get(node);
+        flags[node] = MATCHES_PARENT | MATCHES_ANY_BELOW;
+        if (matched[node] || wildcard) {
+          flags[node] |= MATCHES | MATCHES_ALL_BELOW;
+        }
+        if (wildcard) {
+          otherwise[node] = wildcardBelow;
+        } else {
+          otherwise[node] = matched[node] ? matchedBelow : dead;
+        }
+      }
+      flags[matchedBelow] = MATCHES | MATCHES_ALL_BELOW | MATCHES_ANY_BELOW | SETTLED;
+      flags[wildcardBelow] = MATCHES | MATCHES_PARENT | MATCHES_ALL_BELOW | MATCHES_ANY_BELOW | SETTLED;
+      flags[dead] = SETTLED;
+      for (int state = nodeCount; state < stateCount; state++) {
+        otherwise[state] = state;
+      }
+
+      // count the steps for each symbol then fill them in, visiting nodes in order keeps the parents sorted. Nodes
+      // followed by a trailing wildcard have no steps, the wildcard swallows everything below whatever other paths
+      // there are
+      int edgeCount = 0;
+      for (int node = 0; node < nodeCount; node++) {
+        if (!wildcards.get(node)) {
+          for (int symbol : nodes.get(node).keySet()) {
+            edges[symbol + 1]++;
+            edgeCount++;
+          }
+        }
+      }
+      for (int symbol = 0; symbol < symbolCount; symbol++) {
+        edges[symbol + 1] += edges[symbol];
+      }
+      int[] edgeParents = new int[edgeCount];
+      int[] edgeChildren = new int[edgeCount];
+      int[] next = Arrays.copyOf(edges, symbolCount);
+      for (int node = 0; node < nodeCount; node++) {
+        if (!wildcards.get(node)) {
+          for (Map.Entry<Integer, Integer> child : nodes.get(node).entrySet()) {
+            int edge = next[child.getKey()]++;
+            edgeParents[edge] = node;
+            edgeChildren[edge] = child.getValue();
+          }
+        }
+      }
+      return new TrieAutomaton(ImmutableMap.copyOf(symbols), flags, edges, edgeParents, edgeChildren, otherwise);
+    }
+
+    private int child(int node, String name) {
+      Integer symbol = symbols.get(name);
+      if (symbol == null) {
+        symbol = symbols.size() + 1;
+        symbols.put(name, symbol);
+      }
+      Integer child = nodes.get(node).get(symbol);
+      if (child == null) {
+        child = addNode(node);
+        nodes.get(node).put(symbol, child);
+      }
+      return child;
+    }
+
+    private int addNode(int parent) {
+      nodes.add(Maps.<Integer, Integer>newHashMap());
+      ends.add(false);
+      wildcards.add(false);
+      parents.add(parent);
+      return nodes.size() - 1;
+    }
+  }
+}
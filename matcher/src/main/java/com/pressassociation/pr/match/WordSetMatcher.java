@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.match;
+
+import com.google.common.collect.ImmutableSet;
+
+import com.pressassociation.pr.ast.AstNode;
+import com.pressassociation.pr.ast.Path;
+import com.pressassociation.pr.ast.SubSelection;
+import com.pressassociation.pr.ast.Wildcard;
+import com.pressassociation.pr.ast.Word;
+import com.pressassociation.pr.ast.visitor.AstVisitor;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Matcher for patterns that are a plain list of words like {@code id,title,updated}. Only the first part of a path
+ * matters to such a pattern so matching is a single set lookup, the automaton is only used by cursors.
+ *
+ * @author Matt Nathan
+ */
+class WordSetMatcher extends AstMatcher {
+  private final ImmutableSet<String> words;
+
+  /**
+   * Get the words of the given pattern if it is only a list of words.
+   *
+   * @return The words or null if the pattern has any paths, sub-selections or wildcards.
+   */
+  @Nullable
+  static ImmutableSet<String> wordsOf(AstNode fields) {
+    WordCollector collector = new WordCollector();
+    fields.apply(collector);
+    return collector.flat ? collector.words.build() : null;
+  }
+
+  WordSetMatcher(AstNode fields, ImmutableSet<String> words) {
+    super(fields);
+    this.words = checkNotNull(words);
+  }
+
+  @Override
+  public boolean matches(Leaf input) {
+    return !input.isRoot() && words.contains(firstName(input));
+  }
+
+  @Override
+  public boolean matchesParent(Leaf node) {
+    // only the words themselves are parents, anything below them is matched but not mentioned by the pattern
+    return node.isRoot() || (node.getDepth() == 1 && words.contains(node.getName()));
+  }
+
+  @Override
+  public boolean matchesAllBelow(Leaf node) {
+    return matches(node);
+  }
+
+  @Override
+  public boolean matchesAnyBelow(Leaf node) {
+    return node.isRoot() || words.contains(firstName(node));
+  }
+
+  private static String firstName(Leaf leaf) {
+    Leaf first = leaf;
+    while (first.getDepth() > 1) {
+      first = first.parent();
+    }
+    return first.getName();
+  }
+
+  /**
+   * Collects the words of a pattern, giving up as soon as it sees anything else.
+   */
+  private static final class WordCollector extends AstVisitor {
+    private final ImmutableSet.Builder<String> words = ImmutableSet.builder();
+    private boolean flat = true;
+
+    @Override
+    public void visitPath(Path path) {
+      flat = false;
+    }
+
+    @Override
+    public void visitSubSelection(SubSelection subSelection) {
+      flat = false;
+    }
+
+    @Override
+    public void visitWildcard(Wildcard wildcard) {
+      flat = false;
+    }
+
+    @Override
+    public void visitWord(Word word) {
+      words.add(word.getStringValue());
+    }
+  }
+}
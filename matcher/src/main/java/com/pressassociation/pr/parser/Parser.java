@@ -25,11 +25,20 @@
 package com.pressassociation.pr.parser;
 
 import com.google.common.base.CharMatcher;
+import com.google.common.collect.Lists;
 
 import com.pressassociation.pr.ast.*;
 import com.pressassociation.pr.match.Matcher;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
 
 /**
  * <p>Parser of partial response patterns. This parser outputs an AST representing the partial response structure.
@@ -41,112 +50,539 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class Parser {
   // matcher for non-whitespace and non special chars ,/()*
   private static final CharMatcher WORD_CHAR_MATCHER = CharMatcher.WHITESPACE.negate().and(CharMatcher.noneOf(",/()*"));
+  // shared by all parsers, so commonly used words are only allocated once
+  private static final SymbolTable SYMBOLS = new SymbolTable();
 
   /**
    * Parse the given partial response input, return the Ast for the pattern.
    */
   public AstNode parse(CharSequence input) {
-    return parse(new Input(checkNotNull(input)));
+    return parse(new CharInput(checkNotNull(input)), PatternLimits.none());
   }
 
-  private AstNode parse(Input input) {
-    AstNode result = parseFields(input);
-    if (!input.isEof()) {
-      throw new IllegalArgumentException("Unexpected characters '" + input.getRemaining() + '\'');
+  /**
+   * Parse the given partial response input, return the Ast for the pattern. Parsing stops as soon as the pattern is
+   * found to be beyond any of the given limits.
+   *
+   * @throws IllegalArgumentException If the input isn't a valid pattern or is beyond the limits.
+   */
+  public AstNode parse(CharSequence input, PatternLimits limits) {
+    checkNotNull(input);
+    checkNotNull(limits).checkLength(input.length());
+    return parse(new CharInput(input), limits);
+  }
+
+  /**
+   * Parse the given percent encoded partial response input, as it would appear in a URL query string, return the Ast
+   * for the decoded pattern. The input is decoded as it is parsed, there is no need to decode it first.
+   */
+  public AstNode parseEncoded(CharSequence input) {
+    return parse(new EncodedCharInput(checkNotNull(input)), PatternLimits.none());
+  }
+
+  /**
+   * Parse the given percent encoded partial response input, return the Ast for the decoded pattern. The limits apply to
+   * the decoded pattern, parsing stops as soon as it is found to be beyond any of them.
+   *
+   * @throws IllegalArgumentException If the input isn't a valid encoded pattern or is beyond the limits.
+   */
+  public AstNode parseEncoded(CharSequence input, PatternLimits limits) {
+    checkNotNull(input);
+    if (!checkNotNull(limits).equals(PatternLimits.none())) {
+      limits.checkLength(decodedLength(new EncodedCharInput(input), limits.getMaxLength()));
     }
-    return result;
+    return parse(new EncodedCharInput(input), limits);
+  }
+
+  /**
+   * Parse the percent encoded partial response input in the given range of bytes, return the Ast for the decoded
+   * pattern. Bytes that aren't percent encoded are read as UTF-8.
+   */
+  public AstNode parseEncoded(byte[] input, int offset, int length) {
+    checkPositionIndexes(offset, offset + length, input.length);
+    return parse(new EncodedByteArrayInput(input, offset, length), PatternLimits.none());
   }
 
-  private AstNode parseFields(Input input) {
-    Field field = parseField(input);
-    if (input.consumeIf(',')) {
-      AstNode fields = parseFields(input);
-      return new Fields(field, fields);
-    } else {
-      return field;
+  /**
+   * Parse the percent encoded partial response input in the remaining bytes of the given buffer, return the Ast for the
+   * decoded pattern. Bytes that aren't percent encoded are read as UTF-8. The position of the buffer is not changed.
+   */
+  public AstNode parseEncoded(ByteBuffer input) {
+    return parse(new EncodedByteBufferInput(checkNotNull(input)), PatternLimits.none());
+  }
+
+  /**
+   * Count the characters in the given input, stopping once there are more than the given maximum.
+   */
+  private static int decodedLength(Input input, int max) {
+    int length = 0;
+    while (!input.isEof() && length <= max) {
+      input.skip();
+      length++;
     }
+    return length;
   }
 
-  private Field parseField(Input input) {
-    Node node = parseNode(input);
-    if (input.consumeIf('/')) {
-      Field field = parseField(input);
-      return new Path(node, field);
-    } else {
-      return node;
+  private AstNode parse(Input input, PatternLimits limits) {
+    AstNode result = parseFields(input, limits);
+    if (!input.isEof()) {
+      throw new IllegalArgumentException("Unexpected characters '" + input.getRemaining() + '\'');
     }
+    if (!limits.equals(PatternLimits.none())) {
+      // a path that follows a sub-selection is deeper than could be seen while parsing, we can only check that and
+      // the expanded paths now we have the whole ast
+      PatternCost cost = PatternCost.of(result);
+      limits.checkDepth(cost.getDepth());
+      limits.checkExpandedPaths(cost.getExpandedPaths());
+    }
+    return result;
   }
 
-  private Node parseNode(Input input) {
-    Name name = parseName(input);
-    if (input.consumeIf('(')) {
-      AstNode fields = parseFields(input);
-      input.consume(')');
-      return new SubSelection(name, fields);
-    } else {
-      return name;
+  /**
+   * Parses the fields, keeping an explicit stack of the sub-selections we are inside of rather than recursing so
+   * hostile patterns can't overflow the call stack. The ast is built bottom up once each list of fields or path is
+   * complete, which means each node is interned after its children.
+   */
+  private AstNode parseFields(Input input, PatternLimits limits) {
+    Deque<Selection> selections = new ArrayDeque<Selection>();
+    Selection selection = new Selection(null, 0);
+    int fieldCount = 0;
+    int wildcardCount = 0;
+    while (true) {
+      Name name = parseName(input);
+      limits.checkFieldCount(++fieldCount);
+      if (name instanceof Wildcard) {
+        limits.checkWildcardCount(++wildcardCount);
+      }
+      // at least the depth of this name, it is deeper than this if it follows a sub-selection
+      int depth = selection.depth + selection.nodes.size() + 1;
+      limits.checkDepth(depth);
+      if (input.consumeIf('(')) {
+        selections.addLast(selection);
+        selection = new Selection(name, depth);
+        continue;
+      }
+      Node node = name;
+      while (true) {
+        selection.nodes.add(node);
+        if (input.consumeIf('/')) {
+          break;
+        }
+        selection.fields.add(selection.buildPath());
+        if (input.consumeIf(',')) {
+          break;
+        }
+        AstNode fields = selection.buildFields();
+        if (selections.isEmpty()) {
+          return fields;
+        }
+        input.consume(')');
+        node = SubSelection.of(selection.name, fields);
+        selection = selections.removeLast();
+      }
     }
   }
 
   private Name parseName(Input input) {
     return input.consumeIf('*') ?
            Wildcard.getSharedInstance() :
-           new Word(input.consume(WORD_CHAR_MATCHER));
+           Word.of(input.consume(WORD_CHAR_MATCHER));
   }
 
   /**
-   * Helper class for tracking the parsing position and helping with navigation through the chars.
+   * The parts of a sub-selection, or the whole pattern, that have been parsed so far.
    */
-  private static final class Input {
-    private final CharSequence chars;
-    private int offset = 0;
+  private static final class Selection {
+    @Nullable
+    final Name name;
+    // the number of names on the path leading to this selection, including its name
+    final int depth;
+    // the fields in the selection that have been completed
+    final List<Field> fields = Lists.newArrayList();
+    // the nodes of the path currently being parsed
+    final List<Node> nodes = Lists.newArrayList();
 
-    private Input(CharSequence chars) {
-      this.chars = chars;
+    Selection(@Nullable Name name, int depth) {
+      this.name = name;
+      this.depth = depth;
     }
 
-    public boolean isEof() {
-      return offset == chars.length();
+    Field buildPath() {
+      Field result = nodes.get(nodes.size() - 1);
+      for (int i = nodes.size() - 2; i >= 0; i--) {
+        result = Path.of(nodes.get(i), result);
+      }
+      nodes.clear();
+      return result;
+    }
+
+    AstNode buildFields() {
+      AstNode result = fields.get(fields.size() - 1);
+      for (int i = fields.size() - 2; i >= 0; i--) {
+        result = Fields.of(fields.get(i), result);
+      }
+      return result;
     }
+  }
+
+  /**
+   * Helper class for tracking the parsing position and helping with navigation through the chars.
+   */
+  abstract static class Input {
+    /**
+     * Whether all the input has been consumed.
+     */
+    abstract boolean isEof();
+
+    /**
+     * Get the char at the current position, only valid when not at the end of the input.
+     */
+    abstract char peek();
+
+    /**
+     * Move past the char at the current position.
+     */
+    abstract void skip();
+
+    /**
+     * Get the current position, for use with {@link #reset(int)}.
+     */
+    abstract int mark();
+
+    /**
+     * Move back to a position previously returned by {@link #mark()}.
+     */
+    abstract void reset(int mark);
+
+    /**
+     * Get the offset into the original input of the current position, for error reporting.
+     */
+    abstract int getOffset();
 
     @SuppressWarnings("BooleanMethodNameMustStartWithQuestion")
     public boolean consumeIf(char character) {
-      if (!isEof() && chars.charAt(offset) == character) {
-        offset++;
+      if (!isEof() && peek() == character) {
+        skip();
         return true;
       }
       return false;
     }
 
     public String consume(CharMatcher matcher) {
-      int lastIndex = offset;
-      while (lastIndex < chars.length() && matcher.matches(chars.charAt(lastIndex))) {
-        lastIndex++;
+      int start = mark();
+      int length = 0;
+      int hash = 0;
+      while (!isEof()) {
+        char value = peek();
+        if (!matcher.matches(value)) {
+          break;
+        }
+        hash = 31 * hash + value;
+        length++;
+        skip();
       }
-      if (lastIndex == offset) {
+      if (length == 0) {
         throw new IllegalArgumentException("Was expecting at least one of " + matcher);
       }
-      try {
-        return chars.subSequence(offset, lastIndex).toString();
-      } finally {
-        offset = lastIndex;
-      }
+      reset(start);
+      return SYMBOLS.intern(this, length, hash);
     }
 
     public void consume(char character) {
       if (isEof()) {
         throw new IllegalArgumentException("We reached the end of the file, expecting '" + character + '\'');
       }
-      char value = chars.charAt(offset);
-      if (value != character) {
-        throw new IllegalArgumentException("Expecting '" + character + "' at offset " + offset);
+      if (peek() != character) {
+        throw new IllegalArgumentException("Expecting '" + character + "' at offset " + getOffset());
       }
+      skip();
+    }
 
+    public String getRemaining() {
+      StringBuilder remaining = new StringBuilder();
+      while (!isEof()) {
+        remaining.append(peek());
+        skip();
+      }
+      return remaining.toString();
+    }
+  }
+
+  /**
+   * Input read directly from a CharSequence.
+   */
+  private static final class CharInput extends Input {
+    private final CharSequence chars;
+    private int offset = 0;
+
+    private CharInput(CharSequence chars) {
+      this.chars = chars;
+    }
+
+    @Override
+    boolean isEof() {
+      return offset == chars.length();
+    }
+
+    @Override
+    char peek() {
+      return chars.charAt(offset);
+    }
+
+    @Override
+    void skip() {
       offset++;
     }
 
-    public String getRemaining() {
-      return chars.subSequence(offset, chars.length()).toString();
+    @Override
+    int mark() {
+      return offset;
+    }
+
+    @Override
+    void reset(int mark) {
+      offset = mark;
+    }
+
+    @Override
+    int getOffset() {
+      return offset;
+    }
+  }
+
+  /**
+   * Input that decodes percent encoded UTF-8 as it goes. {@code +} is decoded as a space as it is in query strings.
+   * Subclasses provide the raw units of the input, either chars or bytes.
+   */
+  private abstract static class EncodedInput extends Input {
+    // the smallest value that needs each number of continuation bytes, anything less is an overlong encoding
+    private static final int[] MIN_VALUES = {0, 0x80, 0x800, 0x10000};
+
+    private final boolean bytes;
+    // offset of the current code point in the raw input, and whether we have already read the high surrogate of it
+    private int offset = 0;
+    private boolean lowSurrogate = false;
+    // the last decoded code point, and the number of raw units it was decoded from
+    private int decodedOffset = -1;
+    private int codePoint;
+    private int width;
+    private int byteWidth;
+
+    EncodedInput(boolean bytes) {
+      this.bytes = bytes;
+    }
+
+    /**
+     * Number of raw units in the input.
+     */
+    abstract int length();
+
+    /**
+     * Raw unit at the given index, a char or an unsigned byte.
+     */
+    abstract int rawAt(int index);
+
+    @Override
+    boolean isEof() {
+      return offset >= length();
+    }
+
+    @Override
+    char peek() {
+      decode();
+      if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+        return (char) codePoint;
+      }
+      int offsetCodePoint = codePoint - Character.MIN_SUPPLEMENTARY_CODE_POINT;
+      return lowSurrogate ?
+             (char) (Character.MIN_LOW_SURROGATE + (offsetCodePoint & 0x3FF)) :
+             (char) (Character.MIN_HIGH_SURROGATE + (offsetCodePoint >>> 10));
+    }
+
+    @Override
+    void skip() {
+      decode();
+      if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT && !lowSurrogate) {
+        lowSurrogate = true;
+      } else {
+        offset += width;
+        lowSurrogate = false;
+      }
+    }
+
+    @Override
+    int mark() {
+      return offset << 1 | (lowSurrogate ? 1 : 0);
+    }
+
+    @Override
+    void reset(int mark) {
+      offset = mark >>> 1;
+      lowSurrogate = (mark & 1) != 0;
+    }
+
+    @Override
+    int getOffset() {
+      return offset;
+    }
+
+    private void decode() {
+      if (decodedOffset == offset) {
+        return;
+      }
+      int unit = rawAt(offset);
+      if (unit == '+') {
+        codePoint = ' ';
+        width = 1;
+      } else if (unit != '%' && (unit < 0x80 || !bytes)) {
+        codePoint = unit;
+        width = 1;
+      } else {
+        decodeUtf8();
+      }
+      decodedOffset = offset;
+    }
+
+    private void decodeUtf8() {
+      int position = offset;
+      int lead = readByte(position);
+      position += byteWidth;
+      int continuations;
+      int value;
+      if (lead < 0x80) {
+        continuations = 0;
+        value = lead;
+      } else if ((lead & 0xE0) == 0xC0) {
+        continuations = 1;
+        value = lead & 0x1F;
+      } else if ((lead & 0xF0) == 0xE0) {
+        continuations = 2;
+        value = lead & 0x0F;
+      } else if ((lead & 0xF8) == 0xF0) {
+        continuations = 3;
+        value = lead & 0x07;
+      } else {
+        throw invalidEncoding(offset);
+      }
+      for (int i = 0; i < continuations; i++) {
+        if (position >= length()) {
+          throw invalidEncoding(offset);
+        }
+        int next = readByte(position);
+        if ((next & 0xC0) != 0x80) {
+          throw invalidEncoding(offset);
+        }
+        value = value << 6 | next & 0x3F;
+        position += byteWidth;
+      }
+      // overlong encodings are rejected, otherwise they could be used to hide the characters that give a pattern its
+      // structure, as URLDecoder won't decode them to those characters
+      if (value < MIN_VALUES[continuations]
+          || value > Character.MAX_CODE_POINT
+          || value >= Character.MIN_SURROGATE && value <= Character.MAX_SURROGATE) {
+        throw invalidEncoding(offset);
+      }
+      codePoint = value;
+      width = position - offset;
+    }
+
+    private int readByte(int position) {
+      int unit = rawAt(position);
+      if (unit == '%') {
+        if (position + 2 >= length()) {
+          throw invalidEncoding(position);
+        }
+        int high = Character.digit(rawAt(position + 1), 16);
+        int low = Character.digit(rawAt(position + 2), 16);
+        if (high < 0 || low < 0) {
+          throw invalidEncoding(position);
+        }
+        byteWidth = 3;
+        return high << 4 | low;
+      }
+      if (unit > 0xFF) {
+        throw invalidEncoding(position);
+      }
+      byteWidth = 1;
+      return unit;
+    }
+
+    private static IllegalArgumentException invalidEncoding(int position) {
+      return new IllegalArgumentException("Invalid percent encoding at offset " + position);
+    }
+  }
+
+  /**
+   * Encoded input read from a CharSequence.
+   */
+  private static final class EncodedCharInput extends EncodedInput {
+    private final CharSequence chars;
+
+    private EncodedCharInput(CharSequence chars) {
+      super(false);
+      this.chars = chars;
+    }
+
+    @Override
+    int length() {
+      return chars.length();
+    }
+
+    @Override
+    int rawAt(int index) {
+      return chars.charAt(index);
+    }
+  }
+
+  /**
+   * Encoded input read from part of a byte array.
+   */
+  private static final class EncodedByteArrayInput extends EncodedInput {
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    private EncodedByteArrayInput(byte[] bytes, int offset, int length) {
+      super(true);
+      this.bytes = bytes;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    int length() {
+      return length;
+    }
+
+    @Override
+    int rawAt(int index) {
+      return bytes[offset + index] & 0xFF;
+    }
+  }
+
+  /**
+   * Encoded input read from the remaining bytes of a ByteBuffer, without changing the buffer's position.
+   */
+  private static final class EncodedByteBufferInput extends EncodedInput {
+    private final ByteBuffer buffer;
+    private final int position;
+    private final int length;
+
+    private EncodedByteBufferInput(ByteBuffer buffer) {
+      super(true);
+      this.buffer = buffer;
+      this.position = buffer.position();
+      this.length = buffer.remaining();
+    }
+
+    @Override
+    int length() {
+      return length;
+    }
+
+    @Override
+    int rawAt(int index) {
+      return buffer.get(position + index) & 0xFF;
     }
   }
 }
@@ -0,0 +1,208 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.parser;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Queues;
+
+import com.pressassociation.pr.ast.*;
+import com.pressassociation.pr.ast.visitor.AstVisitor;
+
+import java.util.Deque;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>An estimate of how expensive a pattern is to work with, computed in a single pass over its ast without expanding
+ * it. Use it with {@link PatternLimits} to reject patterns that are too expensive before doing any work with them.
+ *
+ * <p>The {@link #getExpandedPaths() expanded path count} is the number of paths {@code ExpandingVisitor} would produce,
+ * which grows multiplicatively with sub-selections joined by paths; {@code a(b,c)/d(e,f)} expands to four paths. The
+ * {@link #getDepth() depth} is the most names on any one of those paths, which is how deep matching has to descend.
+ * The {@link #getWildcardCount() wildcard count} bounds how expensive the pattern is to compile, every wildcard in
+ * the middle of a path multiplies the places a path could have got to in the pattern.
+ *
+ * @author Matt Nathan
+ */
+public final class PatternCost {
+  private final int length;
+  private final int depth;
+  private final int fieldCount;
+  private final int wildcardCount;
+  private final long expandedPaths;
+
+  /**
+   * Compute the cost of the pattern represented by the given ast.
+   */
+  public static PatternCost of(AstNode ast) {
+    CostVisitor visitor = new CostVisitor();
+    checkNotNull(ast).apply(visitor);
+    Part root = visitor.stack.removeLast();
+    return new PatternCost(ast.toString().length(), root.depth, visitor.fieldCount, visitor.wildcardCount,
+                           root.paths);
+  }
+
+  private PatternCost(int length, int depth, int fieldCount, int wildcardCount, long expandedPaths) {
+    this.length = length;
+    this.depth = depth;
+    this.fieldCount = fieldCount;
+    this.wildcardCount = wildcardCount;
+    this.expandedPaths = expandedPaths;
+  }
+
+  /**
+   * The number of characters in the pattern.
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * The most names on any one path matched by the pattern, {@code a/b(c,d/e)} has a depth of 4.
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * The number of names, including wildcards, in the pattern.
+   */
+  public int getFieldCount() {
+    return fieldCount;
+  }
+
+  /**
+   * The number of wildcards in the pattern, {@code a/*,b/*} has 2.
+   */
+  public int getWildcardCount() {
+    return wildcardCount;
+  }
+
+  /**
+   * The number of paths the pattern would expand to, {@link Long#MAX_VALUE} if there are more than that.
+   */
+  public long getExpandedPaths() {
+    return expandedPaths;
+  }
+
+  @Override
+  public boolean equals(@Nullable Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof PatternCost)) {
+      return false;
+    }
+    PatternCost that = (PatternCost) other;
+    return length == that.length
+           && depth == that.depth
+           && fieldCount == that.fieldCount
+           && wildcardCount == that.wildcardCount
+           && expandedPaths == that.expandedPaths;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(length, depth, fieldCount, wildcardCount, expandedPaths);
+  }
+
+  @Override
+  public String toString() {
+    return "PatternCost{length=" + length + ", depth=" + depth + ", fieldCount=" + fieldCount
+           + ", wildcardCount=" + wildcardCount + ", expandedPaths=" + expandedPaths + '}';
+  }
+
+  private static long saturatedAdd(long a, long b) {
+    long sum = a + b;
+    return sum < 0 ? Long.MAX_VALUE : sum;
+  }
+
+  private static long saturatedMultiply(long a, long b) {
+    // both are always at least one
+    return a > Long.MAX_VALUE / b ? Long.MAX_VALUE : a * b;
+  }
+
+  /**
+   * The expanded path count and depth of part of the ast.
+   */
+  private static final class Part {
+    final long paths;
+    final int depth;
+
+    Part(long paths, int depth) {
+      this.paths = paths;
+      this.depth = depth;
+    }
+  }
+
+  /**
+   * Combines the parts of the ast from the bottom up.
+   */
+  private static final class CostVisitor extends AstVisitor {
+    private static final Part NAME = new Part(1, 1);
+
+    private final Deque<Part> stack = Queues.newArrayDeque();
+    private int fieldCount;
+    private int wildcardCount;
+
+    @Override
+    protected void afterFields(Fields fields) {
+      Part next = stack.removeLast();
+      Part field = stack.removeLast();
+      stack.addLast(new Part(saturatedAdd(field.paths, next.paths), Math.max(field.depth, next.depth)));
+    }
+
+    @Override
+    protected void afterPath(Path path) {
+      concatenate();
+    }
+
+    @Override
+    protected void afterSubSelection(SubSelection subSelection) {
+      concatenate();
+    }
+
+    @Override
+    public void visitWildcard(Wildcard wildcard) {
+      fieldCount++;
+      wildcardCount++;
+      stack.addLast(NAME);
+    }
+
+    @Override
+    public void visitWord(Word word) {
+      fieldCount++;
+      stack.addLast(NAME);
+    }
+
+    private void concatenate() {
+      Part suffix = stack.removeLast();
+      Part prefix = stack.removeLast();
+      stack.addLast(new Part(saturatedMultiply(prefix.paths, suffix.paths), prefix.depth + suffix.depth));
+    }
+  }
+}
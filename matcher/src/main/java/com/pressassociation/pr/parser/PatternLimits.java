@@ -0,0 +1,219 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.parser;
+
+import com.google.common.base.Objects;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>Limits on the complexity of partial response patterns. Patterns usually come straight from a request so it is
+ * worth bounding how much work they can cause. The length, depth, field count and wildcard count are checked as the
+ * pattern is parsed, so an oversized pattern is rejected as soon as it crosses a limit. The expanded path count is
+ * checked once the pattern has been parsed, before any matcher is built from it. See {@link PatternCost} for what each
+ * of the measures mean.
+ *
+ * <p>Instances are immutable, start from {@link #none()} and add the limits you need:
+ * <pre>{@code
+ * PatternLimits limits = PatternLimits.none().withMaxLength(2048).withMaxDepth(16);
+ * Matcher matcher = Matcher.of(fields, limits);
+ * }</pre>
+ *
+ * @author Matt Nathan
+ */
+public final class PatternLimits {
+  private static final PatternLimits NONE = new PatternLimits(
+      Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+  private final int maxLength;
+  private final int maxDepth;
+  private final int maxFieldCount;
+  private final int maxWildcardCount;
+  private final long maxExpandedPaths;
+
+  /**
+   * Get the limits that allow any pattern.
+   */
+  public static PatternLimits none() {
+    return NONE;
+  }
+
+  private PatternLimits(int maxLength, int maxDepth, int maxFieldCount, int maxWildcardCount,
+                        long maxExpandedPaths) {
+    this.maxLength = maxLength;
+    this.maxDepth = maxDepth;
+    this.maxFieldCount = maxFieldCount;
+    this.maxWildcardCount = maxWildcardCount;
+    this.maxExpandedPaths = maxExpandedPaths;
+  }
+
+  /**
+   * Get a copy of these limits that also limits the number of characters in a pattern.
+   */
+  public PatternLimits withMaxLength(int maxLength) {
+    checkArgument(maxLength > 0, "maxLength must be positive: %s", maxLength);
+    return new PatternLimits(maxLength, maxDepth, maxFieldCount, maxWildcardCount, maxExpandedPaths);
+  }
+
+  /**
+   * Get a copy of these limits that also limits the most names on any one path of a pattern.
+   */
+  public PatternLimits withMaxDepth(int maxDepth) {
+    checkArgument(maxDepth > 0, "maxDepth must be positive: %s", maxDepth);
+    return new PatternLimits(maxLength, maxDepth, maxFieldCount, maxWildcardCount, maxExpandedPaths);
+  }
+
+  /**
+   * Get a copy of these limits that also limits the number of names in a pattern.
+   */
+  public PatternLimits withMaxFieldCount(int maxFieldCount) {
+    checkArgument(maxFieldCount > 0, "maxFieldCount must be positive: %s", maxFieldCount);
+    return new PatternLimits(maxLength, maxDepth, maxFieldCount, maxWildcardCount, maxExpandedPaths);
+  }
+
+  /**
+   * Get a copy of these limits that also limits the number of wildcards in a pattern.
+   */
+  public PatternLimits withMaxWildcardCount(int maxWildcardCount) {
+    checkArgument(maxWildcardCount > 0, "maxWildcardCount must be positive: %s", maxWildcardCount);
+    return new PatternLimits(maxLength, maxDepth, maxFieldCount, maxWildcardCount, maxExpandedPaths);
+  }
+
+  /**
+   * Get a copy of these limits that also limits the number of paths a pattern can expand to.
+   */
+  public PatternLimits withMaxExpandedPaths(long maxExpandedPaths) {
+    checkArgument(maxExpandedPaths > 0, "maxExpandedPaths must be positive: %s", maxExpandedPaths);
+    return new PatternLimits(maxLength, maxDepth, maxFieldCount, maxWildcardCount, maxExpandedPaths);
+  }
+
+  public int getMaxLength() {
+    return maxLength;
+  }
+
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  public int getMaxFieldCount() {
+    return maxFieldCount;
+  }
+
+  public int getMaxWildcardCount() {
+    return maxWildcardCount;
+  }
+
+  public long getMaxExpandedPaths() {
+    return maxExpandedPaths;
+  }
+
+  /**
+   * Whether a pattern with the given cost is within these limits.
+   */
+  public boolean allows(PatternCost cost) {
+    checkNotNull(cost);
+    return cost.getLength() <= maxLength
+           && cost.getDepth() <= maxDepth
+           && cost.getFieldCount() <= maxFieldCount
+           && cost.getWildcardCount() <= maxWildcardCount
+           && cost.getExpandedPaths() <= maxExpandedPaths;
+  }
+
+  /**
+   * Check that a pattern with the given cost is within these limits.
+   *
+   * @throws IllegalArgumentException If any of the limits are exceeded.
+   */
+  public void check(PatternCost cost) {
+    checkNotNull(cost);
+    checkLength(cost.getLength());
+    checkDepth(cost.getDepth());
+    checkFieldCount(cost.getFieldCount());
+    checkWildcardCount(cost.getWildcardCount());
+    checkExpandedPaths(cost.getExpandedPaths());
+  }
+
+  void checkLength(int length) {
+    if (length > maxLength) {
+      throw new IllegalArgumentException("Pattern is too long, it has more than " + maxLength + " characters");
+    }
+  }
+
+  void checkDepth(int depth) {
+    if (depth > maxDepth) {
+      throw new IllegalArgumentException("Pattern is too deep, it has more than " + maxDepth + " names in a path");
+    }
+  }
+
+  void checkFieldCount(int fieldCount) {
+    if (fieldCount > maxFieldCount) {
+      throw new IllegalArgumentException("Pattern is too complex, it has more than " + maxFieldCount + " names");
+    }
+  }
+
+  void checkWildcardCount(int wildcardCount) {
+    if (wildcardCount > maxWildcardCount) {
+      throw new IllegalArgumentException(
+          "Pattern is too complex, it has more than " + maxWildcardCount + " wildcards");
+    }
+  }
+
+  void checkExpandedPaths(long expandedPaths) {
+    if (expandedPaths > maxExpandedPaths) {
+      throw new IllegalArgumentException(
+          "Pattern is too complex, it expands to more than " + maxExpandedPaths + " paths");
+    }
+  }
+
+  @Override
+  public boolean equals(@Nullable Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof PatternLimits)) {
+      return false;
+    }
+    PatternLimits that = (PatternLimits) other;
+    return maxLength == that.maxLength
+           && maxDepth == that.maxDepth
+           && maxFieldCount == that.maxFieldCount
+           && maxWildcardCount == that.maxWildcardCount
+           && maxExpandedPaths == that.maxExpandedPaths;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(maxLength, maxDepth, maxFieldCount, maxWildcardCount, maxExpandedPaths);
+  }
+
+  @Override
+  public String toString() {
+    return "PatternLimits{maxLength=" + maxLength + ", maxDepth=" + maxDepth + ", maxFieldCount=" + maxFieldCount
+           + ", maxWildcardCount=" + maxWildcardCount + ", maxExpandedPaths=" + maxExpandedPaths + '}';
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.parser;
+
+/**
+ * <p>Small lossy table of the words seen by the parser, so parsing the same words again and again returns the same
+ * String instances instead of allocating new ones.
+ *
+ * <p>Each word hashes to a single slot, a new word that hashes to an occupied slot simply replaces the old one. This
+ * bounds the memory used no matter what input the parser sees, and as Strings are immutable the table can be read
+ * and written by many threads without locking, the worst a race can do is cause a word to be allocated again.
+ *
+ * @author Matt Nathan
+ */
+final class SymbolTable {
+  private static final int SIZE = 1024;
+  private static final int MAX_LENGTH = 64;
+
+  private final String[] symbols = new String[SIZE];
+
+  /**
+   * Get the String for the word of the given length and hash starting at the input's current position, leaving the
+   * input positioned after the word. The hash must be the same as {@link String#hashCode()} for the word.
+   */
+  String intern(Parser.Input input, int length, int hash) {
+    int start = input.mark();
+    int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+    String symbol = symbols[slot];
+    if (symbol != null && symbol.hashCode() == hash && symbol.length() == length && matches(input, symbol)) {
+      return symbol;
+    }
+    input.reset(start);
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = input.peek();
+      input.skip();
+    }
+    symbol = new String(chars);
+    if (length <= MAX_LENGTH) {
+      symbols[slot] = symbol;
+    }
+    return symbol;
+  }
+
+  private static boolean matches(Parser.Input input, String symbol) {
+    for (int i = 0, length = symbol.length(); i < length; i++) {
+      if (input.peek() != symbol.charAt(i)) {
+        return false;
+      }
+      input.skip();
+    }
+    return true;
+  }
+}
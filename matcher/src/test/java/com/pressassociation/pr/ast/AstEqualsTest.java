@@ -26,8 +26,13 @@ package com.pressassociation.pr.ast;
 
 import com.google.common.testing.EqualsTester;
 
+import com.pressassociation.pr.parser.Parser;
+
 import org.junit.Test;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
 /**
  * Tests to check the equality of different AST configurations.
  *
@@ -46,4 +51,36 @@ public class AstEqualsTest {
         .addEqualityGroup(new Word("other"), new Word("other"))
         .testEquals();
   }
+
+  @Test
+  public void testStructuralEquality() {
+    // both print as a/b/c but have different structures
+    Path left = new Path(new Word("a/b"), new Word("c"));
+    Path right = new Path(new Word("a"), new Word("b/c"));
+    assertFalse(left.equals(right));
+  }
+
+  @Test
+  public void testInterned() {
+    assertSame(Word.of("name"), Word.of("name"));
+    Wildcard wildcard = Wildcard.getSharedInstance();
+    assertSame(Path.of(Word.of("a"), wildcard), Path.of(Word.of("a"), wildcard));
+    assertSame(new Parser().parse("a/b,c(d,*/e)"), new Parser().parse("a/b,c(d,*/e)"));
+  }
+
+  @Test
+  public void testInternedEqualToConstructed() {
+    new EqualsTester()
+        .addEqualityGroup(Word.of("name"), new Word("name"))
+        .addEqualityGroup(Fields.of(Word.of("a"), Word.of("b")), new Fields(new Word("a"), new Word("b")))
+        .addEqualityGroup(SubSelection.of(Word.of("a"), Word.of("b")),
+                          new SubSelection(new Word("a"), new Word("b")))
+        .testEquals();
+  }
+
+  @Test
+  public void testToStringCached() {
+    AstNode node = new Parser().parse("a/b,c(d)");
+    assertSame(node.toString(), node.toString());
+  }
 }
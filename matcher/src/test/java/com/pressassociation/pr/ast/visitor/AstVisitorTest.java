@@ -24,12 +24,18 @@
 
 package com.pressassociation.pr.ast.visitor;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
 import com.pressassociation.pr.ast.*;
 import com.pressassociation.pr.parser.Parser;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 
@@ -81,6 +87,107 @@ public class AstVisitorTest {
     verify(visitor).beforePathField(new Path(new Word("items"), Wildcard.getSharedInstance()));
   }
 
+  @Test
+  public void testHookOrder() {
+    RecordingVisitor visitor = new RecordingVisitor();
+    parser.parse("a(b,*)/c").apply(visitor);
+    assertEquals(ImmutableList.of(
+        "visitPath a(b,*)/c", "visitSubSelection a(b,*)", "a", "beforeSubSelectionFields a(b,*)",
+        "visitFields b,*", "b", "beforeFieldsNext b,*", "*", "afterFields b,*",
+        "afterSubSelectionFields a(b,*)", "afterSubSelection a(b,*)",
+        "beforePathField a(b,*)/c", "c", "afterPath a(b,*)/c"), visitor.events);
+  }
+
+  @Test
+  public void testSkippedChildren() {
+    RecordingVisitor visitor = new RecordingVisitor() {
+      @Override
+      public void visitSubSelection(SubSelection subSelection) {
+        // don't call super, the children aren't visited
+        events.add("visitSubSelection " + subSelection);
+      }
+
+      @Override
+      protected boolean beforePathField(Path path) {
+        super.beforePathField(path);
+        return false;
+      }
+    };
+    parser.parse("a(b)/c,d").apply(visitor);
+    assertEquals(ImmutableList.of(
+        "visitFields a(b)/c,d", "visitPath a(b)/c", "visitSubSelection a(b)", "beforePathField a(b)/c",
+        "afterPath a(b)/c", "beforeFieldsNext a(b)/c,d", "d", "afterFields a(b)/c,d"), visitor.events);
+  }
+
+  @Test
+  public void testChildrenVisitedBeforeSuperReturns() {
+    RecordingVisitor visitor = new RecordingVisitor() {
+      @Override
+      public void visitFields(Fields fields) {
+        super.visitFields(fields);
+        events.add("visitedFields " + fields);
+      }
+
+      @Override
+      public void visitSubSelection(SubSelection subSelection) {
+        super.visitSubSelection(subSelection);
+        events.add("visitedSubSelection " + subSelection);
+      }
+    };
+    parser.parse("a(b,c),d").apply(visitor);
+    assertEquals(ImmutableList.of(
+        "visitFields a(b,c),d", "visitSubSelection a(b,c)", "a", "beforeSubSelectionFields a(b,c)",
+        "visitFields b,c", "b", "beforeFieldsNext b,c", "c", "afterFields b,c", "visitedFields b,c",
+        "afterSubSelectionFields a(b,c)", "afterSubSelection a(b,c)", "visitedSubSelection a(b,c)",
+        "beforeFieldsNext a(b,c),d", "d", "afterFields a(b,c),d", "visitedFields a(b,c),d"), visitor.events);
+  }
+
+  @Test
+  public void testBeforeHooks() {
+    final List<String> events = Lists.newArrayList();
+    AstVisitor visitor = new AstVisitor() {
+      @Override
+      protected void beforeFields(Fields fields) {
+        events.add("beforeFields " + fields);
+      }
+
+      @Override
+      protected void afterFields(Fields fields) {
+        events.add("afterFields " + fields);
+      }
+
+      @Override
+      protected void beforePath(Path path) {
+        events.add("beforePath " + path);
+      }
+
+      @Override
+      protected void afterPath(Path path) {
+        events.add("afterPath " + path);
+      }
+
+      @Override
+      protected void beforeSubSelection(SubSelection subSelection) {
+        events.add("beforeSubSelection " + subSelection);
+      }
+
+      @Override
+      protected void afterSubSelection(SubSelection subSelection) {
+        events.add("afterSubSelection " + subSelection);
+      }
+
+      @Override
+      public void visitWord(Word word) {
+        events.add(word.getStringValue());
+      }
+    };
+    parser.parse("a(b/c,d),e").apply(visitor);
+    assertEquals(ImmutableList.of(
+        "beforeFields a(b/c,d),e", "beforeSubSelection a(b/c,d)", "a", "beforeFields b/c,d", "beforePath b/c",
+        "b", "c", "afterPath b/c", "d", "afterFields b/c,d", "afterSubSelection a(b/c,d)", "e",
+        "afterFields a(b/c,d),e"), events);
+  }
+
   private AstVisitor visitParsedAst(CharSequence fields) {
     AstNode item;
     AstVisitor visitor;
@@ -93,4 +200,74 @@ public class AstVisitorTest {
   @SuppressWarnings("EmptyClass")
   private static class TestVisitor extends AstVisitor {
   }
+
+  private static class RecordingVisitor extends AstVisitor {
+    final List<String> events = Lists.newArrayList();
+
+    @Override
+    public void visitFields(Fields fields) {
+      events.add("visitFields " + fields);
+      super.visitFields(fields);
+    }
+
+    @Override
+    protected boolean beforeFieldsNext(Fields fields) {
+      events.add("beforeFieldsNext " + fields);
+      return true;
+    }
+
+    @Override
+    protected void afterFields(Fields fields) {
+      events.add("afterFields " + fields);
+    }
+
+    @Override
+    public void visitPath(Path path) {
+      events.add("visitPath " + path);
+      super.visitPath(path);
+    }
+
+    @Override
+    protected boolean beforePathField(Path path) {
+      events.add("beforePathField " + path);
+      return true;
+    }
+
+    @Override
+    protected void afterPath(Path path) {
+      events.add("afterPath " + path);
+    }
+
+    @Override
+    public void visitSubSelection(SubSelection subSelection) {
+      events.add("visitSubSelection " + subSelection);
+      super.visitSubSelection(subSelection);
+    }
+
+    @Override
+    protected boolean beforeSubSelectionFields(SubSelection subSelection) {
+      events.add("beforeSubSelectionFields " + subSelection);
+      return true;
+    }
+
+    @Override
+    protected void afterSubSelectionFields(SubSelection subSelection) {
+      events.add("afterSubSelectionFields " + subSelection);
+    }
+
+    @Override
+    protected void afterSubSelection(SubSelection subSelection) {
+      events.add("afterSubSelection " + subSelection);
+    }
+
+    @Override
+    public void visitWildcard(Wildcard wildcard) {
+      events.add("*");
+    }
+
+    @Override
+    public void visitWord(Word word) {
+      events.add(word.getStringValue());
+    }
+  }
 }
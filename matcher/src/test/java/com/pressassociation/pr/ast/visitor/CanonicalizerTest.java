@@ -0,0 +1,130 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.ast.visitor;
+
+import com.google.common.base.Strings;
+import com.google.common.testing.NullPointerTester;
+
+import com.pressassociation.pr.ast.AstNode;
+import com.pressassociation.pr.parser.Parser;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link Canonicalizer}.
+ *
+ * @author Matt Nathan
+ */
+@RunWith(JUnitParamsRunner.class)
+public class CanonicalizerTest {
+
+  @Test
+  @Parameters(method = "canonicalForms")
+  public void testCanonicalize(String pattern, String expected) {
+    assertEquals(expected, Canonicalizer.canonicalize(new Parser().parse(pattern)).toString());
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] canonicalForms() {
+    return new Object[]{
+        new Object[]{"id", "id"},
+        new Object[]{"*", "*"},
+        // sorted
+        new Object[]{"title,id", "id,title"},
+        new Object[]{"c,a,b", "a,b,c"},
+        new Object[]{"items(name,id)", "items(id,name)"},
+        // deduplicated
+        new Object[]{"id,title,id", "id,title"},
+        new Object[]{"a/b,a/b", "a/b"},
+        // shared prefixes merged
+        new Object[]{"a/b,a/c", "a(b,c)"},
+        new Object[]{"a(b,c)/d", "a(b/d,c/d)"},
+        new Object[]{"a/b/c,a/b/d,a/e", "a(b(c,d),e)"},
+        // included branches dropped
+        new Object[]{"a,a/b", "a"},
+        new Object[]{"a/b,a", "a"},
+        new Object[]{"a(b,c),a", "a"},
+        new Object[]{"a/*,a/b", "a/*"},
+        new Object[]{"a/b/c,a/*", "a/*"},
+        new Object[]{"a/*/c,a/*", "a/*"},
+        new Object[]{"a,b,*", "*"},
+        new Object[]{"a,a/*", "a"},
+        // wildcards in the middle of a path are names like any other
+        new Object[]{"*/b,a", "*/b,a"},
+        new Object[]{"a/*/b,a/*/c", "a/*(b,c)"},
+        new Object[]{"a/*/b,a/c", "a(*/b,c)"},
+    };
+  }
+
+  @Test
+  @Parameters(method = "equivalentPatterns")
+  public void testEquivalentPatternsAreSameInstance(String first, String second) {
+    Parser parser = new Parser();
+    assertSame(Canonicalizer.canonicalize(parser.parse(first)), Canonicalizer.canonicalize(parser.parse(second)));
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] equivalentPatterns() {
+    return new Object[]{
+        new Object[]{"id,title", "title,id,id"},
+        new Object[]{"a(b,c)", "a/c,a/b"},
+        new Object[]{"a(b,c)/d", "a/c/d,a/b/d,a/b/d/e"},
+    };
+  }
+
+  @Test
+  public void testCanonicalIsCanonical() {
+    AstNode canonical = Canonicalizer.canonicalize(new Parser().parse("z(y,x/w),a/*,a/b,m(n,o)/p"));
+    assertEquals("a/*,m(n/p,o/p),z(x/w,y)", canonical.toString());
+    assertSame(canonical, Canonicalizer.canonicalize(canonical));
+  }
+
+  @Test
+  public void testLongPath() {
+    // deep enough to overflow the stack if the tree were built recursively
+    String pattern = Strings.repeat("a/", 20000) + 'b';
+    assertEquals(pattern, Canonicalizer.canonicalize(new Parser().parse(pattern)).toString());
+  }
+
+  @Test
+  public void testTooManyNamesIsUnchanged() {
+    StringBuilder pattern = new StringBuilder("a(b,c)");
+    for (int i = 0; i < 20; i++) {
+      pattern.append("/d(e,f)");
+    }
+    AstNode ast = new Parser().parse(pattern);
+    assertSame(ast, Canonicalizer.canonicalize(ast));
+  }
+
+  @Test
+  public void testNulls() {
+    new NullPointerTester().testAllPublicStaticMethods(Canonicalizer.class);
+  }
+}
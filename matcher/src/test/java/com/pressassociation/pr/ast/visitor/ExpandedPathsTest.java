@@ -0,0 +1,169 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.ast.visitor;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.testing.NullPointerTester;
+
+import com.pressassociation.pr.ast.AstNode;
+import com.pressassociation.pr.ast.Field;
+import com.pressassociation.pr.ast.Path;
+import com.pressassociation.pr.parser.Parser;
+import com.pressassociation.pr.parser.PatternCost;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link ExpandedPaths}.
+ *
+ * @author Matt Nathan
+ */
+@RunWith(JUnitParamsRunner.class)
+public class ExpandedPathsTest {
+
+  @Test
+  @Parameters(method = "expansions")
+  public void testExpansion(String pattern, String expected) {
+    assertEquals(expected, toStrings(ExpandedPaths.of(new Parser().parse(pattern))));
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] expansions() {
+    return new Object[]{
+        new Object[]{"items", "[items]"},
+        new Object[]{"*", "[*]"},
+        new Object[]{"items/id", "[items/id]"},
+        new Object[]{"items,kind/id/type", "[items, kind/id/type]"},
+        new Object[]{"items/*/id", "[items/*/id]"},
+        new Object[]{"items(id,name)", "[items/id, items/name]"},
+        new Object[]{"items(id/*,name/value,*/label)", "[items/id/*, items/name/value, items/*/label]"},
+        new Object[]{"root/items(id,name)", "[root/items/id, root/items/name]"},
+        new Object[]{"items(id,name)/type", "[items/id/type, items/name/type]"},
+        // grouped by the field they end with
+        new Object[]{"items(id,name)/type(kind,value)",
+                     "[items/id/type/kind, items/name/type/kind, items/id/type/value, items/name/type/value]"},
+        new Object[]{"a(b(c,d),e)/f,g",
+                     "[a/b/c/f, a/b/d/f, a/e/f, g]"},
+    };
+  }
+
+  @Test
+  @Parameters(method = "patterns")
+  public void testSameAsExpandingVisitor(String pattern) {
+    AstNode ast = new Parser().parse(pattern);
+    Iterable<Field> expected = new FindFieldsVisitor().applyTo(new ExpandingVisitor().applyTo(ast));
+    assertEquals(HashMultiset.create(expected), HashMultiset.create(ExpandedPaths.of(ast)));
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] patterns() {
+    return new Object[]{
+        new Object[]{"items(id,name)/type(kind,value)"},
+        new Object[]{"root/items(id/*,*/title,name/value)"},
+        new Object[]{"a(b,c)/d(e,f)/g(h,i)"},
+        new Object[]{"x/a(b/c,f)/g(h/i,j)"},
+    };
+  }
+
+  @Test
+  public void testSharesEndings() {
+    List<Field> paths = Lists.newArrayList(ExpandedPaths.of(new Parser().parse("a(b,c)/d/e")));
+    assertEquals(2, paths.size());
+    // a/b/d/e and a/c/d/e are both built on the same d/e
+    Field first = ((Path) ((Path) paths.get(0)).getSuffix()).getSuffix();
+    Field second = ((Path) ((Path) paths.get(1)).getSuffix()).getSuffix();
+    assertEquals("d/e", first.toString());
+    assertSame(first, second);
+  }
+
+  @Test
+  public void testLazy() {
+    // far too many paths to hold in memory
+    StringBuilder pattern = new StringBuilder("a(b,c)");
+    for (int i = 0; i < 60; i++) {
+      pattern.append("/a(b,c)");
+    }
+    AstNode ast = new Parser().parse(pattern);
+    assertTrue(PatternCost.of(ast).getExpandedPaths() > Integer.MAX_VALUE);
+    Iterable<Field> first = Iterables.limit(ExpandedPaths.of(ast), 3);
+    assertEquals(3, Iterables.size(first));
+    assertEquals(Iterables.get(first, 0).toString().replace('c', 'b'), Iterables.get(first, 0).toString());
+  }
+
+  @Test
+  @Parameters({"1", "10", "100"})
+  public void testCountMatchesCost(int width) {
+    StringBuilder pattern = new StringBuilder("a(");
+    for (int i = 0; i < width; i++) {
+      pattern.append(i == 0 ? "" : ",").append('f').append(i);
+    }
+    pattern.append(")/b(c,d)/e");
+    AstNode ast = new Parser().parse(pattern);
+    assertEquals(PatternCost.of(ast).getExpandedPaths(), Iterables.size(ExpandedPaths.of(ast)));
+  }
+
+  @Test
+  public void testIterator() {
+    Iterator<Field> iterator = ExpandedPaths.of(new Parser().parse("a")).iterator();
+    assertTrue(iterator.hasNext());
+    assertEquals("a", iterator.next().toString());
+    assertFalse(iterator.hasNext());
+    try {
+      iterator.next();
+      fail();
+    } catch (NoSuchElementException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testNulls() {
+    new NullPointerTester().testAllPublicStaticMethods(ExpandedPaths.class);
+  }
+
+  private static String toStrings(Iterable<Field> paths) {
+    List<String> result = Lists.newArrayList();
+    for (Field path : paths) {
+      result.add(path.toString());
+    }
+    return ImmutableList.copyOf(result).toString();
+  }
+}
@@ -0,0 +1,431 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.match;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import com.pressassociation.pr.ast.AstNode;
+import com.pressassociation.pr.ast.Field;
+import com.pressassociation.pr.ast.visitor.ExpandedPaths;
+import com.pressassociation.pr.parser.Parser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link Automaton}.
+ *
+ * @author Matt Nathan
+ */
+@RunWith(JUnitParamsRunner.class)
+public class AutomatonTest {
+  // needs far more than MAX_STATES states to compile up front
+  private static final String WIDE_WILDCARDS = wideWildcards(16);
+
+  @Test
+  @Parameters(method = "matchesCases")
+  public void testMatches(String pattern, String path, boolean expected) {
+    Automaton automaton = compile(pattern);
+    assertEquals(pattern + " matches " + path, expected, automaton.matches(automaton.walk(split(path))));
+    Automaton lazy = compileLazily(pattern);
+    assertEquals(pattern + " matches " + path, expected, lazy.matches(lazy.walk(split(path))));
+  }
+
+  @Test
+  @Parameters(method = "matchesParentCases")
+  public void testMatchesParent(String pattern, String path, boolean expected) {
+    Automaton automaton = compile(pattern);
+    assertEquals(pattern + " matchesParent " + path, expected, automaton.matchesParent(automaton.walk(split(path))));
+    Automaton lazy = compileLazily(pattern);
+    assertEquals(pattern + " matchesParent " + path, expected, lazy.matchesParent(lazy.walk(split(path))));
+  }
+
+  @Test
+  @Parameters(method = "matchesAllBelowCases")
+  public void testMatchesAllBelow(String pattern, String path, boolean expected) {
+    Automaton automaton = compile(pattern);
+    assertEquals(pattern + " matchesAllBelow " + path, expected,
+                 automaton.matchesAllBelow(automaton.walk(split(path))));
+    Automaton lazy = compileLazily(pattern);
+    assertEquals(pattern + " matchesAllBelow " + path, expected, lazy.matchesAllBelow(lazy.walk(split(path))));
+  }
+
+  @Test
+  @Parameters(method = "matchesCases")
+  public void testLazyMatchesTable(String pattern, String ignoredPath, boolean ignoredExpected) {
+    Automaton table = compile(pattern);
+    Automaton lazy = compileLazily(pattern);
+    List<String> names = Lists.newArrayList(table.getWords());
+    names.add("x");
+    List<List<String>> paths = Lists.newArrayList();
+    paths.add(ImmutableList.<String>of());
+    for (int i = 0; i < paths.size(); i++) {
+      List<String> path = paths.get(i);
+      int tableState = table.walk(path);
+      int lazyState = lazy.walk(path);
+      String message = pattern + " at " + path;
+      assertEquals(message, table.matches(tableState), lazy.matches(lazyState));
+      assertEquals(message, table.matchesParent(tableState), lazy.matchesParent(lazyState));
+      assertEquals(message, table.matchesAllBelow(tableState), lazy.matchesAllBelow(lazyState));
+      assertEquals(message, table.matchesAnyBelow(tableState), lazy.matchesAnyBelow(lazyState));
+      if (path.size() < 4) {
+        for (String name : names) {
+          paths.add(ImmutableList.<String>builder().addAll(path).add(name).build());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEmptyPath() {
+    Automaton automaton = compile("a/b");
+    assertTrue(automaton.matchesParent(automaton.getStartState()));
+    assertFalse(automaton.matches(automaton.getStartState()));
+    assertTrue(compile("*").matches(compile("*").getStartState()));
+  }
+
+  @Test
+  public void testUnknownWordsAreOther() {
+    Automaton automaton = compile("a/b,c");
+    assertEquals(Automaton.OTHER, automaton.symbolOf("unknown"));
+    assertEquals(automaton.step(automaton.getStartState(), Automaton.OTHER),
+                 automaton.step(automaton.getStartState(), "unknown"));
+  }
+
+  @Test
+  public void testSymbolOfRange() {
+    Automaton automaton = compile("a/bc,def");
+    assertEquals(automaton.symbolOf("bc"), automaton.symbolOf("x/bc/y", 2, 4));
+    assertEquals(automaton.symbolOf("def"), automaton.symbolOf("def", 0, 3));
+    assertEquals(Automaton.OTHER, automaton.symbolOf("def", 0, 2));
+    assertEquals(Automaton.OTHER, automaton.symbolOf("x/bc/y", 0, 1));
+  }
+
+  @Test
+  @Parameters(method = "matchesCases")
+  public void testWalkCharSequence(String pattern, String path, boolean expected) {
+    Automaton automaton = compile(pattern);
+    assertEquals(pattern + " at " + path, automaton.walk(split(path)), automaton.walk(path));
+    assertEquals(pattern + " at //" + path, automaton.walk(split(path)), automaton.walk("//" + path + '/'));
+  }
+
+  @Test
+  public void testTooManyStatesCompilesLazily() {
+    Automaton automaton = compile(WIDE_WILDCARDS);
+    assertTrue(automaton instanceof LazyAutomaton);
+    List<List<String>> paths = randomPaths(new Random(42), 2000);
+    assertEquals(expectedWideWildcardMatches(paths), walkAll(automaton, paths));
+  }
+
+  @Test
+  public void testLazyAutomatonSharedBetweenThreads() throws Exception {
+    final Automaton automaton = compile(WIDE_WILDCARDS);
+    final List<List<String>> paths = randomPaths(new Random(7), 2000);
+    List<String> expected = expectedWideWildcardMatches(paths);
+    int threads = 8;
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<List<String>>> results = Lists.newArrayList();
+      for (int thread = 0; thread < threads; thread++) {
+        results.add(executor.submit(new Callable<List<String>>() {
+          @Override
+          public List<String> call() throws Exception {
+            // every thread adds states as it goes, racing the others to add the same ones
+            start.await();
+            return walkAll(automaton, paths);
+          }
+        }));
+      }
+      start.countDown();
+      for (Future<List<String>> result : results) {
+        assertEquals(expected, result.get(1, TimeUnit.MINUTES));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static List<List<String>> randomPaths(Random random, int count) {
+    List<List<String>> paths = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      List<String> path = Lists.newArrayList();
+      for (int length = random.nextInt(8); path.size() < length; ) {
+        int index = random.nextInt(4);
+        // only a few of the words so that paths often match
+        path.add(index == 3 ? "x" : (index == 1 ? "a" : "b") + random.nextInt(3));
+      }
+      paths.add(path);
+    }
+    return paths;
+  }
+
+  /**
+   * What each of the fields of {@link #WIDE_WILDCARDS} compiled on its own says of each path.
+   */
+  private static List<String> expectedWideWildcardMatches(List<List<String>> paths) {
+    List<Automaton> separate = Lists.newArrayList();
+    for (String field : Splitter.on(',').split(WIDE_WILDCARDS)) {
+      separate.add(compile(field));
+    }
+    List<String> result = Lists.newArrayList();
+    for (List<String> path : paths) {
+      boolean matches = false;
+      boolean matchesParent = false;
+      for (Automaton each : separate) {
+        int state = each.walk(path);
+        matches |= each.matches(state);
+        matchesParent |= each.matchesParent(state);
+      }
+      result.add(path + " " + matches + ' ' + matchesParent);
+    }
+    return result;
+  }
+
+  private static List<String> walkAll(Automaton automaton, List<List<String>> paths) {
+    List<String> result = Lists.newArrayList();
+    for (List<String> path : paths) {
+      int state = automaton.walk(path);
+      result.add(path + " " + automaton.matches(state) + ' ' + automaton.matchesParent(state));
+    }
+    return result;
+  }
+
+  @Test
+  public void testCompilesTrieWithoutMidPathWildcards() {
+    assertTrue(compile("a/b,c") instanceof TrieAutomaton);
+    assertTrue(compile("a(b,c/*),d") instanceof TrieAutomaton);
+    assertTrue(compile("*") instanceof TrieAutomaton);
+    assertTrue(compile("a/*/b") instanceof TableAutomaton);
+    assertTrue(compile("a(*)/b") instanceof TableAutomaton);
+  }
+
+  @Test
+  @Parameters(method = "triePatterns")
+  public void testTrieMatchesTable(String pattern) {
+    Automaton trie = TrieAutomaton.compile(new Parser().parse(pattern));
+    Automaton table = TableAutomaton.compile(new Parser().parse(pattern));
+    for (String path : Arrays.asList("", "a", "b", "x", "a/b", "a/x", "a/b/c", "a/b/x", "a/x/c", "b/c/d", "b/a/b",
+                                     "a/b/c/d", "a/b/c/x", "x/y/z", "a/a/a", "b/b")) {
+      List<String> parts = split(path);
+      int trieState = trie.walk(parts);
+      int tableState = table.walk(parts);
+      String message = pattern + " at " + path;
+      assertEquals(message, table.matches(tableState), trie.matches(trieState));
+      assertEquals(message, table.matchesParent(tableState), trie.matchesParent(trieState));
+      assertEquals(message, table.matchesAllBelow(tableState), trie.matchesAllBelow(trieState));
+      assertEquals(message, table.matchesAnyBelow(tableState), trie.matchesAnyBelow(trieState));
+    }
+  }
+
+  @Test
+  public void testLargeWordListIsNotTooComplex() {
+    List<String> fields = Lists.newArrayList();
+    for (int i = 0; i < TableAutomaton.MAX_STATES * 2; i++) {
+      fields.add("a" + i);
+    }
+    Automaton automaton = compile(Joiner.on(',').join(fields));
+    assertTrue(automaton.matches(automaton.walk(ImmutableList.of("a" + (TableAutomaton.MAX_STATES + 1), "b"))));
+    assertFalse(automaton.matches(automaton.walk(ImmutableList.of("b"))));
+  }
+
+  @Test
+  public void testOverlappingPathsAreNotTooComplex() {
+    // the paths of this intersection overlap so much that tracking every position they could be at needs more than
+    // MAX_STATES states, most of those positions can stand in for one another though
+    AstNode pattern = MatcherAlgebra.intersection(new Parser().parse("*/a(*,*,b/a/*)/a,c/b/b"),
+                                                  new Parser().parse("*/c(a,b/*/c,b/c/*)/c,b/a,c/b"));
+    Automaton automaton = compile(pattern.toString());
+    List<Automaton> expanded = Lists.newArrayList();
+    for (Field path : ExpandedPaths.of(pattern)) {
+      expanded.add(compile(path.toString()));
+    }
+    List<List<String>> paths = Lists.newArrayList();
+    paths.add(ImmutableList.<String>of());
+    for (int i = 0; i < paths.size(); i++) {
+      List<String> path = paths.get(i);
+      boolean matches = false;
+      boolean matchesParent = false;
+      for (Automaton each : expanded) {
+        int state = each.walk(path);
+        matches |= each.matches(state);
+        matchesParent |= each.matchesParent(state);
+      }
+      int state = automaton.walk(path);
+      assertEquals(pattern + " matches " + path, matches, automaton.matches(state));
+      assertEquals(pattern + " matchesParent " + path, matchesParent, automaton.matchesParent(state));
+      if (path.size() < 5) {
+        for (String name : Arrays.asList("a", "b", "c", "x")) {
+          paths.add(ImmutableList.<String>builder().addAll(path).add(name).build());
+        }
+      }
+    }
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] triePatterns() {
+    return new Object[]{
+        new Object[]{"a"},
+        new Object[]{"a/b"},
+        new Object[]{"a,b,x"},
+        new Object[]{"a,a/b"},
+        new Object[]{"a/b/c,a/b"},
+        new Object[]{"a(b,x/y)"},
+        new Object[]{"a(b,c)/d"},
+        new Object[]{"a/*"},
+        new Object[]{"a/*,a/b/c"},
+        new Object[]{"a/b/*,b"},
+        new Object[]{"a(b/*,x)"},
+        new Object[]{"*"},
+        new Object[]{"*,a/b"},
+        new Object[]{"b(c(d,e),a/b)"}
+    };
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] matchesCases() {
+    return new Object[]{
+        has("*", "item"),
+        has("*", "item/any/other"),
+        has("item", "item/any/other"),
+        not("item", "not"),
+        has("item/any", "item/any/other"),
+        not("item/any", "item"),
+        has("item/*", "item"),
+        has("item/*", "item/any/other"),
+        has("item/*/*", "item"),
+        has("*/any", "item/any"),
+        has("*/other", "item/any/other"),
+        not("*/not", "not"),
+        has("item/*/other", "item/any/middle/other"),
+        not("start/*/end", "start/end"),
+        has("*/b/c", "x/b/b/c"),
+        not("*/b/c", "x/b/y/c"),
+        has("first,item,other", "other"),
+        has("any,*", "any"),
+        not("item,other", "one/two"),
+        // wildcards in one field don't leak into the others
+        not("*/x,a/b", "a/z/b"),
+        has("item(any,other)", "item/other"),
+        not("item(any)", "item"),
+        has("item(*)/three", "item/a/b/three"),
+        not("item(*)/three", "item"),
+        has("item(two,a/b)/three", "item/a/b/three"),
+        has("*(b)/three", "item/b/three"),
+        has("a/b(*/d,c)/not,a(1,2,*/d)/*(f,g)", "a/b/c/d/e/f"),
+        not("a/b(*/d,c)/not,a(1,2,b(c/not),*/d)/*(f,g)", "a/b/c/d/e/other"),
+        has("li(label,notablyAssociatedWith(label))", "li/notablyAssociatedWith/label")
+    };
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] matchesParentCases() {
+    return new Object[]{
+        has("*", "item/any"),
+        has("item", "item"),
+        not("item", "item/any"),
+        has("item/any", "item"),
+        not("item/any", "item/any/other"),
+        has("item/*", "item/any/other"),
+        has("*/not", "not"),
+        has("*/item", "not/matched/here"),
+        has("start/*/end", "start/end"),
+        not("start/*/end", "end"),
+        has("item/any,other", "other"),
+        not("item/any,other/not", "item/other"),
+        has("item(two)/three", "item/two"),
+        has("item(*)/three", "item/a/b/not"),
+        not("item(any)/other", "item/not/other"),
+        has("a/b(*/d,c)/not,a(1,2(f,g))", "a/2/g"),
+        not("a/b(*/d,c)/not,a(1,2(f,g))", "a/1/f")
+    };
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] matchesAllBelowCases() {
+    return new Object[]{
+        has("*", ""),
+        has("item", "item"),
+        has("item", "item/any"),
+        not("item", ""),
+        not("item/any", "item"),
+        has("item/*", "item"),
+        has("item/*/*", "item"),
+        not("item/*/other", "item"),
+        not("item/*/other", "item/any"),
+        has("item/*/other", "item/any/other"),
+        not("item(a,b)", "item"),
+        has("*/b", "a/b")
+    };
+  }
+
+  private static Object[] has(String pattern, String path) {
+    return new Object[]{pattern, path, true};
+  }
+
+  private static Object[] not(String pattern, String path) {
+    return new Object[]{pattern, path, false};
+  }
+
+  private static Automaton compile(String pattern) {
+    return Automaton.compile(new Parser().parse(pattern));
+  }
+
+  private static String wideWildcards(int count) {
+    List<String> fields = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      fields.add("*/a" + i + "/*/b" + i);
+    }
+    return Joiner.on(',').join(fields);
+  }
+
+  private static Automaton compileLazily(String pattern) {
+    return TableAutomaton.compileLazily(new Parser().parse(pattern));
+  }
+
+  private static List<String> split(String path) {
+    return ImmutableList.copyOf(Splitter.on('/').omitEmptyStrings().split(path));
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.match;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.testing.EqualsTester;
+import com.google.common.testing.NullPointerTester;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link Leaf}.
+ *
+ * @author Matt Nathan
+ */
+@RunWith(JUnitParamsRunner.class)
+public class LeafTest {
+
+  @Test
+  @Parameters({"a/b/c", "/a/b/c", "a//b/c/", "//a/b///c//"})
+  public void testFromPath(String path) {
+    Leaf leaf = Leaf.fromPath(path);
+    assertEquals(ImmutableList.of("a", "b", "c"), leaf.getPath());
+    assertEquals(3, leaf.getDepth());
+    assertEquals("c", leaf.getName());
+  }
+
+  @Test
+  @Parameters({"", "/", "///"})
+  public void testFromEmptyPath(String path) {
+    assertSame(Leaf.root(), Leaf.fromPath(path));
+  }
+
+  @Test
+  public void testChildAndParent() {
+    Leaf a = Leaf.of("a");
+    Leaf b = a.child("b");
+    assertEquals(ImmutableList.of("a", "b"), b.getPath());
+    assertSame(a, b.parent());
+    assertSame(Leaf.root(), a.parent());
+    assertTrue(Leaf.root().isRoot());
+    assertFalse(a.isRoot());
+    assertEquals(0, Leaf.root().getDepth());
+    assertEquals(ImmutableList.of(), Leaf.root().getPath());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testRootHasNoParent() {
+    Leaf.root().parent();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testRootHasNoName() {
+    Leaf.root().getName();
+  }
+
+  @Test
+  public void testHashCodeIsPathHashCode() {
+    Leaf leaf = Leaf.fromPath("a/b/c");
+    assertEquals(leaf.getPath().hashCode(), leaf.hashCode());
+    assertEquals(ImmutableList.of().hashCode(), Leaf.root().hashCode());
+  }
+
+  @Test
+  public void testEquals() {
+    Leaf a = Leaf.of("a");
+    new EqualsTester()
+        .addEqualityGroup(Leaf.root(), Leaf.fromPath(""), Leaf.copyOf(ImmutableList.<String>of()))
+        .addEqualityGroup(a, Leaf.fromPath("/a"), Leaf.of("a"))
+        .addEqualityGroup(a.child("b"), a.child("b"), Leaf.fromPath("a/b"), Leaf.copyOf(ImmutableList.of("a", "b")))
+        .addEqualityGroup(a.child("c"), Leaf.fromPath("a/c"))
+        .addEqualityGroup(Leaf.fromPath("b/a"))
+        .addEqualityGroup(Leaf.fromPath("b/b"))
+        .testEquals();
+  }
+
+  @Test
+  public void testToString() {
+    assertEquals("Leaf[a/b]", Leaf.fromPath("/a/b").toString());
+    assertEquals("Leaf[]", Leaf.root().toString());
+  }
+
+  @Test
+  public void testNulls() {
+    NullPointerTester tester = new NullPointerTester();
+    tester.testAllPublicStaticMethods(Leaf.class);
+    tester.testAllPublicInstanceMethods(Leaf.of("a"));
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.match;
+
+import com.google.common.testing.NullPointerTester;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link MatchCursor}.
+ *
+ * @author Matt Nathan
+ */
+@RunWith(JUnitParamsRunner.class)
+public class MatchCursorTest {
+  private static final String PATTERN = "root,some/path/element,mid/*/value,sub(name,value)/text";
+
+  @Test
+  @Parameters(method = "paths")
+  public void testAgreesWithMatcher(String path) {
+    Matcher matcher = Matcher.of(PATTERN);
+    MatchCursor cursor = matcher.cursor();
+    for (String part : path.split("/")) {
+      cursor.descend(part);
+    }
+    assertEquals("matches(" + path + ')', matcher.matches(path), cursor.matches());
+    assertEquals("matchesParent(" + path + ')', matcher.matchesParent(path), cursor.matchesParent());
+  }
+
+  @Test
+  @Parameters(method = "paths")
+  public void testPathPartsAgreeWithNames(String path) {
+    Matcher matcher = Matcher.of(PATTERN);
+    MatchCursor byName = matcher.cursor();
+    MatchCursor byPathPart = matcher.cursor();
+    for (String part : path.split("/")) {
+      byName.descend(part);
+      byPathPart.descend(matcher.pathPart(part));
+      assertEquals(byName.toString(), byPathPart.toString());
+      assertEquals(byName.matchesAllBelow(), byPathPart.matchesAllBelow());
+      assertEquals(byName.matchesAnyBelow(), byPathPart.matchesAnyBelow());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPathPartFromOtherMatcher() {
+    Matcher.of("a").cursor().descend(Matcher.of("a").pathPart("a"));
+  }
+
+  @Test
+  public void testAscend() {
+    MatchCursor cursor = Matcher.of("a/b,c").cursor();
+    assertTrue(cursor.descend("a").descend("b").matches());
+    assertFalse(cursor.ascend().matches());
+    assertTrue(cursor.matchesParent());
+    assertTrue(cursor.ascend().descend("c").matches());
+    assertEquals(1, cursor.getDepth());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAscendPastRoot() {
+    Matcher.of("a").cursor().ascend();
+  }
+
+  @Test
+  public void testDeepPaths() {
+    MatchCursor cursor = Matcher.of("a/*/z").cursor().descend("a");
+    for (int i = 0; i < 100; i++) {
+      cursor.descend("n" + i);
+    }
+    assertFalse(cursor.matches());
+    assertTrue(cursor.descend("z").matches());
+    for (int i = 0; i < 101; i++) {
+      cursor.ascend();
+    }
+    assertEquals(1, cursor.getDepth());
+    assertFalse(cursor.matches());
+    assertTrue(cursor.matchesParent());
+  }
+
+  @Test
+  public void testMatchesAllBelow() {
+    MatchCursor cursor = Matcher.of("a,b/c").cursor();
+    assertFalse(cursor.matchesAllBelow());
+    assertTrue(cursor.descend("a").matchesAllBelow());
+    assertFalse(cursor.ascend().descend("b").matchesAllBelow());
+    assertTrue(cursor.descend("c").matchesAllBelow());
+  }
+
+  @Test
+  public void testMatchesAnyBelow() {
+    MatchCursor cursor = Matcher.of("a/b").cursor();
+    assertTrue(cursor.matchesAnyBelow());
+    assertTrue(cursor.descend("a").matchesAnyBelow());
+    assertFalse(cursor.descend("c").matchesAnyBelow());
+    assertTrue(cursor.ascend().descend("b").matchesAnyBelow());
+  }
+
+  @Test
+  public void testAll() {
+    MatchCursor cursor = Matcher.all().cursor();
+    assertTrue(cursor.matches());
+    assertTrue(cursor.matchesAllBelow());
+    assertTrue(cursor.descend("any").descend("thing").matches());
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] paths() {
+    return new Object[]{
+        "root",
+        "root/child",
+        "some",
+        "some/path",
+        "some/path/element",
+        "some/path/element/extra",
+        "some/other",
+        "mid/anything/with/value",
+        "mid/value",
+        "sub/name/text",
+        "sub/value",
+        "unknown/path"
+    };
+  }
+
+  @Test
+  public void testNulls() throws Exception {
+    new NullPointerTester().testAllPublicInstanceMethods(Matcher.of("a").cursor());
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.match;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link MatcherAlgebra} via {@link Matcher#union(Matcher)}, {@link Matcher#intersect(Matcher)} and
+ * {@link Matcher#subsumes(Matcher)}.
+ *
+ * @author Matt Nathan
+ */
+@RunWith(JUnitParamsRunner.class)
+public class MatcherAlgebraTest {
+  private static final ImmutableList<String> PATTERNS = ImmutableList.of(
+      "a", "a/b", "a/*", "*/b", "a/*/c", "*/*", "b(a,c)", "a(b,c)/*", "*/a/*/b", "c,a/b/c", "b/*/*", "*");
+
+  // every path of up to four parts made of the words in the patterns and one that isn't
+  private static final ImmutableList<String> PATHS = paths(4);
+
+  private static final ImmutableList<String> RANDOM_NAMES = ImmutableList.of("a", "b", "c", "*");
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] pairs() {
+    List<Object[]> result = Lists.newArrayList();
+    for (String first : PATTERNS) {
+      for (String second : PATTERNS) {
+        result.add(new Object[]{first, second});
+      }
+    }
+    return result.toArray();
+  }
+
+  @Test
+  @Parameters(method = "pairs")
+  public void testUnion(String first, String second) {
+    Matcher left = Matcher.of(first);
+    Matcher right = Matcher.of(second);
+    Matcher union = left.union(right);
+    for (String path : PATHS) {
+      assertEquals(path, left.matches(path) || right.matches(path), union.matches(path));
+    }
+  }
+
+  @Test
+  @Parameters(method = "pairs")
+  public void testIntersect(String first, String second) {
+    Matcher left = Matcher.of(first);
+    Matcher right = Matcher.of(second);
+    Optional<Matcher> intersection = left.intersect(right);
+    for (String path : PATHS) {
+      boolean expected = left.matches(path) && right.matches(path);
+      boolean actual = intersection.isPresent() && intersection.get().matches(path);
+      assertEquals(path + " in " + intersection, expected, actual);
+    }
+    assertEquals(intersection, right.intersect(left));
+  }
+
+  @Test
+  @Parameters(method = "pairs")
+  public void testSubsumes(String first, String second) {
+    Matcher wider = Matcher.of(first);
+    Matcher narrower = Matcher.of(second);
+    boolean expected = true;
+    for (String path : PATHS) {
+      if (narrower.matches(path) && !wider.matches(path)) {
+        expected = false;
+      }
+    }
+    assertEquals(expected, wider.subsumes(narrower));
+  }
+
+  @Test
+  public void testUnionPattern() {
+    assertEquals(Matcher.of("a/b,c(d,e),f"), Matcher.of("a/b,c(d,e)").union(Matcher.of("f")));
+    assertSame(Matcher.all(), Matcher.of("a").union(Matcher.all()));
+    assertSame(Matcher.all(), Matcher.all().union(Matcher.of("a")));
+    assertTrue(Matcher.of("a,b").union(Matcher.of("c")) instanceof WordSetMatcher);
+  }
+
+  @Test
+  public void testIntersectPattern() {
+    assertEquals(Optional.of(Matcher.of("items(id,title)")),
+                 Matcher.of("items(id,title,body),count").intersect(Matcher.of("items(title,id),links")));
+    // the wildcard can take b and more besides
+    assertEquals(Optional.of(Matcher.of("a/b(*/c,c)")), Matcher.of("a/*/c").intersect(Matcher.of("a/b")));
+    assertEquals(Optional.of(Matcher.of("a/*/*")), Matcher.of("a/*/c,a/*/*").intersect(Matcher.of("*/*")));
+    assertEquals(Optional.<Matcher>absent(), Matcher.of("a,b/c").intersect(Matcher.of("c,b/d")));
+    // every other way the wildcards line up gives a path this one already matches
+    assertEquals(Optional.of(Matcher.of("*/*/*/b")), Matcher.of("*/*/*/b/*").intersect(Matcher.of("*/b")));
+    assertEquals(Optional.of(Matcher.of("*(*(*(b,c(*/a,a)),a/c,b/c),a/*/c,b/*/c),b(*/*/c,a)")),
+                 Matcher.of("*(b/c,*)/*(b,c)/*,b/a").intersect(Matcher.of("*(a,b),b,b")));
+    Matcher matcher = Matcher.of("a/b");
+    assertSame(matcher, Matcher.all().intersect(matcher).get());
+    assertSame(matcher, matcher.intersect(Matcher.all()).get());
+  }
+
+  @Test
+  public void testSubsumesExamples() {
+    assertTrue(Matcher.of("items(id,title)").subsumes(Matcher.of("items/id")));
+    assertTrue(Matcher.of("items").subsumes(Matcher.of("items(id,title)/*")));
+    assertTrue(Matcher.of("items/*/id").subsumes(Matcher.of("items/a/b/id/c")));
+    assertFalse(Matcher.of("items/id").subsumes(Matcher.of("items")));
+    assertFalse(Matcher.of("items/*/id").subsumes(Matcher.of("items/id")));
+    assertTrue(Matcher.all().subsumes(Matcher.of("a")));
+    assertTrue(Matcher.of("a,*").subsumes(Matcher.all()));
+    assertFalse(Matcher.of("a").subsumes(Matcher.all()));
+  }
+
+  @Test
+  public void testIntersectRandomPatterns() {
+    // small patterns, any of them can be intersected without being too complex
+    Random random = new Random(42);
+    for (int i = 0; i < 500; i++) {
+      Matcher left = Matcher.of(randomFields(random, 1));
+      Matcher right = Matcher.of(randomFields(random, 1));
+      Optional<Matcher> intersection = left.intersect(right);
+      for (String path : PATHS) {
+        boolean expected = left.matches(path) && right.matches(path);
+        boolean actual = intersection.isPresent() && intersection.get().matches(path);
+        assertEquals(path + " in " + left + " and " + right, expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void testIntersectPathsWithinTheOtherPattern() {
+    // pairing up the paths of these would give thousands of ways for their wildcards to line up
+    Matcher wide = Matcher.of(wildcardFields(50));
+    assertEquals(Optional.of(wide.canonicalize()), wide.intersect(Matcher.of(wildcardFields(50))));
+    assertEquals(Optional.of(Matcher.of("*/f1/*/g1,w/*/x").canonicalize()),
+                 Matcher.of(wildcardFields(50) + ",w").intersect(Matcher.of("*/f1/*/g1,w/*/x")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIntersectTooComplex() {
+    StringBuilder pattern = new StringBuilder("a(b,c)");
+    for (int i = 0; i < 20; i++) {
+      pattern.append("/d(e,f)");
+    }
+    Matcher.of(pattern).intersect(Matcher.of("a/*/f"));
+  }
+
+  private static String wildcardFields(int count) {
+    List<String> fields = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      fields.add("*/f" + i + "/*/g" + i);
+    }
+    return Joiner.on(',').join(fields);
+  }
+
+  /**
+   * Up to three fields of up to three names each, any name may have a sub selection if depth is more than zero.
+   */
+  private static String randomFields(Random random, int depth) {
+    StringBuilder result = new StringBuilder();
+    int fields = 1 + random.nextInt(3);
+    for (int i = 0; i < fields; i++) {
+      if (i > 0) {
+        result.append(',');
+      }
+      int names = 1 + random.nextInt(3);
+      for (int j = 0; j < names; j++) {
+        if (j > 0) {
+          result.append('/');
+        }
+        result.append(RANDOM_NAMES.get(random.nextInt(RANDOM_NAMES.size())));
+        if (depth > 0 && random.nextInt(4) == 0) {
+          result.append('(').append(randomFields(random, depth - 1)).append(')');
+        }
+      }
+    }
+    return result.toString();
+  }
+
+  private static ImmutableList<String> paths(int depth) {
+    List<String> names = ImmutableList.of("a", "b", "c", "other");
+    List<String> result = Lists.newArrayList();
+    List<String> previous = ImmutableList.of("");
+    for (int i = 0; i < depth; i++) {
+      List<String> next = Lists.newArrayList();
+      for (String path : previous) {
+        for (String name : names) {
+          next.add(path.isEmpty() ? name : path + '/' + name);
+        }
+      }
+      result.addAll(next);
+      previous = next;
+    }
+    return ImmutableList.copyOf(result);
+  }
+}
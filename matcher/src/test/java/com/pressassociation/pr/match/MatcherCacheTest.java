@@ -0,0 +1,163 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.match;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Lists;
+import com.google.common.testing.NullPointerTester;
+
+import com.pressassociation.pr.parser.PatternLimits;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link MatcherCache}.
+ *
+ * @author Matt Nathan
+ */
+public class MatcherCacheTest {
+
+  @Test
+  public void testGet() {
+    MatcherCache cache = MatcherCache.maximumSize(10);
+    Matcher matcher = cache.get("a/b,c");
+    assertEquals(Matcher.of("a/b,c"), matcher);
+    assertSame(matcher, cache.get("a/b,c"));
+    assertSame(matcher, cache.get(new StringBuilder("a/b,c")));
+
+    CacheStats stats = cache.stats();
+    assertEquals(2, stats.hitCount());
+    assertEquals(1, stats.missCount());
+    assertEquals(1, stats.loadSuccessCount());
+  }
+
+  @Test
+  public void testGetAll() {
+    assertSame(Matcher.all(), MatcherCache.maximumSize(10).get("*"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetInvalid() {
+    MatcherCache.maximumSize(10).get("a(");
+  }
+
+  @Test
+  public void testMaximumSizeEvicts() {
+    MatcherCache cache = MatcherCache.maximumSize(1);
+    cache.get("a");
+    cache.get("b");
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.stats().evictionCount());
+  }
+
+  @Test
+  public void testMaximumWeightEvicts() {
+    MatcherCache cache = MatcherCache.maximumWeight(5);
+    cache.get("abc");
+    cache.get("abc");
+    cache.get("def");
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.stats().evictionCount());
+  }
+
+  @Test
+  public void testInvalidateAll() {
+    MatcherCache cache = MatcherCache.maximumSize(10);
+    cache.get("a");
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testConcurrentGetLoadsOnce() throws Exception {
+    final MatcherCache cache = MatcherCache.maximumSize(10);
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Matcher>> results = Lists.newArrayList();
+      for (int i = 0; i < 8; i++) {
+        results.add(executor.submit(new Callable<Matcher>() {
+          @Override
+          public Matcher call() throws Exception {
+            start.await();
+            return cache.get("items(id,title,*/href)");
+          }
+        }));
+      }
+      start.countDown();
+      Matcher first = results.get(0).get();
+      for (Future<Matcher> result : results) {
+        assertSame(first, result.get());
+      }
+      assertEquals(1, cache.stats().loadCount());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testGetWithLimits() {
+    MatcherCache cache = MatcherCache.maximumSize(10);
+    PatternLimits limits = PatternLimits.none().withMaxFieldCount(2);
+    Matcher matcher = cache.get("a/b", limits);
+    assertEquals(Matcher.of("a/b"), matcher);
+    assertSame(matcher, cache.get("a/b", limits));
+    try {
+      cache.get("a/b/c", limits);
+      fail("Expected the pattern to be beyond the limits");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals(1, cache.size());
+
+    // patterns cached without limits are still checked
+    cache.get("a/b/c");
+    try {
+      cache.get("a/b/c", limits);
+      fail("Expected the cached pattern to be beyond the limits");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testNulls() throws Exception {
+    NullPointerTester tester = new NullPointerTester();
+    tester.setDefault(PatternLimits.class, PatternLimits.none());
+    tester.testAllPublicStaticMethods(MatcherCache.class);
+    tester.testAllPublicInstanceMethods(MatcherCache.maximumSize(10));
+  }
+}
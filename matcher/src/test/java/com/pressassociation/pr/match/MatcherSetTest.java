@@ -0,0 +1,195 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.pressassociation.pr.match;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.testing.EqualsTester;
+import com.google.common.testing.NullPointerTester;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link MatcherSet}.
+ *
+ * @author Matt Nathan
+ */
+@RunWith(JUnitParamsRunner.class)
+public class MatcherSetTest {
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] sets() {
+    return new Object[]{
+        new Object[]{ImmutableList.of("a")},
+        new Object[]{ImmutableList.of("a,b/c", "*")},
+        new Object[]{ImmutableList.of("a(b,c)/*", "a/b/c,other", "*/c")},
+        new Object[]{ImmutableList.of("a/*/c", "b", "c(a,b)", "a,b,c", "a/b/c/other")},
+    };
+  }
+
+  @Test
+  @Parameters(method = "sets")
+  public void testMatchesEachMatcher(List<String> patterns) {
+    List<Matcher> matchers = Lists.newArrayList();
+    for (String pattern : patterns) {
+      matchers.add(Matcher.of(pattern));
+    }
+    MatcherSet set = MatcherSet.of(matchers);
+    for (String path : paths()) {
+      Leaf leaf = Leaf.fromPath(path);
+      long matches = 0;
+      long matchesParent = 0;
+      long matchesAllBelow = 0;
+      long matchesAnyBelow = 0;
+      for (int i = 0; i < matchers.size(); i++) {
+        Matcher matcher = matchers.get(i);
+        matches |= matcher.matches(path) ? 1L << i : 0;
+        matchesParent |= matcher.matchesParent(path) ? 1L << i : 0;
+        matchesAllBelow |= matcher.matchesAllBelow(path) ? 1L << i : 0;
+        matchesAnyBelow |= matcher.matchesAnyBelow(path) ? 1L << i : 0;
+      }
+      assertEquals(path, matches, set.matches(path));
+      assertEquals(path, matches, set.matches(leaf));
+      assertEquals(path, matchesParent, set.matchesParent(path));
+      assertEquals(path, matchesParent, set.matchesParent(leaf));
+      assertEquals(path, matchesAllBelow, set.matchesAllBelow(path));
+      assertEquals(path, matchesAllBelow, set.matchesAllBelow(leaf));
+      assertEquals(path, matchesAnyBelow, set.matchesAnyBelow(path));
+      assertEquals(path, matchesAnyBelow, set.matchesAnyBelow(leaf));
+
+      MatchCursor cursor = set.cursor();
+      for (String name : leaf.getPath()) {
+        cursor.descend(set.pathPart(name));
+      }
+      assertEquals(path, matches, set.matches(cursor));
+      assertEquals(path, matchesParent, set.matchesParent(cursor));
+      assertEquals(path, matchesAllBelow, set.matchesAllBelow(cursor));
+      assertEquals(path, matchesAnyBelow, set.matchesAnyBelow(cursor));
+      assertEquals(path, matches != 0, cursor.matches());
+      assertEquals(path, matchesAnyBelow != 0, cursor.matchesAnyBelow());
+    }
+  }
+
+  @Test
+  public void testAll() {
+    assertEquals(1L, MatcherSet.of(Matcher.of("a")).all());
+    assertEquals(7L, MatcherSet.of(Matcher.of("a"), Matcher.of("b"), Matcher.of("c")).all());
+    assertEquals(-1L, MatcherSet.of(ImmutableList.copyOf(nCopies(MatcherSet.MAX_SIZE))).all());
+  }
+
+  @Test
+  public void testCursorDescendByName() {
+    MatcherSet set = MatcherSet.of(Matcher.of("a/b"), Matcher.of("a/c"));
+    MatchCursor cursor = set.cursor().descend("a");
+    assertEquals(3L, set.matchesParent(cursor));
+    assertEquals(2L, set.matches(cursor.descend("c")));
+    assertEquals(1L, set.matches(cursor.ascend().descend("b")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOtherCursor() {
+    MatcherSet.of(Matcher.of("a")).matches(Matcher.of("a").cursor());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOtherPathPart() {
+    MatcherSet.of(Matcher.of("a")).cursor().descend(Matcher.of("a").pathPart("a"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmpty() {
+    MatcherSet.of();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooMany() {
+    MatcherSet.of(nCopies(MatcherSet.MAX_SIZE + 1));
+  }
+
+  @Test
+  public void testEquals() {
+    new EqualsTester()
+        .addEqualityGroup(MatcherSet.of(Matcher.of("a"), Matcher.of("b")),
+                          MatcherSet.of(ImmutableList.of(Matcher.of("a"), Matcher.of("b"))))
+        .addEqualityGroup(MatcherSet.of(Matcher.of("b"), Matcher.of("a")))
+        .addEqualityGroup(MatcherSet.of(Matcher.of("a")))
+        .testEquals();
+  }
+
+  @Test
+  public void testToString() {
+    assertEquals("MatcherSet[Matcher.of(a), Matcher.all()]", MatcherSet.of(Matcher.of("a"), Matcher.all()).toString());
+  }
+
+  @Test
+  public void testNulls() {
+    NullPointerTester tester = new NullPointerTester();
+    tester.setDefault(Matcher.class, Matcher.of("a"));
+    tester.testAllPublicStaticMethods(MatcherSet.class);
+    tester.testAllPublicInstanceMethods(MatcherSet.of(Matcher.of("a")));
+  }
+
+  @Test
+  public void testStaysSmall() {
+    // words only steps go somewhere other than where an unknown word would
+    MatcherSet set = MatcherSet.of(Matcher.of("a(b,c)"), Matcher.of("d"), Matcher.of("a/*"));
+    assertTrue(((ProductAutomaton) set.cursor().getAutomaton()).getStateCount() < 10);
+    assertFalse(set.cursor().descend("x").matchesAnyBelow());
+  }
+
+  private static List<Matcher> nCopies(int count) {
+    List<Matcher> result = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      result.add(Matcher.of("field" + i));
+    }
+    return result;
+  }
+
+  private static List<String> paths() {
+    List<String> names = Splitter.on(',').splitToList("a,b,c,other");
+    List<String> result = Lists.newArrayList("");
+    List<String> previous = ImmutableList.of("");
+    for (int depth = 0; depth < 4; depth++) {
+      List<String> next = Lists.newArrayList();
+      for (String path : previous) {
+        for (String name : names) {
+          next.add(path + '/' + name);
+        }
+      }
+      result.addAll(next);
+      previous = next;
+    }
+    return result;
+  }
+}
@@ -27,6 +27,8 @@ package com.pressassociation.pr.match;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
 
+import com.pressassociation.pr.parser.Parser;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -75,6 +77,13 @@ public class MatcherTest {
     assertFalse(Matcher.of("all/*").matchesAll());
   }
 
+  @Test
+  public void testOfEncoded() {
+    assertEquals(Matcher.of("a,b/c(d)"), Matcher.ofEncoded("a%2Cb%2Fc%28d%29"));
+    assertTrue(Matcher.ofEncoded("%2A").matchesAll());
+    assertSame(Matcher.all(), Matcher.ofEncoded("*"));
+  }
+
   @Test
   @Parameters({
       "root",
@@ -122,6 +131,55 @@ public class MatcherTest {
     assertTrue(Matcher.all().matchesParent("my/node/continues"));
   }
 
+  @Test
+  public void testMatchesAllBelow() {
+    Matcher matcher = Matcher.of("root,some/path/element,mid/*,sub(name,value)/text");
+    assertTrue(matcher.matchesAllBelow("root"));
+    assertTrue(matcher.matchesAllBelow("root/any/thing"));
+    assertTrue(matcher.matchesAllBelow("some/path/element"));
+    assertTrue(matcher.matchesAllBelow("mid"));
+    assertTrue(matcher.matchesAllBelow("sub/name/text"));
+    assertFalse(matcher.matchesAllBelow("some/path"));
+    assertFalse(matcher.matchesAllBelow("sub/name"));
+    assertFalse(matcher.matchesAllBelow("unknown"));
+    assertTrue(Matcher.all().matchesAllBelow("any"));
+  }
+
+  @Test
+  public void testMatchesAnyBelow() {
+    Matcher matcher = Matcher.of("root,some/path/element,mid/*/value,sub(name,value)/text");
+    assertTrue(matcher.matchesAnyBelow("root"));
+    assertTrue(matcher.matchesAnyBelow("some"));
+    assertTrue(matcher.matchesAnyBelow("some/path"));
+    assertTrue(matcher.matchesAnyBelow("mid/anything/with/path"));
+    assertTrue(matcher.matchesAnyBelow("sub/value"));
+    assertFalse(matcher.matchesAnyBelow("unknown"));
+    assertFalse(matcher.matchesAnyBelow("some/other"));
+    assertFalse(matcher.matchesAnyBelow("sub/other"));
+    assertTrue(Matcher.all().matchesAnyBelow("any"));
+  }
+
+  @Test
+  public void testWordListsUseWordSetMatcher() {
+    assertTrue(Matcher.of("id,title,updated") instanceof WordSetMatcher);
+    assertTrue(Matcher.of("id,title").transform(upperCase()) instanceof WordSetMatcher);
+    assertFalse(Matcher.of("id,title/name") instanceof WordSetMatcher);
+    assertFalse(Matcher.of("id(title)") instanceof WordSetMatcher);
+    assertFalse(Matcher.of("id,*") instanceof WordSetMatcher);
+  }
+
+  @Test
+  @Parameters({"id", "/title", "title/name", "/updated/at/time", "other", "other/id", ""})
+  public void testWordSetMatcherMatchesAstMatcher(String path) {
+    Matcher wordSet = Matcher.of("id,title,updated");
+    Matcher general = new AstMatcher(new Parser().parse("id,title,updated"));
+    assertEquals(general.matches(path), wordSet.matches(path));
+    assertEquals(general.matchesParent(path), wordSet.matchesParent(path));
+    assertEquals(general.matchesAllBelow(path), wordSet.matchesAllBelow(path));
+    assertEquals(general.matchesAnyBelow(path), wordSet.matchesAnyBelow(path));
+    assertEquals(general, wordSet);
+  }
+
   @Test
   public void testTransform() {
     assertEquals("*", Matcher.all().transform(Functions.constant("foo")).patternString());
@@ -131,6 +189,61 @@ public class MatcherTest {
     assertEquals("FOO/*,BAR/*(BAZ)", Matcher.of("foo/*,bar/*(baz)").transform(upperCase()).patternString());
   }
 
+  @Test
+  public void testCanonicalize() {
+    Matcher canonical = Matcher.of("id,title").canonicalize();
+    assertEquals("Matcher.of(id,title)", canonical.toString());
+    assertEquals(canonical, Matcher.of("title,id").canonicalize());
+    assertEquals(canonical, Matcher.of("id,title,id").canonicalize());
+    assertEquals(canonical, Matcher.of("title/text,id,title").canonicalize());
+    assertEquals(canonical.hashCode(), Matcher.of("title,id").canonicalize().hashCode());
+    assertEquals(Matcher.of("a(b,c)"), Matcher.of("a/c,a/b").canonicalize());
+  }
+
+  @Test
+  public void testCanonicalizeCanonical() {
+    Matcher canonical = Matcher.of("id,title");
+    assertSame(canonical, canonical.canonicalize());
+    assertSame(Matcher.all(), Matcher.all().canonicalize());
+    assertSame(Matcher.all(), Matcher.of("a,*,b/c").canonicalize());
+  }
+
+  @Test
+  @Parameters(method = "canonicalPatterns")
+  public void testCanonicalMatchesTheSame(String pattern) {
+    Matcher matcher = Matcher.of(pattern);
+    Matcher canonical = matcher.canonicalize();
+    String[] names = {"a", "b", "c", "other"};
+    for (String first : names) {
+      for (String second : names) {
+        for (String third : names) {
+          for (String path : new String[]{first, first + '/' + second, first + '/' + second + '/' + third}) {
+            assertEquals(path, matcher.matches(path), canonical.matches(path));
+            assertEquals(path, matcher.matchesAllBelow(path), canonical.matchesAllBelow(path));
+            assertEquals(path, matcher.matchesAnyBelow(path), canonical.matchesAnyBelow(path));
+          }
+        }
+      }
+    }
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] canonicalPatterns() {
+    return new Object[]{
+        new Object[]{"title,id,id"},
+        new Object[]{"a/b,a,c(a,b)"},
+        new Object[]{"a/*,a/b,b/*/c,b/a"},
+        new Object[]{"*/b,a(c,b)/*,a/b/c"},
+        new Object[]{"a(b,c)/b(a,c),c/*/a/*"},
+    };
+  }
+
+  @Test
+  public void testHashCodeIsStable() {
+    assertEquals("id,title".hashCode(), Matcher.of("id,title").hashCode());
+    assertEquals("a/*(b)".hashCode(), Matcher.of("a/*(b)").hashCode());
+  }
+
   private Function<String, String> upperCase() {
     return new Function<String, String>() {
       @Override
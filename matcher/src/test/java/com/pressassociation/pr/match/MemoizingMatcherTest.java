@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.match;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link MemoizingMatcher}.
+ *
+ * @author Matt Nathan
+ */
+@RunWith(JUnitParamsRunner.class)
+public class MemoizingMatcherTest {
+  private static final String PATTERN = "id,title,byline/name,tags/*/name,images(caption,renditions/*/url)";
+  private static final ImmutableList<String> PATHS = ImmutableList.of(
+      "", "/", "id", "/id/", "//id//x", "title", "byline", "byline/name", "byline/email", "tags", "tags/0/name",
+      "tags/0/id", "images/caption", "images/renditions/1/url", "images/renditions/1/format", "other", "other/id");
+
+  @Test
+  @Parameters({"1", "2", "64"})
+  public void testMatchesSameAsDelegate(int maximumSize) {
+    Matcher matcher = Matcher.of(PATTERN);
+    Matcher memoizing = matcher.memoizing(maximumSize);
+    // twice round so the second time is answered from the memo
+    for (int i = 0; i < 2; i++) {
+      for (String path : PATHS) {
+        assertSameAnswers(matcher, memoizing, path);
+      }
+    }
+  }
+
+  @Test
+  public void testStringAndLeafShareMemo() {
+    Matcher matcher = Matcher.of(PATTERN);
+    Matcher memoizing = matcher.memoizing(16);
+    for (String path : PATHS) {
+      assertEquals(path, matcher.matches(path), memoizing.matches(Leaf.fromPath(path)));
+      assertEquals(path, matcher.matchesParent(Leaf.fromPath(path)), memoizing.matchesParent(path));
+    }
+  }
+
+  @Test
+  public void testEqualsDelegate() {
+    Matcher matcher = Matcher.of(PATTERN);
+    Matcher memoizing = matcher.memoizing(16);
+    assertEquals(matcher, memoizing);
+    assertEquals(matcher.hashCode(), memoizing.hashCode());
+    assertEquals(matcher.toString(), memoizing.toString());
+    assertEquals(matcher.cost(), memoizing.cost());
+  }
+
+  @Test
+  public void testMemoizingTwiceDoesNotNest() {
+    Matcher matcher = Matcher.of(PATTERN);
+    Matcher memoizing = matcher.memoizing(16).memoizing(32);
+    assertTrue(memoizing instanceof MemoizingMatcher);
+    assertSame(matcher.getAutomaton(), memoizing.getAutomaton());
+  }
+
+  @Test
+  public void testAllIsNotMemoized() {
+    assertSame(Matcher.all(), Matcher.all().memoizing(16));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  @Parameters({"0", "-1", "1048577"})
+  public void testInvalidSize(int maximumSize) {
+    Matcher.of(PATTERN).memoizing(maximumSize);
+  }
+
+  @Test
+  public void testConcurrentUse() throws Exception {
+    final Matcher matcher = Matcher.of(PATTERN);
+    // a tiny memo so the threads are always replacing each other's entries
+    final Matcher memoizing = matcher.memoizing(2);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Void>> results = Lists.newArrayList();
+      for (int thread = 0; thread < 4; thread++) {
+        results.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int i = 0; i < 2000; i++) {
+              for (String path : PATHS) {
+                assertSameAnswers(matcher, memoizing, path);
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void assertSameAnswers(Matcher expected, Matcher actual, String path) {
+    Leaf leaf = Leaf.fromPath(path);
+    assertEquals(path, expected.matches(leaf), actual.matches(leaf));
+    assertEquals(path, expected.matches(path), actual.matches(path));
+    assertEquals(path, expected.matchesParent(leaf), actual.matchesParent(leaf));
+    assertEquals(path, expected.matchesParent(path), actual.matchesParent(path));
+    assertEquals(path, expected.matchesAllBelow(leaf), actual.matchesAllBelow(leaf));
+    assertEquals(path, expected.matchesAllBelow(path), actual.matchesAllBelow(path));
+    assertEquals(path, expected.matchesAnyBelow(leaf), actual.matchesAnyBelow(leaf));
+    assertEquals(path, expected.matchesAnyBelow(path), actual.matchesAnyBelow(path));
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.parser;
+
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.Collections2;
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+
+import com.pressassociation.pr.ast.AstNode;
+import com.pressassociation.pr.ast.visitor.CopyVisitor;
+import com.pressassociation.pr.ast.visitor.ExpandingVisitor;
+import com.pressassociation.pr.ast.visitor.MatchesPathVisitor;
+import com.pressassociation.pr.match.Leaf;
+import com.pressassociation.pr.match.Matcher;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that very wide and very deep patterns can be parsed, printed, compared and matched on a thread with a small
+ * stack.
+ *
+ * @author Matt Nathan
+ */
+public class LargePatternTest {
+  private static final int SIZE = 20000;
+  // far too small to recurse once per field of a pattern of SIZE fields
+  private static final long STACK_SIZE = 256 * 1024;
+
+  @Test
+  public void testWidePattern() throws Exception {
+    final String pattern = Joiner.on(',').join(Collections2.transform(
+        ContiguousSet.create(Range.closedOpen(0, SIZE), DiscreteDomain.integers()),
+        new Function<Integer, String>() {
+          @Override
+          public String apply(Integer input) {
+            return "field" + input;
+          }
+        }));
+    runWithSmallStack(new Callable<Void>() {
+      @Override
+      public Void call() {
+        checkAst(pattern);
+        assertTrue(new MatchesPathVisitor(ImmutableList.of("field" + (SIZE - 1))).applyTo(new Parser().parse(pattern)));
+        assertFalse(new MatchesPathVisitor(ImmutableList.of("field" + SIZE)).applyTo(new Parser().parse(pattern)));
+        return null;
+      }
+    });
+  }
+
+  @Test
+  public void testExpandWideSubSelection() throws Exception {
+    final String fields = Joiner.on(',').join(Collections2.transform(
+        ContiguousSet.create(Range.closedOpen(0, SIZE), DiscreteDomain.integers()),
+        new Function<Integer, String>() {
+          @Override
+          public String apply(Integer input) {
+            return "field" + input;
+          }
+        }));
+    runWithSmallStack(new Callable<Void>() {
+      @Override
+      public Void call() {
+        AstNode expanded = new ExpandingVisitor().applyTo(new Parser().parse("a(" + fields + ")/b"));
+        assertEquals("a/" + fields.replace(",", "/b,a/") + "/b", expanded.toString());
+        return null;
+      }
+    });
+  }
+
+  @Test
+  public void testLongPath() throws Exception {
+    final String pattern = Strings.repeat("a/", SIZE) + 'b';
+    runWithSmallStack(new Callable<Void>() {
+      @Override
+      public Void call() {
+        checkAst(pattern);
+        AstNode ast = new Parser().parse(pattern);
+        assertTrue(new MatchesPathVisitor(Leaf.fromPath(pattern).getPath()).applyTo(ast));
+        assertFalse(new MatchesPathVisitor(Leaf.fromPath(Strings.repeat("a/", SIZE - 1) + 'b').getPath()).applyTo(ast));
+        return null;
+      }
+    });
+  }
+
+  @Test
+  public void testDeeplyNestedPattern() throws Exception {
+    final String pattern = Strings.repeat("a(", SIZE) + 'b' + Strings.repeat(")", SIZE);
+    runWithSmallStack(new Callable<Void>() {
+      @Override
+      public Void call() {
+        checkAst(pattern);
+        return null;
+      }
+    });
+  }
+
+  @Test
+  public void testManyRepeatedFields() throws Exception {
+    final String pattern = Strings.repeat("a/*/b,", SIZE) + "c";
+    runWithSmallStack(new Callable<Void>() {
+      @Override
+      public Void call() {
+        checkAst(pattern);
+        Matcher matcher = Matcher.of(pattern);
+        assertTrue(matcher.matches(Leaf.fromPath("a/x/y/b")));
+        assertTrue(matcher.matches(Leaf.fromPath("c")));
+        assertFalse(matcher.matches(Leaf.fromPath("a/x")));
+        return null;
+      }
+    });
+  }
+
+  private static void checkAst(String pattern) {
+    AstNode ast = new Parser().parse(pattern);
+    assertEquals(pattern, ast.toString());
+    AstNode copy = new CopyVisitor().applyTo(ast);
+    assertNotSame(ast, copy);
+    assertEquals(ast.hashCode(), copy.hashCode());
+    assertEquals(ast, copy);
+    assertEquals(copy, ast);
+  }
+
+  private static void runWithSmallStack(final Callable<Void> test) throws Exception {
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread thread = new Thread(null, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          test.call();
+        } catch (Throwable e) {
+          failure.set(e);
+        }
+      }
+    }, "small-stack", STACK_SIZE);
+    thread.start();
+    thread.join();
+    if (failure.get() instanceof Exception) {
+      throw (Exception) failure.get();
+    } else if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.parser;
+
+import com.google.common.base.Charsets;
+
+import com.pressassociation.pr.ast.AstNode;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the percent encoded input support of {@link Parser}.
+ *
+ * @author Matt Nathan
+ */
+@RunWith(JUnitParamsRunner.class)
+public class ParserEncodedTest {
+
+  @Test
+  @Parameters(method = "patterns")
+  public void testParseEncoded(String pattern) throws Exception {
+    AstNode expected = new Parser().parse(pattern);
+    String encoded = URLEncoder.encode(pattern, "UTF-8");
+    byte[] bytes = encoded.getBytes(Charsets.US_ASCII);
+
+    assertEquals(expected, new Parser().parseEncoded(encoded));
+    assertEquals(expected, new Parser().parseEncoded(bytes, 0, bytes.length));
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    assertEquals(expected, new Parser().parseEncoded(buffer));
+    assertEquals(0, buffer.position());
+  }
+
+  @Test
+  @Parameters({
+      "items",
+      "items/pagemap/*/title",
+      "café/naïve"
+  })
+  public void testParseUnencoded(String pattern) {
+    // plain text is valid encoded input, as long as it doesn't contain % or +
+    AstNode expected = new Parser().parse(pattern);
+    byte[] bytes = pattern.getBytes(Charsets.UTF_8);
+    assertEquals(expected, new Parser().parseEncoded(pattern));
+    assertEquals(expected, new Parser().parseEncoded(bytes, 0, bytes.length));
+  }
+
+  @Test
+  public void testParseEncodedRange() {
+    byte[] bytes = "?fields=a%2Cb%2Fc&other=x".getBytes(Charsets.US_ASCII);
+    assertEquals(new Parser().parse("a,b/c"), new Parser().parseEncoded(bytes, 8, 9));
+  }
+
+  @Test
+  public void testParseEncodedBufferSlice() {
+    ByteBuffer buffer = ByteBuffer.wrap("fields=a(b%2Cc)".getBytes(Charsets.US_ASCII));
+    buffer.position(7);
+    assertEquals(new Parser().parse("a(b,c)"), new Parser().parseEncoded(buffer));
+    assertEquals(7, buffer.position());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  @Parameters({
+      "%",
+      "a%2",
+      "a%zz",
+      "a%C3",
+      "a%C3%28",
+      "a%FF",
+      "a%ED%A0%80",
+      // overlong encodings, the first two of '/' and '(' with a closing ')'
+      "a%C0%AFb",
+      "a%E0%80%A8b%29",
+      "a%C1%BF",
+      "a%E0%9F%BF",
+      "a%F0%8F%BF%BF",
+      "a+b",
+      "a%2C"
+  })
+  public void testInvalidEncoding(String encoded) {
+    new Parser().parseEncoded(encoded);
+  }
+
+  @Test
+  @Parameters({
+      "a%C2%80",
+      "a%DF%BF",
+      "a%E0%A0%80",
+      "a%EF%BF%BF",
+      "a%F0%90%80%80",
+      "a%F4%8F%BF%BF"
+  })
+  public void testShortestEncodings(String encoded) throws Exception {
+    // the smallest and largest values for each length of encoding
+    assertEquals(new Parser().parse(URLDecoder.decode(encoded, "UTF-8")), new Parser().parseEncoded(encoded));
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] patterns() {
+    // wrapped in arrays so the commas aren't treated as parameter separators
+    return new Object[]{
+        new Object[]{"items"},
+        new Object[]{"etag,items"},
+        new Object[]{"items/pagemap/*/title"},
+        new Object[]{"kind,items(title,characteristics/length)"},
+        new Object[]{"items(id,altId)/authority"},
+        new Object[]{"café/naïve"},
+        new Object[]{"emoji/😀/face"},
+        new Object[]{"100%/done"}
+    };
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testInvalidRange() {
+    new Parser().parseEncoded(new byte[4], 2, 3);
+  }
+}
@@ -37,6 +37,7 @@ public class ParserNullTest {
   @Test
   public void testNulls() throws Exception {
     NullPointerTester tester = new NullPointerTester();
+    tester.setDefault(PatternLimits.class, PatternLimits.none());
     tester.testAllPublicConstructors(Parser.class);
     tester.testAllPublicStaticMethods(Parser.class);
     tester.testAllPublicInstanceMethods(new Parser());
@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.parser;
+
+import com.google.common.collect.Iterables;
+import com.google.common.testing.EqualsTester;
+import com.google.common.testing.NullPointerTester;
+
+import com.pressassociation.pr.ast.AstNode;
+import com.pressassociation.pr.ast.visitor.ExpandingVisitor;
+import com.pressassociation.pr.ast.visitor.FindFieldsVisitor;
+import com.pressassociation.pr.match.Matcher;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link PatternCost}.
+ *
+ * @author Matt Nathan
+ */
+@RunWith(JUnitParamsRunner.class)
+public class PatternCostTest {
+
+  @Test
+  @Parameters(method = "costs")
+  public void testCost(String pattern, int depth, int fieldCount, int wildcardCount, long expandedPaths) {
+    PatternCost cost = PatternCost.of(new Parser().parse(pattern));
+    assertEquals(pattern.length(), cost.getLength());
+    assertEquals(depth, cost.getDepth());
+    assertEquals(fieldCount, cost.getFieldCount());
+    assertEquals(wildcardCount, cost.getWildcardCount());
+    assertEquals(expandedPaths, cost.getExpandedPaths());
+    assertEquals(cost, Matcher.of(pattern).cost());
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] costs() {
+    return new Object[]{
+        new Object[]{"a", 1, 1, 0, 1L},
+        new Object[]{"*", 1, 1, 1, 1L},
+        new Object[]{"a/b/c", 3, 3, 0, 1L},
+        new Object[]{"a,b,c", 1, 3, 0, 3L},
+        new Object[]{"a/b(c,d/e)", 4, 5, 0, 2L},
+        new Object[]{"a(b/c)/d", 4, 4, 0, 1L},
+        new Object[]{"a(b,c)/d(e,f)", 4, 6, 0, 4L},
+        new Object[]{"a(b,c)/d(e,f)/g(h,i)", 6, 9, 0, 8L},
+        new Object[]{"x,a(b(c,d),e)/*", 4, 7, 1, 4L},
+        new Object[]{"*/a/*/b,*(c,*)", 4, 7, 4, 3L},
+    };
+  }
+
+  @Test
+  @Parameters(method = "expansions")
+  public void testExpandedPathsMatchesExpansion(String pattern) {
+    AstNode expanded = new ExpandingVisitor().applyTo(new Parser().parse(pattern));
+    assertEquals(Iterables.size(new FindFieldsVisitor().applyTo(expanded)),
+                 PatternCost.of(new Parser().parse(pattern)).getExpandedPaths());
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] expansions() {
+    return new Object[]{
+        new Object[]{"a(b,c)/d(e,f)"},
+        new Object[]{"a(b,c)/d(e,f)/g(h,i)"},
+        new Object[]{"x,a/b(c,d)/*"},
+        new Object[]{"items(id,author(name,uri))/links(href,rel)"},
+    };
+  }
+
+  @Test
+  public void testExpandedPathsSaturate() {
+    StringBuilder pattern = new StringBuilder("a(b,c)");
+    for (int i = 0; i < 70; i++) {
+      pattern.append("/a(b,c)");
+    }
+    assertEquals(Long.MAX_VALUE, PatternCost.of(new Parser().parse(pattern)).getExpandedPaths());
+  }
+
+  @Test
+  public void testEquals() {
+    new EqualsTester()
+        .addEqualityGroup(PatternCost.of(new Parser().parse("a/b")), PatternCost.of(new Parser().parse("c/d")))
+        .addEqualityGroup(PatternCost.of(new Parser().parse("a,b")))
+        .addEqualityGroup(PatternCost.of(new Parser().parse("aa/b")))
+        .addEqualityGroup(PatternCost.of(new Parser().parse("*/b")))
+        .testEquals();
+  }
+
+  @Test
+  public void testNulls() {
+    new NullPointerTester().testAllPublicStaticMethods(PatternCost.class);
+  }
+}
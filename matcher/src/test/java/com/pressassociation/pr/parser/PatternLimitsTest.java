@@ -0,0 +1,235 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Press Association Limited
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.pressassociation.pr.parser;
+
+import com.google.common.base.Strings;
+import com.google.common.testing.EqualsTester;
+import com.google.common.testing.NullPointerTester;
+
+import com.pressassociation.pr.match.Matcher;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link PatternLimits}.
+ *
+ * @author Matt Nathan
+ */
+@RunWith(JUnitParamsRunner.class)
+public class PatternLimitsTest {
+  private static final PatternLimits LIMITS = PatternLimits.none()
+      .withMaxLength(20)
+      .withMaxDepth(3)
+      .withMaxFieldCount(5)
+      .withMaxWildcardCount(3)
+      .withMaxExpandedPaths(3);
+
+  @Test
+  @Parameters(method = "withinLimits")
+  public void testWithinLimits(String pattern) throws UnsupportedEncodingException {
+    assertEquals(new Parser().parse(pattern), new Parser().parse(pattern, LIMITS));
+    assertEquals(Matcher.of(pattern), Matcher.of(pattern, LIMITS));
+    String encoded = URLEncoder.encode(pattern, "UTF-8");
+    assertEquals(new Parser().parse(pattern), new Parser().parseEncoded(encoded, LIMITS));
+    assertEquals(Matcher.of(pattern), Matcher.ofEncoded(encoded, LIMITS));
+    assertTrue(LIMITS.allows(Matcher.of(pattern).cost()));
+    LIMITS.check(Matcher.of(pattern).cost());
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] withinLimits() {
+    return new Object[]{
+        new Object[]{"a"},
+        new Object[]{"a/b/c"},
+        new Object[]{"a(b,c)/d"},
+        new Object[]{"a(b/c)"},
+        new Object[]{"a,b,c"},
+        new Object[]{"*/*/*"},
+    };
+  }
+
+  @Test
+  @Parameters(method = "beyondLimits")
+  public void testBeyondLimits(String pattern) throws UnsupportedEncodingException {
+    try {
+      new Parser().parse(pattern, LIMITS);
+      fail("Expected " + pattern + " to be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      Matcher.of(pattern, LIMITS);
+      fail("Expected " + pattern + " to be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      Matcher.ofEncoded(URLEncoder.encode(pattern, "UTF-8"), LIMITS);
+      fail("Expected " + pattern + " to be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testEncodedLengthIsDecodedLength() {
+    // twenty characters once decoded, though the encoded pattern is six times as long
+    String encoded = Strings.repeat("%C3%A9", 20);
+    assertEquals(new Parser().parse(Strings.repeat("\u00e9", 20)), new Parser().parseEncoded(encoded, LIMITS));
+    try {
+      new Parser().parseEncoded(encoded + "%C3%A9", LIMITS);
+      fail("Expected the encoded pattern to be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  private Object[] beyondLimits() {
+    return new Object[]{
+        // too long
+        new Object[]{"aaaaaaaaaaaaaaaaaaaaa"},
+        // too deep
+        new Object[]{"a/b/c/d"},
+        new Object[]{"a(b(c(d)))"},
+        new Object[]{"a(b/c)/d"},
+        // too many fields
+        new Object[]{"a,b,c,d,e,f"},
+        // too many wildcards
+        new Object[]{"*,*/a,*/*"},
+        // too many expanded paths
+        new Object[]{"a,b,c,d"},
+        new Object[]{"a(b,c)/d(e,f)"},
+        // invalid
+        new Object[]{"a(b,c)(d"},
+    };
+  }
+
+  @Test
+  public void testStopsParsingEarly() {
+    // the pattern is far too deep, but the error is found long before the unbalanced brackets at the end
+    String pattern = Strings.repeat("a(", 1000) + ')';
+    try {
+      new Parser().parse(pattern, PatternLimits.none().withMaxDepth(3));
+      fail("Expected the pattern to be rejected");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Pattern is too deep, it has more than 3 names in a path", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testStopsAtTooManyWildcards() {
+    // rejected at the fourth wildcard, well before the pattern would take any effort to compile
+    String pattern = Strings.repeat("*/a/*/b,", 1000) + '(';
+    try {
+      new Parser().parse(pattern, PatternLimits.none().withMaxWildcardCount(3));
+      fail("Expected the pattern to be rejected");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Pattern is too complex, it has more than 3 wildcards", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testNone() {
+    PatternLimits none = PatternLimits.none();
+    assertEquals(Integer.MAX_VALUE, none.getMaxLength());
+    assertEquals(Integer.MAX_VALUE, none.getMaxDepth());
+    assertEquals(Integer.MAX_VALUE, none.getMaxFieldCount());
+    assertEquals(Integer.MAX_VALUE, none.getMaxWildcardCount());
+    assertEquals(Long.MAX_VALUE, none.getMaxExpandedPaths());
+    assertTrue(none.allows(Matcher.of("a(b,c)/d(e,f)/g(h,i)").cost()));
+  }
+
+  @Test
+  public void testAllows() {
+    assertTrue(LIMITS.allows(Matcher.of("a(b,c)/d").cost()));
+    assertFalse(LIMITS.allows(Matcher.of("a(b,c)/d(e,f)").cost()));
+  }
+
+  @Test
+  @Parameters({"0", "-1"})
+  public void testInvalidLimits(int limit) {
+    try {
+      PatternLimits.none().withMaxLength(limit);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      PatternLimits.none().withMaxDepth(limit);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      PatternLimits.none().withMaxFieldCount(limit);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      PatternLimits.none().withMaxWildcardCount(limit);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      PatternLimits.none().withMaxExpandedPaths(limit);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testEquals() {
+    new EqualsTester()
+        .addEqualityGroup(PatternLimits.none(), PatternLimits.none().withMaxLength(Integer.MAX_VALUE))
+        .addEqualityGroup(PatternLimits.none().withMaxLength(10), PatternLimits.none().withMaxLength(10))
+        .addEqualityGroup(PatternLimits.none().withMaxDepth(10))
+        .addEqualityGroup(PatternLimits.none().withMaxFieldCount(10))
+        .addEqualityGroup(PatternLimits.none().withMaxWildcardCount(10))
+        .addEqualityGroup(PatternLimits.none().withMaxExpandedPaths(10))
+        .testEquals();
+  }
+
+  @Test
+  public void testNulls() {
+    NullPointerTester tester = new NullPointerTester();
+    tester.testAllPublicStaticMethods(PatternLimits.class);
+    tester.testAllPublicInstanceMethods(LIMITS);
+  }
+}